@@ -0,0 +1,31 @@
+package bugs;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so that the allocation rate
+ * is reported alongside the tokens and bytes per second. Takes the same
+ * arguments as the JMH command line, for example a pattern to choose
+ * the benchmarks to run.
+ *
+ * @author James Park
+ */
+public final class BenchmarkMain {
+
+    /**
+     * This class only has a main method.
+     */
+    private BenchmarkMain() {}
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,59 @@
+package bugs;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures <code>isCommand()</code> on each kind of command. Each
+ * operation recognizes a run of the same command.
+ *
+ * @author James Park
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBenchmark {
+    /** The number of commands recognized in each operation. */
+    private static final int RUN = 100;
+
+    /** The kind of command, as in <code>Programs.COMMANDS</code>. */
+    @Param({ "move", "moveto", "turn", "turnto", "line", "assignment", "loop",
+             "exit", "switch", "return", "do", "color" })
+    public String kind;
+
+    private Counters.Input input;
+
+    @Setup
+    public void setUp() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < RUN; i++) text.append(Programs.command(kind));
+        input = new Counters.Input(text);
+        Recognizer recognizer = input.recognizer();
+        for (int i = 0; i < RUN; i++) {
+            if (!recognizer.isCommand()) throw new IllegalStateException("Not a command");
+        }
+    }
+
+    @Benchmark
+    public int isCommand(Counters counters) {
+        Recognizer recognizer = input.recognizer();
+        int n = 0;
+        while (recognizer.isCommand()) n++;
+        counters.add(input);
+        return n;
+    }
+}
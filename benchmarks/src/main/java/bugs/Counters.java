@@ -0,0 +1,72 @@
+package bugs;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the tokens and characters a benchmark gets through, so that
+ * JMH reports them as rates (tokens/s and bytes/s) next to the rate of
+ * operations. The inputs are ASCII, so a character is a byte.
+ *
+ * @author James Park
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Counters {
+    /** The number of tokens read. */
+    public long tokens;
+    /** The number of characters read. */
+    public long bytes;
+
+    /**
+     * Clears the counts before each iteration.
+     */
+    @Setup(Level.Iteration)
+    public void clear() {
+        tokens = 0;
+        bytes = 0;
+    }
+
+    /**
+     * Adds one pass over an input to the counts.
+     * @param input The input.
+     */
+    void add(Input input) {
+        tokens += input.tokens;
+        bytes += input.chars.length;
+    }
+
+    /**
+     * A text to benchmark with, and the number of tokens in it.
+     */
+    static final class Input {
+        /** The characters of the text. */
+        final char[] chars;
+        /** The number of tokens in the text, including the end of input. */
+        final long tokens;
+
+        /**
+         * Constructs an Input for a text.
+         * @param text The text.
+         */
+        Input(CharSequence text) {
+            chars = text.toString().toCharArray();
+            long n = 1;
+            Lexer lexer = new Lexer(chars);
+            while (lexer.next() != Lexer.TT_EOF) n++;
+            tokens = n;
+        }
+
+        /**
+         * Makes a Recognizer for the text. The characters are shared, not
+         * copied, so only the Recognizer and its Lexer are allocated.
+         * @return The Recognizer.
+         */
+        Recognizer recognizer() {
+            return new Recognizer(new Lexer(chars));
+        }
+    }
+}
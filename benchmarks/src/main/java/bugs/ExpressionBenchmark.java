@@ -0,0 +1,47 @@
+package bugs;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures <code>isExpression()</code> on expressions nested to
+ * different depths.
+ *
+ * @author James Park
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpressionBenchmark {
+    /** How deeply the parentheses of the expression are nested. */
+    @Param({ "0", "4", "1000" })
+    public int depth;
+
+    private Counters.Input input;
+
+    @Setup
+    public void setUp() {
+        input = new Counters.Input(Programs.expression(depth));
+    }
+
+    @Benchmark
+    public boolean isExpression(Counters counters) {
+        boolean result = input.recognizer().isExpression();
+        counters.add(input);
+        return result;
+    }
+}
@@ -0,0 +1,61 @@
+package bugs;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how fast the Lexer turns a program into tokens.
+ *
+ * @author James Park
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexerBenchmark {
+    private Counters.Input input;
+
+    @Setup
+    public void setUp() {
+        input = new Counters.Input(Programs.program(100));
+    }
+
+    /**
+     * Reads every token with <code>nextToken()</code>, which makes a
+     * String for each name.
+     */
+    @Benchmark
+    public int nextToken(Counters counters) {
+        Lexer lexer = new Lexer(input.chars);
+        int sum = 0;
+        int type;
+        while ((type = lexer.nextToken()) != Lexer.TT_EOF) sum += type;
+        counters.add(input);
+        return sum;
+    }
+
+    /**
+     * Reads every token with <code>next()</code>, which makes no Strings.
+     */
+    @Benchmark
+    public int next(Counters counters) {
+        Lexer lexer = new Lexer(input.chars);
+        int sum = 0;
+        int type;
+        while ((type = lexer.next()) != Lexer.TT_EOF) sum += type;
+        counters.add(input);
+        return sum;
+    }
+}
@@ -0,0 +1,53 @@
+package bugs;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures <code>isProgram()</code> on small, medium and large programs.
+ *
+ * @author James Park
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgramBenchmark {
+    /** The size of the program: about 500 bytes, 40 KB or 4 MB. */
+    @Param({ "small", "medium", "large" })
+    public String size;
+
+    private Counters.Input input;
+
+    @Setup
+    public void setUp() {
+        int bugs;
+        switch (size) {
+            case "small": bugs = 1; break;
+            case "medium": bugs = 100; break;
+            case "large": bugs = 10000; break;
+            default: throw new IllegalArgumentException("No size " + size);
+        }
+        input = new Counters.Input(Programs.program(bugs));
+    }
+
+    @Benchmark
+    public boolean isProgram(Counters counters) {
+        boolean result = input.recognizer().isProgram();
+        counters.add(input);
+        return result;
+    }
+}
@@ -0,0 +1,80 @@
+package bugs;
+
+/**
+ * Builds the texts the benchmarks recognize. Every program uses each
+ * kind of command, and is checked to be a valid program when built.
+ *
+ * @author James Park
+ */
+final class Programs {
+
+    /**
+     * This class only has static methods.
+     */
+    private Programs() {}
+
+    /** The text of each kind of command, in the order of the Recognizer. */
+    static final String[][] COMMANDS = {
+        { "move", "move 10 * step + 1\n" },
+        { "moveto", "moveto x + 5, y - 5\n" },
+        { "turn", "turn -angle / 2\n" },
+        { "turnto", "turnto (direction + 90) / 2\n" },
+        { "line", "line x, y, x + 10, other.y\n" },
+        { "assignment", "step = step * 2 + f(step, 1) - 3\n" },
+        { "loop", "loop {\n move 1\n exit if step >= 10\n}\n" },
+        { "exit", "exit if x < 0\n" },
+        { "switch", "switch {\ncase step = 1\n turn 90\ncase step != 2\n turn 180\n}\n" },
+        { "return", "return (x + y) / 2\n" },
+        { "do", "do f(step, angle + 1)\n" },
+        { "color", "color red\n" },
+    };
+
+    /**
+     * Returns the text of one kind of command.
+     * @param kind The name of the kind, as in <code>COMMANDS</code>.
+     * @return The text, ending with an end of line.
+     */
+    static String command(String kind) {
+        for (String[] command : COMMANDS) {
+            if (command[0].equals(kind)) return command[1];
+        }
+        throw new IllegalArgumentException("No command " + kind);
+    }
+
+    /**
+     * Builds a program with an Allbugs block and the given number of Bug
+     * definitions, each of which uses every kind of command.
+     * @param bugs The number of Bug definitions.
+     * @return The program.
+     */
+    static String program(int bugs) {
+        StringBuilder text = new StringBuilder();
+        text.append("Allbugs {\n var step, angle\n")
+            .append(" define f using a, b {\n  return a + b\n }\n}\n");
+        for (int i = 0; i < bugs; i++) {
+            text.append("Bug b").append(i).append(" {\n var direction, other\n")
+                .append(" initially {\n  step = 1\n }\n");
+            for (String[] command : COMMANDS) text.append(command[1]);
+            text.append(" define g using a {\n  // twice a\n  return 2 * a\n }\n}\n");
+        }
+        String program = text.toString();
+        if (!new Recognizer(program).isProgram()) {
+            throw new IllegalStateException("Not a program");
+        }
+        return program;
+    }
+
+    /**
+     * Builds an expression with parentheses nested to a given depth.
+     * @param depth How deeply to nest the parentheses.
+     * @return The expression.
+     */
+    static String expression(int depth) {
+        StringBuilder text = new StringBuilder("1");
+        for (int i = 0; i < depth; i++) {
+            text.insert(0, i % 2 == 0 ? "-(x + " : "f(2, ");
+            text.append(i % 2 == 0 ? ") * y.z" : ") <= 3");
+        }
+        return text.append("\n").toString();
+    }
+}
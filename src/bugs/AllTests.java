@@ -5,6 +5,13 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses({ RecognizerTest.class, TokenTest.class })
+@SuiteClasses({ RecognizerTest.class, TokenTest.class, LexerTest.class,
+                BatchRecognizerTest.class, ParallelRecognizerTest.class,
+                IncrementalRecognizerTest.class,
+                FirstSetsTest.class, GrammarTest.class,
+                ProgramGeneratorTest.class, RecognizerProfileTest.class,
+                FlightRecorderTest.class, RecognitionEventsTest.class,
+                LatencyHistogramTest.class, RecognitionMetricsTest.class,
+                RecognizerPoolTest.class })
 public class AllTests {
 }
\ No newline at end of file
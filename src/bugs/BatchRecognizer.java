@@ -0,0 +1,223 @@
+package bugs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Recognizes many programs at once, on a pool of worker threads. Each
+ * program is recognized independently, with its own Recognizer, and the
+ * results come back in the same order as the programs.
+ * <p>A BatchRecognizer owns its thread pool, so it should be closed
+ * when it is no longer needed.
+ *
+ * @author James Park
+ */
+public class BatchRecognizer implements AutoCloseable {
+    /** The threads that do the recognizing. */
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructs a BatchRecognizer that uses one thread per processor.
+     */
+    public BatchRecognizer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a BatchRecognizer that uses the given number of threads.
+     * @param parallelism The number of programs to recognize at a time.
+     */
+    public BatchRecognizer(int parallelism) {
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Recognizes each of the given programs.
+     * @param programs The texts of the programs.
+     * @return The results, in the same order as the programs.
+     */
+    public Batch recognize(Collection<? extends CharSequence> programs) {
+        return recognize(programs.stream());
+    }
+
+    /**
+     * Recognizes each program in the given stream.
+     * @param programs The texts of the programs.
+     * @return The results, in the same order as the programs.
+     */
+    public Batch recognize(Stream<? extends CharSequence> programs) {
+        long start = System.nanoTime();
+        List<Callable<Outcome>> tasks = programs
+            .map(program -> (Callable<Outcome>) () -> new Outcome(program))
+            .collect(Collectors.toList());
+        List<Outcome> outcomes = invokeAll(pool, tasks);
+        return new Batch(outcomes, System.nanoTime() - start);
+    }
+
+    /**
+     * Runs tasks in a pool, one task per program or definition, and
+     * waits for all of them.
+     * @param pool The pool to run the tasks in.
+     * @param tasks The tasks.
+     * @return The result of each task, in the same order as the tasks.
+     */
+    static <T> List<T> invokeAll(ForkJoinPool pool, List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<T>(tasks.size());
+        try {
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during recognition", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+        return results;
+    }
+
+    /**
+     * Returns the number of threads used for recognition.
+     * @return The parallelism.
+     */
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Shuts down the threads of this BatchRecognizer.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * The result of recognizing one program, and its size.
+     */
+    private static final class Outcome {
+        final RecognitionResult result;
+        final int length;
+
+        Outcome(CharSequence program) {
+            result = RecognitionResult.of(program);
+            length = program.length();
+        }
+    }
+
+    /**
+     * The results of recognizing a batch of programs, together with
+     * throughput figures for the batch as a whole.
+     */
+    public static final class Batch {
+        /** The result for each program, in order. */
+        private final List<RecognitionResult> results;
+        /** The number of programs accepted. */
+        private final int accepted;
+        /** The total number of characters in the programs. */
+        private final long characters;
+        /** The time taken for the whole batch. */
+        private final long elapsedNanos;
+
+        /**
+         * Constructor for Batches.
+         * @param outcomes The outcome for each program, in order.
+         * @param elapsedNanos The time taken for the whole batch.
+         */
+        Batch(List<Outcome> outcomes, long elapsedNanos) {
+            RecognitionResult[] array = new RecognitionResult[outcomes.size()];
+            int accepted = 0;
+            long characters = 0;
+            for (int i = 0; i < array.length; i++) {
+                Outcome outcome = outcomes.get(i);
+                array[i] = outcome.result;
+                if (outcome.result.isAccepted()) accepted++;
+                characters += outcome.length;
+            }
+            this.results = Collections.unmodifiableList(Arrays.asList(array));
+            this.accepted = accepted;
+            this.characters = characters;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Returns the result for each program.
+         * @return The results, in the same order as the programs.
+         */
+        public List<RecognitionResult> getResults() {
+            return results;
+        }
+
+        /**
+         * Returns the number of programs that were accepted.
+         * @return The number of programs accepted.
+         */
+        public int getAccepted() {
+            return accepted;
+        }
+
+        /**
+         * Returns the number of programs that were rejected.
+         * @return The number of programs rejected.
+         */
+        public int getRejected() {
+            return results.size() - accepted;
+        }
+
+        /**
+         * Returns the total number of characters in the programs.
+         * @return The number of characters.
+         */
+        public long getCharacters() {
+            return characters;
+        }
+
+        /**
+         * Returns the wall clock time taken to recognize the batch.
+         * @return The time in nanoseconds.
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Returns the number of programs recognized per second.
+         * @return The throughput in programs per second.
+         */
+        public double getProgramsPerSecond() {
+            return results.size() * 1e9 / Math.max(1, elapsedNanos);
+        }
+
+        /**
+         * Returns the number of characters recognized per second.
+         * @return The throughput in characters per second.
+         */
+        public double getCharactersPerSecond() {
+            return characters * 1e9 / Math.max(1, elapsedNanos);
+        }
+
+        /**
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return String.format("%d programs (%d accepted, %d rejected), %d chars in %.3f ms:"
+                                 + " %.0f programs/s, %.0f chars/s",
+                                 results.size(), accepted, getRejected(), characters,
+                                 elapsedNanos / 1e6, getProgramsPerSecond(),
+                                 getCharactersPerSecond());
+        }
+    }
+}
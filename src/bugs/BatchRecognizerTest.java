@@ -0,0 +1,70 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+/**
+ * Test class for recognizing batches of Bugs programs.
+ *
+ * @author James Park
+ */
+public class BatchRecognizerTest {
+
+    private static final String GOOD = "Bug b {\n move 1\n}\n";
+    private static final String BAD = "Bug b {\n move 1\n turn (\n}\n";
+
+    @Test
+    public final void testResultsInInputOrder() {
+        List<String> programs = new ArrayList<String>();
+        for (int i = 0; i < 500; i++) {
+            programs.add(i % 7 == 3 ? BAD : GOOD);
+        }
+        try (BatchRecognizer batchRecognizer = new BatchRecognizer(4)) {
+            assertEquals(4, batchRecognizer.getParallelism());
+            BatchRecognizer.Batch batch = batchRecognizer.recognize(programs);
+            List<RecognitionResult> results = batch.getResults();
+            assertEquals(programs.size(), results.size());
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(programs.get(i) == GOOD, results.get(i).isAccepted());
+            }
+            assertEquals(71, batch.getRejected());
+            assertEquals(429, batch.getAccepted());
+            assertEquals(429L * GOOD.length() + 71L * BAD.length(), batch.getCharacters());
+            assertTrue(batch.getProgramsPerSecond() > 0);
+        }
+    }
+
+    @Test
+    public final void testRejectedResult() {
+        RecognitionResult result = RecognitionResult.of(BAD);
+        assertFalse(result.isAccepted());
+        assertEquals(3, result.getLine());
+        assertTrue(result.getMessage(), result.getMessage().startsWith("Line 3: "));
+        assertEquals(result.getMessage(), result.toString());
+
+        result = RecognitionResult.of("");
+        assertFalse(result.isAccepted());
+        assertNull(result.getMessage());
+
+        result = RecognitionResult.of(GOOD);
+        assertTrue(result.isAccepted());
+        assertNull(result.getMessage());
+    }
+
+    @Test
+    public final void testStream() {
+        try (BatchRecognizer batchRecognizer = new BatchRecognizer(2)) {
+            BatchRecognizer.Batch batch =
+                batchRecognizer.recognize(Stream.of(BAD, GOOD, new StringBuilder(GOOD)));
+            assertFalse(batch.getResults().get(0).isAccepted());
+            assertTrue(batch.getResults().get(1).isAccepted());
+            assertTrue(batch.getResults().get(2).isAccepted());
+            assertTrue(batch.toString(), batch.toString().startsWith("3 programs (2 accepted"));
+        }
+    }
+}
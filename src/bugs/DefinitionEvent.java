@@ -0,0 +1,74 @@
+package bugs;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A Flight Recorder event for recognizing one top level definition: a
+ * Bug, the Allbugs code, or a function. Only definitions that take
+ * longer than the threshold are recorded, so that the slow ones stand
+ * out, and when Flight Recorder is not recording the event costs nothing.
+ *
+ * @author James Park
+ */
+@Name("bugs.Definition")
+@Label("Definition")
+@Category("Bugs")
+@Description("Recognizing a Bug definition, the Allbugs code or a function definition")
+@Threshold("10 ms")
+@StackTrace(false)
+final class DefinitionEvent extends jdk.jfr.Event {
+    @Label("Kind")
+    @Description("Bug, Allbugs or define")
+    String kind;
+
+    @Label("Name")
+    String name;
+
+    @Label("Line")
+    int line;
+
+    @Label("Characters")
+    @Description("The number of characters read, up to the start of the current token; "
+                 + "not a number of bytes")
+    long length;
+
+    @Label("Tokens")
+    long tokens;
+
+    /**
+     * Starts timing a definition, whose keyword has just been read.
+     * @param kind The keyword.
+     * @param line The line of the keyword.
+     * @param offset The position in the source of the keyword.
+     * @param position The tokens consumed so far.
+     * @return The event.
+     */
+    static DefinitionEvent start(String kind, int line, long offset, long position) {
+        DefinitionEvent event = new DefinitionEvent();
+        event.begin();
+        event.kind = kind;
+        event.line = line;
+        event.length = -offset;
+        event.tokens = 1 - position;
+        return event;
+    }
+
+    /**
+     * Stops timing the definition, and records it if it took long enough.
+     * @param offset The position in the source of the current token.
+     * @param position The tokens consumed so far.
+     */
+    void finish(long offset, long position) {
+        end();
+        if (shouldCommit()) {
+            length += offset;
+            tokens += position;
+            commit();
+        }
+    }
+}
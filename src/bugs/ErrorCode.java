@@ -0,0 +1,202 @@
+package bugs;
+
+/**
+ * What is wrong with a program that the Recognizer rejects. Each syntax
+ * error has its own code, with a constant description that is the
+ * detail of the SyntaxException thrown for it, so a caller can tell
+ * errors apart without comparing Strings. A limit that stops
+ * recognition has a code too; its description includes the value of
+ * the limit, and is only put together when it is asked for.
+ *
+ * @author James Park
+ */
+public enum ErrorCode {
+    // Top level definitions
+    /** No <code>Bug</code> definition where the program should have one. */
+    MISSING_BUG_DEFINITION("Missing Bug definition!"),
+    /** No name after <code>Bug</code>. */
+    NO_NAME_AFTER_BUG("Error after 'Bug'!"),
+    /** No <code>{</code> after <code>Allbugs</code> or a Bug's name. */
+    MISSING_OPEN_BRACE("Missing '{'!"),
+    /** No <code>}</code> at the end of a definition or block. */
+    MISSING_CLOSE_BRACE("Missing '}'!"),
+    /** No end of line after a brace of a definition. */
+    MISSING_EOL("Missing Eol!"),
+    /** A Bug with no commands. */
+    MISSING_COMMAND("Missing command!"),
+    /** No name after <code>var</code>. */
+    NO_NAME_AFTER_VAR("Error after 'var'!"),
+    /** No name after a comma in a variable declaration. */
+    NO_NAME_AFTER_COMMA("No name after ','"),
+    /** No end of line after a variable declaration. */
+    VAR_DECLARATION_MISSING_EOL("Error with EOL"),
+    /** No name after <code>define</code>. */
+    NO_NAME_AFTER_DEFINE("Error after 'define'!"),
+    /** No parameter after <code>using</code>. */
+    NO_VARIABLE_AFTER_USING("Error after 'using'!"),
+    /** No parameter after a comma in a function definition. */
+    NO_VARIABLE_AFTER_COMMA("Error after ','!"),
+    /** No block for a function. */
+    MISSING_FUNCTION_BLOCK("Error with block!"),
+    /** No end of line after the <code>{</code> of a block. */
+    NO_EOL_AFTER_OPEN_BRACE("Error after '{'"),
+    /** No end of line after the <code>}</code> of a block. */
+    BLOCK_MISSING_EOL("MIssing EOL!"),
+
+    // Commands
+    /** No expression after <code>move</code>. */
+    NO_EXPRESSION_AFTER_MOVE("Error after 'move'!"),
+    /** No end of line after a move action. */
+    MOVE_MISSING_EOL("Error after 'move' and expression!"),
+    /** No expression after <code>moveto</code>. */
+    NO_EXPRESSION_AFTER_MOVETO("Error after 'moveto'!"),
+    /** No comma after the first expression of a moveto action. */
+    NO_COMMA_AFTER_MOVETO("Error after 'moveto' and expression!"),
+    /** No expression after the comma of a moveto action. */
+    NO_EXPRESSION_AFTER_MOVETO_COMMA("Error after 'moveto' and expresion and ','"),
+    /** No expression after <code>turn</code>. */
+    NO_EXPRESSION_AFTER_TURN("Error after 'turn'!"),
+    /** No end of line after a turn action. */
+    TURN_MISSING_EOL("Error after 'turn' and expression!"),
+    /** No expression after <code>turnto</code>. */
+    NO_EXPRESSION_AFTER_TURNTO("Error after 'turnto'!"),
+    /** No end of line after a turnto action. */
+    TURNTO_MISSING_EOL("Error after 'turnto' and expression!"),
+    /** No expression after <code>line</code>. */
+    NO_EXPRESSION_AFTER_LINE("Error after 'line'!"),
+    /** Fewer than four expressions in a line action. */
+    NO_COMMA_AFTER_LINE("Error after 'line' and expression!"),
+    /** No expression after a comma of a line action. */
+    NO_EXPRESSION_AFTER_LINE_COMMA("Error after 'line' and expresion and ','"),
+    /** No end of line after a moveto or line action. */
+    ACTION_MISSING_EOL("Error with eol!"),
+    /** No <code>=</code> after the variable of an assignment. */
+    NO_EQUALS_SIGN("Incorrect = sign!"),
+    /** No expression after the <code>=</code> of an assignment. */
+    NO_EXPRESSION_AFTER_EQUALS("No expression after equal sign!"),
+    /** No end of line after an assignment. */
+    ASSIGNMENT_MISSING_EOL("No EOL!"),
+    /** No block after <code>loop</code>. */
+    NO_BLOCK_AFTER_LOOP("Error after loop!"),
+    /** No <code>if</code> after <code>exit</code>. */
+    NO_IF_AFTER_EXIT("Error after 'exit'!"),
+    /** No expression after <code>exit if</code>. */
+    NO_EXPRESSION_AFTER_EXIT_IF("Error after 'exit if'!"),
+    /** No end of line after an exit if statement. */
+    EXIT_IF_MISSING_EOL("Error after 'exit if' and expression!"),
+    /** No <code>{</code> after <code>switch</code>. */
+    SWITCH_MISSING_OPEN_BRACE("Missing '{'"),
+    /** No <code>}</code> at the end of a switch statement. */
+    SWITCH_MISSING_CLOSE_BRACE("Missing '}'"),
+    /** No expression after <code>case</code>. */
+    NO_EXPRESSION_AFTER_CASE("Error after 'case'!"),
+    /** No end of line after a case. */
+    CASE_MISSING_EOL("Missing Eol after 'case' and expression!"),
+    /** No expression after <code>return</code>. */
+    NO_EXPRESSION_AFTER_RETURN("Error after 'return'!"),
+    /** No end of line after a return statement. */
+    RETURN_MISSING_EOL("Error after 'return' and expression!"),
+    /** No function name after <code>do</code>. */
+    NO_VARIABLE_AFTER_DO("Error after 'do'!"),
+    /** No end of line after a do statement. */
+    DO_MISSING_EOL("Missing EOL!"),
+    /** No keyword after <code>color</code>. */
+    NO_KEYWORD_AFTER_COLOR("Error after 'color'!"),
+    /** No end of line after a color statement. */
+    COLOR_MISSING_EOL("Error after 'color' and keyword!"),
+
+    // Expressions
+    /** No name after the dot of a reference to another Bug. */
+    BAD_DOT_NOTATION("Incorrect use of dot notation"),
+    /** No factor after a unary plus or minus. */
+    NO_FACTOR_AFTER_SIGN("No factor following unary plus or minus"),
+    /** No arithmetic expression after a comparator. */
+    NO_OPERAND_AFTER_COMPARATOR("Error after arithmetic expression and comparator!"),
+    /** No term after <code>+</code> or <code>-</code>. */
+    NO_TERM_AFTER_ADD_OPERATOR("Error in arithmetic expression after '+' or '-'"),
+    /** No factor after <code>*</code> or <code>/</code>. */
+    NO_FACTOR_AFTER_MULTIPLY_OPERATOR("No factor after '*' or '/'"),
+    /** No expression after <code>(</code>. */
+    BAD_PARENTHESIZED_EXPRESSION("Error in parenthesized expression"),
+    /** No <code>)</code> after a parenthesized expression. */
+    UNCLOSED_PARENTHESES("Unclosed parenthetical expression"),
+    /** No expression after a comma of a parameter list. */
+    NO_EXPRESSION_AFTER_COMMA("No expression after ','"),
+    /** No <code>)</code> at the end of a parameter list. */
+    UNCLOSED_PARAMETER_LIST("Parameter list doesn't end with ')'"),
+    /** No parameter list after the name of a function call. */
+    NO_PARAMETER_LIST("No parameter list after name!"),
+
+    // Limits
+    /** The program is longer than the most characters allowed. */
+    INPUT_TOO_LONG(LimitExceededException.Limit.LENGTH, "Input longer than ", " characters"),
+    /** More tokens have been read than allowed. */
+    TOO_MANY_TOKENS(LimitExceededException.Limit.TOKENS, "More than ", " tokens"),
+    /** More blocks and switch statements are open than allowed. */
+    NESTED_TOO_DEEP(LimitExceededException.Limit.DEPTH, "Nested more than ", " deep"),
+    /** The time allowed is up. */
+    TIME_LIMIT_EXCEEDED(LimitExceededException.Limit.DEADLINE, "Time limit exceeded", null),
+    /** Recognition was cancelled. */
+    CANCELLED(LimitExceededException.Limit.CANCELLED, "Recognition cancelled", null);
+
+    /** The limit passed, or <code>null</code> for a syntax error. */
+    private final LimitExceededException.Limit limit;
+    /** The description, or the part of it before the value of the limit. */
+    private final String detail;
+    /** The part of the description after the value of the limit, or <code>null</code>. */
+    private final String suffix;
+
+    /**
+     * Constructor for the code of a syntax error.
+     * @param detail The description.
+     */
+    private ErrorCode(String detail) {
+        this(null, detail, null);
+    }
+
+    /**
+     * Constructor for the code of a limit.
+     * @param limit The limit passed.
+     * @param detail The description, or the part of it before the value
+     *        of the limit.
+     * @param suffix The part of the description after the value of the
+     *        limit, or <code>null</code> if it does not include the value.
+     */
+    private ErrorCode(LimitExceededException.Limit limit, String detail, String suffix) {
+        this.limit = limit;
+        this.detail = detail;
+        this.suffix = suffix;
+    }
+
+    /**
+     * Returns the limit that this code is for.
+     * @return The limit, or <code>null</code> for a syntax error.
+     */
+    public LimitExceededException.Limit getLimit() {
+        return limit;
+    }
+
+    /**
+     * Returns the description of the error, without the line number.
+     * @param value The value of the limit passed; ignored for a syntax
+     *        error, or for a limit whose description does not include it.
+     * @return The description.
+     */
+    public String getDetail(long value) {
+        if (suffix == null) return detail;
+        return detail + value + suffix;
+    }
+
+    /**
+     * Makes the exception that is thrown for this error.
+     * @param line The line on which the error was found.
+     * @param value The value of the limit passed, if any.
+     * @param offset The position in the source of the token in error.
+     * @return A LimitExceededException for a limit, and a SyntaxException
+     *         otherwise; neither has a stack trace.
+     */
+    SyntaxException toException(int line, long value, long offset) {
+        if (limit != null) return new LimitExceededException(line, this, value, offset);
+        return new SyntaxException(line, this, value, offset);
+    }
+}
@@ -0,0 +1,386 @@
+package bugs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The FIRST sets of the nonterminals of the Bugs grammar: for each
+ * nonterminal, the set of tokens that can begin it. The sets are
+ * computed once, from the grammar below, which describes what the
+ * <code>isX</code> methods of the Recognizer actually accept; each
+ * nonterminal is named after its method.
+ * <p>A set is a bitset over terminal codes, held in four longs. The
+ * code of a keyword is its keyword ID; names, numbers, end of lines and
+ * the end of input have the codes below; and an ASCII symbol
+ * <code>c</code> has the code <code>SYMBOL + c</code>.
+ *
+ * @author James Park
+ */
+final class FirstSets {
+    /** The code of a name that is not a keyword. */
+    static final int NAME = 64;
+    /** The code of a number. */
+    static final int NUMBER = 65;
+    /** The code of an end of line. */
+    static final int EOL = 66;
+    /** The code of the end of input. */
+    static final int EOF = 67;
+    /** The code of a symbol that is not ASCII. */
+    static final int OTHER_SYMBOL = 68;
+    /** The code of the ASCII symbol with character code 0. */
+    static final int SYMBOL = 128;
+    /** The number of terminal codes, all less than this. */
+    static final int TERMINALS = 256;
+
+    /**
+     * The grammar, one rule per line, in the notation of the Javadoc of
+     * the Recognizer: <code>[ ]</code> is optional, <code>{ }</code> is
+     * repeated, quoted words are keywords or symbols, and NAME, NUMBER,
+     * EOL, EOF and KEYWORD (any keyword) stand for single tokens.
+     */
+    static final String GRAMMAR =
+          "program ::= [ allbugsCode ] bugDefinition { bugDefinition }\n"
+        + "allbugsCode ::= \"Allbugs\" \"{\" eol { varDeclaration } { functionDefinition } \"}\" eol\n"
+        + "bugDefinition ::= \"Bug\" NAME \"{\" eol { varDeclaration } [ initializationBlock ]"
+        + " command { command } { functionDefinition } \"}\" eol\n"
+        + "varDeclaration ::= \"var\" NAME { \",\" NAME } eol\n"
+        + "initializationBlock ::= \"initially\" block\n"
+        + "functionDefinition ::= \"define\" NAME [ \"using\" variable { \",\" variable } ] block\n"
+        + "block ::= \"{\" eol { command } \"}\" eol\n"
+        + "command ::= action | statement\n"
+        + "action ::= moveAction | moveToAction | turnAction | turnToAction | lineAction\n"
+        + "statement ::= assignmentStatement | loopStatement | exitIfStatement | switchStatement"
+        + " | returnStatement | doStatement | colorStatement\n"
+        + "moveAction ::= \"move\" expression eol\n"
+        + "moveToAction ::= \"moveto\" expression \",\" expression eol\n"
+        + "turnAction ::= \"turn\" expression eol\n"
+        + "turnToAction ::= \"turnto\" expression eol\n"
+        + "lineAction ::= \"line\" expression \",\" expression \",\" expression \",\" expression eol\n"
+        + "assignmentStatement ::= variable \"=\" expression eol\n"
+        + "loopStatement ::= \"loop\" block\n"
+        + "exitIfStatement ::= \"exit\" \"if\" expression eol\n"
+        + "switchStatement ::= \"switch\" \"{\" eol { \"case\" expression eol { command } } \"}\" eol\n"
+        + "returnStatement ::= \"return\" expression eol\n"
+        + "doStatement ::= \"do\" variable [ parameterList ] eol\n"
+        + "colorStatement ::= \"color\" KEYWORD eol\n"
+        + "eol ::= EOL { EOL }\n"
+        + "expression ::= arithmeticExpression { comparator arithmeticExpression }\n"
+        + "arithmeticExpression ::= term { addOperator term }\n"
+        + "term ::= factor { multiplyOperator factor }\n"
+        + "factor ::= [ addOperator ] unsignedFactor\n"
+        + "unsignedFactor ::= variable [ \".\" NAME | parameterList ] | NUMBER"
+        + " | \"(\" expression \")\"\n"
+        + "parameterList ::= \"(\" [ expression { \",\" expression } ] \")\"\n"
+        + "functionCall ::= variable parameterList\n"
+        + "comparator ::= \"<\" [ \"=\" ] | \"=\" | \"!\" [ \"=\" ] | \">\" [ \"=\" ]\n"
+        + "addOperator ::= \"+\" | \"-\"\n"
+        + "multiplyOperator ::= \"*\" | \"/\"\n"
+        + "variable ::= NAME\n";
+
+    /** The FIRST set of each nonterminal, in the order of the grammar. */
+    private static final Map<String, long[]> FIRST = new LinkedHashMap<String, long[]>();
+    /** The names of the nonterminals, in the order of the grammar. */
+    private static final String[] NAMES;
+
+    static {
+        if (Token.KEYWORD_COUNT > NAME) {
+            throw new ExceptionInInitializerError("Too many keywords for the FIRST sets");
+        }
+        Map<String, Node> rules = new LinkedHashMap<String, Node>();
+        for (String line : GRAMMAR.split("\n")) {
+            int arrow = line.indexOf("::=");
+            Parser parser = new Parser(line.substring(arrow + 3));
+            rules.put(line.substring(0, arrow).trim(), parser.alternatives());
+            parser.expectEnd();
+        }
+        Map<String, Boolean> nullable = new HashMap<String, Boolean>();
+        for (String name : rules.keySet()) {
+            FIRST.put(name, new long[4]);
+            nullable.put(name, false);
+        }
+        // Add to the sets until nothing changes
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<String, Node> rule : rules.entrySet()) {
+                long[] set = FIRST.get(rule.getKey());
+                long[] before = set.clone();
+                boolean isNullable = rule.getValue().addFirst(set, nullable);
+                if (isNullable != nullable.get(rule.getKey())) {
+                    nullable.put(rule.getKey(), isNullable);
+                    changed = true;
+                }
+                for (int i = 0; i < set.length; i++) {
+                    if (set[i] != before[i]) changed = true;
+                }
+            }
+        }
+        NAMES = FIRST.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * This class only has static methods.
+     */
+    private FirstSets() {}
+
+    /**
+     * Returns the FIRST set of a nonterminal.
+     * @param nonterminal The name of the nonterminal, as in the grammar.
+     * @return The set of the codes of the tokens that can begin it.
+     * @throws IllegalArgumentException If there is no such nonterminal.
+     */
+    static long[] of(String nonterminal) {
+        long[] set = FIRST.get(nonterminal);
+        if (set == null) {
+            throw new IllegalArgumentException("No nonterminal " + nonterminal);
+        }
+        return set.clone();
+    }
+
+    /**
+     * Returns the names of all the nonterminals of the grammar.
+     * @return The names, in the order of the grammar.
+     */
+    static List<String> nonterminals() {
+        return new ArrayList<String>(FIRST.keySet());
+    }
+
+    /**
+     * Returns the ID of a nonterminal: its position in the grammar, from 0.
+     * @param nonterminal The name of the nonterminal, as in the grammar.
+     * @return The ID.
+     * @throws IllegalArgumentException If there is no such nonterminal.
+     */
+    static int id(String nonterminal) {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equals(nonterminal)) return i;
+        }
+        throw new IllegalArgumentException("No nonterminal " + nonterminal);
+    }
+
+    /**
+     * Returns the name of a nonterminal.
+     * @param id The ID of the nonterminal.
+     * @return The name, as in the grammar.
+     */
+    static String name(int id) {
+        return NAMES[id];
+    }
+
+    /**
+     * Returns the number of nonterminals in the grammar.
+     * @return The number, one more than the largest ID.
+     */
+    static int count() {
+        return NAMES.length;
+    }
+
+    /**
+     * Tells whether a set contains a terminal code.
+     * @param set The set.
+     * @param terminal The terminal code.
+     * @return <code>true</code> if the code is in the set.
+     */
+    static boolean contains(long[] set, int terminal) {
+        return (set[terminal >>> 6] & (1L << terminal)) != 0;
+    }
+
+    /**
+     * Returns the terminal code of a symbol.
+     * @param c The character of the symbol.
+     * @return The code.
+     */
+    static int symbol(int c) {
+        return c < 128 ? SYMBOL + c : OTHER_SYMBOL;
+    }
+
+    /**
+     * A part of the right hand side of a rule.
+     */
+    private abstract static class Node {
+        /**
+         * Adds the codes of the tokens that can begin this part to a set.
+         * @param set The set to add to.
+         * @param nullable Which nonterminals are known to match nothing.
+         * @return <code>true</code> if this part can match nothing.
+         */
+        abstract boolean addFirst(long[] set, Map<String, Boolean> nullable);
+    }
+
+    /**
+     * A single token, or a class of tokens.
+     */
+    private static final class Terminal extends Node {
+        final long[] codes = new long[4];
+
+        Terminal(int... codes) {
+            for (int code : codes) this.codes[code >>> 6] |= 1L << code;
+        }
+
+        @Override
+        boolean addFirst(long[] set, Map<String, Boolean> nullable) {
+            for (int i = 0; i < set.length; i++) set[i] |= codes[i];
+            return false;
+        }
+    }
+
+    /**
+     * A reference to a nonterminal.
+     */
+    private static final class Nonterminal extends Node {
+        final String name;
+
+        Nonterminal(String name) {
+            this.name = name;
+        }
+
+        @Override
+        boolean addFirst(long[] set, Map<String, Boolean> nullable) {
+            long[] first = FIRST.get(name);
+            if (first == null) throw new ExceptionInInitializerError("No rule for " + name);
+            for (int i = 0; i < set.length; i++) set[i] |= first[i];
+            return nullable.get(name);
+        }
+    }
+
+    /**
+     * A sequence of parts, optional (<code>[ ]</code>), repeated
+     * (<code>{ }</code>) or neither.
+     */
+    private static final class Sequence extends Node {
+        final List<Node> parts = new ArrayList<Node>();
+        final boolean optional;
+
+        Sequence(boolean optional) {
+            this.optional = optional;
+        }
+
+        @Override
+        boolean addFirst(long[] set, Map<String, Boolean> nullable) {
+            for (Node part : parts) {
+                if (!part.addFirst(set, nullable)) return optional;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A choice between alternatives.
+     */
+    private static final class Choice extends Node {
+        final List<Node> alternatives = new ArrayList<Node>();
+
+        @Override
+        boolean addFirst(long[] set, Map<String, Boolean> nullable) {
+            boolean result = false;
+            for (Node alternative : alternatives) {
+                if (alternative.addFirst(set, nullable)) result = true;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Reads the right hand side of a rule.
+     */
+    private static final class Parser {
+        final String[] words;
+        int next;
+
+        Parser(String text) {
+            words = text.trim().split("\\s+");
+        }
+
+        /**
+         * Reads alternatives separated by <code>|</code>.
+         * @return The choice, or the only alternative.
+         */
+        Node alternatives() {
+            Choice choice = new Choice();
+            choice.alternatives.add(sequence(false));
+            while (next < words.length && words[next].equals("|")) {
+                next++;
+                choice.alternatives.add(sequence(false));
+            }
+            return choice.alternatives.size() == 1 ? choice.alternatives.get(0) : choice;
+        }
+
+        /**
+         * Reads parts up to the end of an alternative.
+         * @param optional Whether the sequence may match nothing.
+         * @return The sequence.
+         */
+        Sequence sequence(boolean optional) {
+            Sequence sequence = new Sequence(optional);
+            while (next < words.length) {
+                String word = words[next];
+                if (word.equals("|") || word.equals("]") || word.equals("}")) break;
+                next++;
+                if (word.equals("[") || word.equals("{")) {
+                    Node inner = alternatives();
+                    expect(word.equals("[") ? "]" : "}");
+                    Sequence wrapper = new Sequence(true);
+                    wrapper.parts.add(inner);
+                    sequence.parts.add(wrapper);
+                } else {
+                    sequence.parts.add(part(word));
+                }
+            }
+            return sequence;
+        }
+
+        /**
+         * Makes the part for a single word of the grammar.
+         * @param word The word.
+         * @return The part.
+         */
+        Node part(String word) {
+            if (word.startsWith("\"")) {
+                String value = word.substring(1, word.length() - 1);
+                int id = Token.keywordId(value);
+                if (id != Token.NOT_A_KEYWORD && Token.isKeyword(value)) return new Terminal(id);
+                if (value.length() != 1) {
+                    throw new ExceptionInInitializerError("Not a token: " + word);
+                }
+                return new Terminal(symbol(value.charAt(0)));
+            }
+            switch (word) {
+                case "NAME": return new Terminal(NAME);
+                case "NUMBER": return new Terminal(NUMBER);
+                case "EOL": return new Terminal(EOL);
+                case "EOF": return new Terminal(EOF);
+                case "KEYWORD":
+                    Terminal keywords = new Terminal();
+                    for (String keyword : Token.KEYWORDS) {
+                        int id = Token.keywordId(keyword);
+                        keywords.codes[id >>> 6] |= 1L << id;
+                    }
+                    return keywords;
+                default: return new Nonterminal(word);
+            }
+        }
+
+        /**
+         * Reads a word that must come next.
+         * @param word The word.
+         */
+        void expect(String word) {
+            if (next >= words.length || !words[next].equals(word)) {
+                throw new ExceptionInInitializerError("Expected " + word + " in grammar");
+            }
+            next++;
+        }
+
+        /**
+         * Checks that all of the rule has been read.
+         */
+        void expectEnd() {
+            if (next != words.length) {
+                throw new ExceptionInInitializerError("Unexpected " + words[next] + " in grammar");
+            }
+        }
+    }
+}
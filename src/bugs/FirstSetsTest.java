@@ -0,0 +1,116 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test class for the FIRST sets of the grammar. The main test checks
+ * the sets against the Recognizer itself, so the grammar in
+ * <code>FirstSets</code> cannot drift from the <code>isX</code> methods.
+ *
+ * @author James Park
+ */
+public class FirstSetsTest {
+
+    @Test
+    public final void testSomeSets() {
+        long[] expression = FirstSets.of("expression");
+        assertTrue(FirstSets.contains(expression, FirstSets.NAME));
+        assertTrue(FirstSets.contains(expression, FirstSets.NUMBER));
+        assertTrue(FirstSets.contains(expression, FirstSets.symbol('(')));
+        assertTrue(FirstSets.contains(expression, FirstSets.symbol('-')));
+        assertFalse(FirstSets.contains(expression, FirstSets.symbol('*')));
+        assertFalse(FirstSets.contains(expression, Token.MOVE));
+
+        long[] program = FirstSets.of("program");
+        assertTrue(FirstSets.contains(program, Token.ALLBUGS));
+        assertTrue(FirstSets.contains(program, Token.BUG));
+        assertFalse(FirstSets.contains(program, FirstSets.EOL));
+
+        long[] command = FirstSets.of("command");
+        for (int keyword : new int[] { Token.MOVE, Token.MOVETO, Token.TURN, Token.TURNTO,
+                                       Token.LINE, Token.LOOP, Token.EXIT, Token.SWITCH,
+                                       Token.RETURN, Token.DO, Token.COLOR }) {
+            assertTrue(FirstSets.contains(command, keyword));
+        }
+        assertTrue(FirstSets.contains(command, FirstSets.NAME));
+        assertFalse(FirstSets.contains(command, Token.BUG));
+    }
+
+    /**
+     * The Recognizer chooses a production of &lt;command&gt; from a table
+     * built from the FIRST sets; check that it picks the right one for
+     * each token that can start a command, and none for any other.
+     */
+    @Test
+    public final void testCommandTableAgreesWithSets() {
+        String[] commands = { "move 1\n", "moveto 1, 2\n", "turn 1\n", "turnto 1\n",
+                              "line 1, 2, 3, 4\n", "x = 1\n", "loop {\n}\n", "exit if 1\n",
+                              "switch {\n}\n", "return 1\n", "do f\n", "color red\n" };
+        for (String command : commands) {
+            Recognizer recognizer = new Recognizer(command);
+            assertTrue(command, recognizer.isCommand());
+            assertEquals(command, Token.EOF, recognizer.nextToken());
+        }
+        long[] first = FirstSets.of("command");
+        for (String sample : new String[] { "Bug", "var", "(", "1", "{", "}", "\n", "" }) {
+            Lexer lexer = new Lexer(sample);
+            lexer.next();
+            assertFalse(sample, FirstSets.contains(first, lexer.terminal()));
+            assertFalse(sample, new Recognizer(sample).isCommand());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void testNoSuchNonterminal() {
+        FirstSets.of("nothing");
+    }
+
+    /**
+     * For every nonterminal and every kind of token, the method for the
+     * nonterminal must reject the token, without consuming it, when the
+     * token is not in the FIRST set; otherwise it must consume the token,
+     * so the set holds no token that the method does not start with.
+     */
+    @Test
+    public final void testSetsAgreeWithRecognizer() throws Exception {
+        List<String> samples = new ArrayList<String>(Token.KEYWORDS);
+        samples.add("abc");
+        samples.add("red");
+        samples.add("12");
+        samples.add("\n");
+        samples.add("");
+        samples.add("\"s\"");
+        for (char c = 33; c < 127; c++) {
+            if (!Character.isLetterOrDigit(c) && c != '"') samples.add(String.valueOf(c));
+        }
+        for (String nonterminal : FirstSets.nonterminals()) {
+            long[] first = FirstSets.of(nonterminal);
+            Method method = Recognizer.class.getMethod(
+                "is" + Character.toUpperCase(nonterminal.charAt(0)) + nonterminal.substring(1));
+            for (String sample : samples) {
+                String input = sample + " $\n";
+                Lexer lexer = new Lexer(input);
+                lexer.next();
+                Token expected = lexer.token();
+                boolean inFirst = FirstSets.contains(first, lexer.terminal());
+                Recognizer recognizer = new Recognizer(input);
+                try {
+                    boolean result = (Boolean) method.invoke(recognizer);
+                    boolean consumed = result || !expected.equals(recognizer.nextToken());
+                    assertEquals(nonterminal + " " + expected, inFirst, consumed);
+                } catch (InvocationTargetException e) {
+                    assertTrue(nonterminal + " " + expected,
+                               e.getCause() instanceof SyntaxException);
+                    assertTrue(nonterminal + " " + expected, inFirst);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package bugs;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the most recent events of each recognition in a ring buffer, and
+ * writes them to a file when the recognition is slow or throws an
+ * exception. The events are entering and leaving each nonterminal and
+ * pushing back a token; a recording can be read back and printed as a
+ * derivation trace with <code>FlightRecording</code>.
+ * <p>Recording is on by default: every Recognizer made by a Grammar
+ * writes its events, as primitive codes and positions, straight into
+ * the ring buffer of <code>getDefault()</code>, which writes its
+ * recordings to the <code>bugs-recordings</code> directory in the
+ * temporary directory. <code>setDefault</code> chooses another
+ * recorder, or turns recording off, and
+ * <code>Grammar.withFlightRecorder</code> chooses one for one Grammar.
+ * <p>Each thread has its own ring buffer, made the first time the thread
+ * recognizes something, so recording needs no locking and allocates
+ * nothing. A recognition starts when a nonterminal is entered with none
+ * open, and ends when that nonterminal is left. Only the last
+ * <code>capacity</code> events of a recognition are kept. The clock is
+ * only read every <code>CLOCK_INTERVAL</code> events, so the time of an
+ * event is the time of the last reading before it.
+ * <p>A recording is written by the thread whose recognition ended, so to
+ * keep a burst of failures from slowing recognition down, at most
+ * <code>maxDumpsPerMinute</code> recordings are written, spread evenly;
+ * the rest are counted by <code>getSkipped</code> and dropped.
+ *
+ * @author James Park
+ */
+public final class FlightRecorder {
+    /** The number of events kept by default. */
+    public static final int DEFAULT_CAPACITY = 4096;
+    /** The most recordings written a minute by default. */
+    public static final int DEFAULT_MAX_DUMPS_PER_MINUTE = 60;
+    /** How long, in milliseconds, a recognition may take before the default recorder writes it. */
+    public static final long DEFAULT_THRESHOLD_MILLIS = 1000;
+    /** The number of events recorded between readings of the clock, a power of two. */
+    static final int CLOCK_INTERVAL = 64;
+
+    /** The kind of event for entering a nonterminal. */
+    static final int ENTER = 0;
+    /** The kind of event for leaving a nonterminal is this plus the outcome. */
+    static final int EXIT = 1;
+    /** The kind of event for pushing back a token. */
+    static final int PUSH_BACK = 4;
+
+    /** The recorder used by the Recognizers a Grammar makes, or <code>null</code>. */
+    private static volatile FlightRecorder defaultRecorder = new FlightRecorder(
+        Paths.get(System.getProperty("java.io.tmpdir"), "bugs-recordings"),
+        DEFAULT_THRESHOLD_MILLIS, TimeUnit.MILLISECONDS);
+
+    /** Where recordings are written. */
+    private final Path directory;
+    /** How long, in nanoseconds, a recognition may take before it is written. */
+    private final long threshold;
+    /** The number of events kept, a power of two. */
+    private final int capacity;
+    /** The number of recordings written so far, for naming them. */
+    private final AtomicLong dumps = new AtomicLong();
+    /** The number of recordings that could not be written. */
+    private final AtomicLong failures = new AtomicLong();
+    /** The number of recordings not written because of the rate limit. */
+    private final AtomicLong skipped = new AtomicLong();
+    /** The time, in nanoseconds, that must pass between two recordings. */
+    private final long dumpInterval;
+    /** The value of <code>System.nanoTime()</code> from which the next recording may be written. */
+    private final AtomicLong nextDump;
+    /** The ring buffer of each thread. */
+    private final ThreadLocal<Ring> rings = new ThreadLocal<Ring>() {
+        @Override
+        protected Ring initialValue() {
+            return new Ring(FlightRecorder.this);
+        }
+    };
+
+    /**
+     * The events of the recognition going on in one thread.
+     */
+    static final class Ring {
+        /** The recorder this ring belongs to. */
+        private final FlightRecorder recorder;
+        /** The kind of each event, shifted left 8, plus the nonterminal. */
+        final short[] kinds;
+        /** The token offset of each event, or for an exit the tokens consumed. */
+        final long[] values;
+        /** The time of each event, in nanoseconds from the start. */
+        final long[] times;
+        /** The number of events recorded in this recognition. */
+        long count;
+        /** The number of nonterminals open. */
+        int depth;
+        /** The value of <code>System.nanoTime()</code> at the start. */
+        long start;
+        /** The value of <code>System.currentTimeMillis()</code> at the start. */
+        long started;
+        /** The time of the last reading of the clock, in nanoseconds from the start. */
+        private long now;
+
+        /**
+         * Constructor for Rings.
+         * @param recorder The recorder the ring belongs to.
+         */
+        private Ring(FlightRecorder recorder) {
+            this.recorder = recorder;
+            kinds = new short[recorder.capacity];
+            values = new long[recorder.capacity];
+            times = new long[recorder.capacity];
+        }
+
+        /**
+         * Records entering a nonterminal. If none is open, this starts a
+         * new recognition.
+         * @param nonterminal The ID of the nonterminal.
+         * @param offset The position in the source of the current token.
+         */
+        void enter(int nonterminal, long offset) {
+            if (depth++ == 0) {
+                count = 0;
+                start = System.nanoTime();
+                started = System.currentTimeMillis();
+                now = 0;
+            }
+            add(ENTER, nonterminal, offset);
+        }
+
+        /**
+         * Records leaving a nonterminal. If it ends a recognition that was
+         * slow or threw an exception, the recording is written.
+         * @param nonterminal The ID of the nonterminal.
+         * @param outcome How trying it ended, as a RecognizerListener outcome.
+         * @param tokens The tokens it consumed.
+         */
+        void exit(int nonterminal, int outcome, long tokens) {
+            if (--depth > 0) {
+                add(EXIT + outcome, nonterminal, tokens);
+                return;
+            }
+            now = System.nanoTime() - start;
+            add(EXIT + outcome, nonterminal, tokens);
+            recorder.ended(this, outcome, now);
+        }
+
+        /**
+         * Records pushing back a token, if a recognition is going on.
+         * @param offset The position in the source of the token.
+         */
+        void pushBack(long offset) {
+            if (depth > 0) add(PUSH_BACK, 0, offset);
+        }
+
+        /**
+         * Records an event, overwriting the oldest if the ring is full.
+         * @param kind The kind of event.
+         * @param nonterminal The ID of the nonterminal, or 0.
+         * @param value The token offset, or the tokens consumed.
+         */
+        private void add(int kind, int nonterminal, long value) {
+            long n = count++;
+            if ((n & (CLOCK_INTERVAL - 1)) == 0 && n > 0) now = System.nanoTime() - start;
+            int i = (int) n & (kinds.length - 1);
+            kinds[i] = (short) (kind << 8 | nonterminal);
+            values[i] = value;
+            times[i] = now;
+        }
+    }
+
+    /**
+     * Constructs a FlightRecorder that keeps <code>DEFAULT_CAPACITY</code> events.
+     * @param directory Where recordings are written; it is made if it does not exist.
+     * @param threshold How long a recognition may take before it is written.
+     * @param unit The unit of <code>threshold</code>.
+     */
+    public FlightRecorder(Path directory, long threshold, TimeUnit unit) {
+        this(directory, threshold, unit, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a FlightRecorder.
+     * @param directory Where recordings are written; it is made if it does not exist.
+     * @param threshold How long a recognition may take before it is written.
+     * @param unit The unit of <code>threshold</code>.
+     * @param capacity The number of events kept, from 1 to 2<sup>24</sup>,
+     *        rounded up to a power of two.
+     */
+    public FlightRecorder(Path directory, long threshold, TimeUnit unit, int capacity) {
+        this(directory, threshold, unit, capacity, DEFAULT_MAX_DUMPS_PER_MINUTE);
+    }
+
+    /**
+     * Constructs a FlightRecorder.
+     * @param directory Where recordings are written; it is made if it does not exist.
+     * @param threshold How long a recognition may take before it is written.
+     * @param unit The unit of <code>threshold</code>.
+     * @param capacity The number of events kept, from 1 to 2<sup>24</sup>,
+     *        rounded up to a power of two.
+     * @param maxDumpsPerMinute The most recordings written a minute, at least 1.
+     */
+    public FlightRecorder(Path directory, long threshold, TimeUnit unit, int capacity,
+                          int maxDumpsPerMinute) {
+        if (capacity < 1 || capacity > 1 << 24) {
+            throw new IllegalArgumentException("Not a capacity: " + capacity);
+        }
+        if (maxDumpsPerMinute < 1) {
+            throw new IllegalArgumentException("Not a rate: " + maxDumpsPerMinute);
+        }
+        this.directory = directory;
+        this.threshold = unit.toNanos(threshold);
+        this.capacity = Integer.highestOneBit(capacity * 2 - 1);
+        this.dumpInterval = TimeUnit.MINUTES.toNanos(1) / maxDumpsPerMinute;
+        this.nextDump = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Returns the recorder used by the Recognizers that a Grammar makes,
+     * unless it was given one of its own.
+     * @return The recorder, or <code>null</code> if recording is off.
+     */
+    public static FlightRecorder getDefault() {
+        return defaultRecorder;
+    }
+
+    /**
+     * Sets the recorder used by the Recognizers that a Grammar makes from
+     * now on, unless it was given one of its own.
+     * @param recorder The recorder, or <code>null</code> to turn recording off.
+     */
+    public static void setDefault(FlightRecorder recorder) {
+        defaultRecorder = recorder;
+    }
+
+    /**
+     * Returns the ring buffer of the current thread, for a Recognizer to
+     * record its events in.
+     * @return The ring buffer.
+     */
+    Ring ring() {
+        return rings.get();
+    }
+
+    /**
+     * Writes the recording of a recognition that has just ended, if it
+     * was slow or threw an exception.
+     * @param ring The ring buffer holding it.
+     * @param outcome How it ended.
+     * @param duration How long it took, in nanoseconds.
+     */
+    private void ended(Ring ring, int outcome, long duration) {
+        if (outcome == RecognizerListener.THREW || duration >= threshold) {
+            dump(ring, outcome, duration);
+        }
+    }
+
+    /**
+     * Returns the number of recordings written.
+     * @return The number written so far.
+     */
+    public long getDumps() {
+        return dumps.get() - failures.get();
+    }
+
+    /**
+     * Returns the number of recordings that were not written because
+     * more were due than the rate limit allows.
+     * @return The number skipped so far.
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * Returns the number of recordings that could not be written. Failing
+     * to write a recording never affects recognition.
+     * @return The number of failures so far.
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Writes the events in a ring buffer to a new file in the directory,
+     * unless one was written too recently. The format is described in
+     * <code>FlightRecording</code>.
+     * @param ring The ring buffer.
+     * @param outcome How the recognition ended.
+     * @param duration How long it took, in nanoseconds.
+     */
+    private void dump(Ring ring, int outcome, long duration) {
+        long now = System.nanoTime();
+        long next = nextDump.get();
+        if (now - next < 0 || !nextDump.compareAndSet(next, now + dumpInterval)) {
+            skipped.incrementAndGet();
+            return;
+        }
+        long n = dumps.incrementAndGet();
+        Path file = directory.resolve("recognition-" + ring.started + "-" + n + FlightRecording.SUFFIX);
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(FlightRecording.MAGIC);
+            out.writeByte(FlightRecording.VERSION);
+            out.writeByte(outcome);
+            out.writeLong(ring.started);
+            out.writeLong(duration);
+            out.writeByte(RecognizerListener.nonterminals());
+            for (int id = 0; id < RecognizerListener.nonterminals(); id++) {
+                out.writeUTF(RecognizerListener.name(id));
+            }
+            long first = Math.max(0, ring.count - ring.kinds.length);
+            out.writeLong(first);
+            out.writeInt((int) (ring.count - first));
+            for (long e = first; e < ring.count; e++) {
+                int i = (int) e & (ring.kinds.length - 1);
+                out.writeShort(ring.kinds[i]);
+                out.writeLong(ring.values[i]);
+                out.writeLong(ring.times[i]);
+            }
+        } catch (IOException e) {
+            failures.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Test class for FlightRecorder and FlightRecording.
+ *
+ * @author James Park
+ */
+public class FlightRecorderTest {
+
+    private static final String GOOD = "Bug b {\n loop {\n  move 1\n }\n}\n";
+    private static final String BAD = "Bug b {\n move 1\n turn (\n}\n";
+
+    @Test
+    public final void testDumps() throws IOException {
+        Path directory = Files.createTempDirectory("bugs");
+        try {
+            FlightRecorder recorder = new FlightRecorder(directory, 1, TimeUnit.HOURS);
+            Grammar grammar = Grammar.DEFAULT.withFlightRecorder(recorder);
+            assertTrue(grammar.isProgram(GOOD));
+            assertTrue(grammar.isProgram(GOOD));
+            assertEquals(0, recordings(directory).size());
+
+            assertFalse(grammar.recognize(BAD).isAccepted());
+            List<Path> files = recordings(directory);
+            assertEquals(1, files.size());
+            assertEquals(1, recorder.getDumps());
+            FlightRecording recording = FlightRecording.read(files.get(0));
+            assertEquals(RecognizerListener.THREW, recording.getOutcome());
+            assertEquals(0, recording.getDropped());
+            String trace = recording.toString();
+            assertTrue(trace, trace.startsWith("Recognition threw after "));
+            assertTrue(trace, trace.contains(" program @ 0\n"));
+            assertTrue(trace, trace.contains("| | | moveAction recognized, 3 tokens\n"));
+            assertTrue(trace, trace.contains("turnAction threw"));
+            assertTrue(trace, trace.contains("pushBack @ "));
+            assertTrue(trace, trace.trim().endsWith("program threw, 9 tokens"));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public final void testOnByDefault() throws IOException {
+        Path directory = Files.createTempDirectory("bugs");
+        FlightRecorder before = FlightRecorder.getDefault();
+        assertNotNull(before);
+        try {
+            FlightRecorder recorder = new FlightRecorder(directory.resolve("made"), 0, TimeUnit.NANOSECONDS,
+                                                         FlightRecorder.DEFAULT_CAPACITY, Integer.MAX_VALUE);
+            FlightRecorder.setDefault(recorder);
+            assertTrue(Grammar.DEFAULT.isProgram(GOOD));
+            assertEquals(1, recorder.getDumps());
+            assertEquals(1, recordings(directory.resolve("made")).size());
+            delete(directory.resolve("made"));
+
+            FlightRecorder.setDefault(null);
+            assertSame(Recognizer.class, Grammar.DEFAULT.recognizer(GOOD).getClass());
+            assertTrue(Grammar.DEFAULT.withFlightRecorder(recorder).isProgram(GOOD));
+            assertEquals(2, recorder.getDumps());
+            delete(directory.resolve("made"));
+        } finally {
+            FlightRecorder.setDefault(before);
+            delete(directory);
+        }
+    }
+
+    @Test
+    public final void testPeeksAreNotPushBacks() {
+        final int[] pushBacks = new int[1];
+        RecognizerListener listener = new RecognizerListener() {
+            @Override
+            public void enter(int nonterminal, long offset) {
+            }
+
+            @Override
+            public void exit(int nonterminal, int outcome, long tokens, long nanos) {
+            }
+
+            @Override
+            public void pushBack(long offset) {
+                pushBacks[0]++;
+            }
+        };
+        Recognizer recognizer = new ListeningRecognizer(new Lexer("move 1\nturn 2\n"), listener, null);
+        assertTrue(recognizer.isCommand());
+        assertTrue(recognizer.isCommand());
+        // Each end of line is followed by reading a token and pushing it
+        // back; peeking at the first token to choose a command is not one
+        assertEquals(2, pushBacks[0]);
+        assertEquals(3, recognizer.lineNumber);
+    }
+
+    @Test
+    public final void testRateLimit() throws IOException {
+        Path directory = Files.createTempDirectory("bugs");
+        try {
+            FlightRecorder recorder = new FlightRecorder(directory, 1, TimeUnit.HOURS,
+                                                         FlightRecorder.DEFAULT_CAPACITY, 1);
+            Grammar grammar = Grammar.DEFAULT.withFlightRecorder(recorder);
+            for (int i = 0; i < 5; i++) {
+                assertFalse(grammar.recognize(BAD).isAccepted());
+            }
+            assertEquals(1, recordings(directory).size());
+            assertEquals(1, recorder.getDumps());
+            assertEquals(4, recorder.getSkipped());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public final void testRingWraps() throws IOException {
+        Path directory = Files.createTempDirectory("bugs");
+        try {
+            FlightRecorder recorder = new FlightRecorder(directory, 0, TimeUnit.NANOSECONDS, 10);
+            assertTrue(Grammar.DEFAULT.withFlightRecorder(recorder).isProgram(GOOD));
+            FlightRecording recording = FlightRecording.read(recordings(directory).get(0));
+            assertEquals(RecognizerListener.RECOGNIZED, recording.getOutcome());
+            assertEquals(16, recording.getEvents());
+            assertTrue(recording.getDropped() > 0);
+            String trace = recording.toString();
+            assertTrue(trace, trace.trim().endsWith("program recognized, 14 tokens"));
+            assertFalse(trace, trace.contains(" program @ 0"));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    /**
+     * Lists the recordings in a directory.
+     */
+    private List<Path> recordings(Path directory) throws IOException {
+        List<Path> files = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.bfr")) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Deletes a directory and the files in it.
+     */
+    private void delete(Path directory) throws IOException {
+        for (Path file : recordings(directory)) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,188 @@
+package bugs;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * A recording written by a FlightRecorder, read back so that it can be
+ * printed as a derivation trace. Running this class prints each file
+ * named on the command line.
+ * <p>A recording is written with <code>DataOutputStream</code>: the int
+ * <code>MAGIC</code>, the byte <code>VERSION</code>, the outcome of
+ * the recognition as a byte, the time it started in milliseconds and
+ * how long it took in nanoseconds as longs, the number of nonterminals
+ * as a byte followed by their names, the number of events that were
+ * overwritten as a long, and the number of events as an int followed
+ * by the events. Each event is a short holding its kind shifted left 8
+ * plus the ID of its nonterminal, a long holding the token offset (for
+ * an exit, the tokens consumed), and a long holding its time in
+ * nanoseconds from the start, as last read from the clock before it.
+ *
+ * @author James Park
+ */
+public final class FlightRecording {
+    /** The first four bytes of every recording. */
+    static final int MAGIC = 0x42554746;
+    /** The version of the format. */
+    static final int VERSION = 1;
+    /** The file name extension of recordings. */
+    static final String SUFFIX = ".bfr";
+
+    /** The words for each outcome. */
+    private static final String[] OUTCOMES = { "recognized", "not recognized", "threw" };
+
+    /** How the recognition ended, as a RecognizerListener outcome. */
+    private final int outcome;
+    /** When it started, in milliseconds since the epoch. */
+    private final long started;
+    /** How long it took, in nanoseconds. */
+    private final long duration;
+    /** The names of the nonterminals, by ID. */
+    private final String[] names;
+    /** The number of events overwritten before the first one kept. */
+    private final long dropped;
+    /** The kind and nonterminal of each event. */
+    private final short[] kinds;
+    /** The token offset of each event, or for an exit the tokens consumed. */
+    private final long[] values;
+    /** The time of each event, in nanoseconds from the start. */
+    private final long[] times;
+
+    /**
+     * Reads a recording.
+     * @param in The recording, which is read to the end of the events.
+     * @throws IOException If the recording cannot be read or is not one.
+     */
+    FlightRecording(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC || data.readUnsignedByte() != VERSION) {
+            throw new IOException("Not a flight recording");
+        }
+        outcome = data.readUnsignedByte();
+        started = data.readLong();
+        duration = data.readLong();
+        names = new String[data.readUnsignedByte()];
+        for (int id = 0; id < names.length; id++) {
+            names[id] = data.readUTF();
+        }
+        dropped = data.readLong();
+        int count = data.readInt();
+        kinds = new short[count];
+        values = new long[count];
+        times = new long[count];
+        for (int i = 0; i < count; i++) {
+            kinds[i] = data.readShort();
+            values[i] = data.readLong();
+            times[i] = data.readLong();
+        }
+    }
+
+    /**
+     * Reads a recording from a file.
+     * @param file The file written by a FlightRecorder.
+     * @return The recording.
+     * @throws IOException If the file cannot be read or is not a recording.
+     */
+    public static FlightRecording read(Path file) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            return new FlightRecording(in);
+        }
+    }
+
+    /**
+     * Returns how the recognition ended.
+     * @return <code>RecognizerListener.RECOGNIZED</code>,
+     *         <code>NOT_RECOGNIZED</code> or <code>THREW</code>.
+     */
+    public int getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * Returns when the recognition started.
+     * @return The time in milliseconds since the epoch.
+     */
+    public long getStarted() {
+        return started;
+    }
+
+    /**
+     * Returns how long the recognition took.
+     * @return The time in nanoseconds.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Returns the number of events kept.
+     * @return The number of events in the recording.
+     */
+    public int getEvents() {
+        return kinds.length;
+    }
+
+    /**
+     * Returns the number of earlier events that were overwritten.
+     * @return The number of events recorded but not kept.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Returns the derivation trace: one line for each event, giving its
+     * time in microseconds, indented by the number of nonterminals open.
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        int depth = 0;
+        int least = 0;
+        for (short kind : kinds) {
+            if (kind >> 8 == FlightRecorder.ENTER) depth++;
+            else if (kind >> 8 != FlightRecorder.PUSH_BACK) least = Math.min(least, --depth);
+        }
+        StringBuilder trace = new StringBuilder();
+        trace.append(String.format("Recognition %s after %.3f ms, %d events (%d dropped)%n",
+                                   OUTCOMES[outcome], duration / 1e6, kinds.length, dropped));
+        depth = -least;
+        for (int i = 0; i < kinds.length; i++) {
+            int kind = kinds[i] >> 8;
+            String name = names[kinds[i] & 0xFF];
+            if (kind != FlightRecorder.ENTER && kind != FlightRecorder.PUSH_BACK) depth--;
+            trace.append(String.format("%12.3f ", times[i] / 1e3));
+            for (int j = 0; j < depth; j++) {
+                trace.append("| ");
+            }
+            if (kind == FlightRecorder.ENTER) {
+                trace.append(name).append(" @ ").append(values[i]);
+                depth++;
+            } else if (kind == FlightRecorder.PUSH_BACK) {
+                trace.append("pushBack @ ").append(values[i]);
+            } else {
+                trace.append(name).append(' ').append(OUTCOMES[kind - FlightRecorder.EXIT])
+                     .append(", ").append(values[i]).append(" tokens");
+            }
+            trace.append(String.format("%n"));
+        }
+        return trace.toString();
+    }
+
+    /**
+     * Prints the derivation traces of recordings.
+     * @param args The names of the files written by a FlightRecorder.
+     * @throws IOException If a file cannot be read or is not a recording.
+     */
+    public static void main(String[] args) throws IOException {
+        for (String file : args) {
+            System.out.println(file);
+            System.out.print(read(Paths.get(file)));
+        }
+    }
+}
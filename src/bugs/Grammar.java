@@ -0,0 +1,262 @@
+package bugs;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Bugs grammar together with the limits to recognize programs under.
+ * A Grammar never changes, so one can be shared by any number of threads,
+ * including virtual threads, without synchronization. The tables that
+ * drive recognition (the FIRST sets and the command table) are built once,
+ * when the Recognizer class is loaded, and are shared by every Recognizer.
+ * <p>All the state of recognizing one text, such as the tokenizer, the
+ * line number and the nesting depth, is kept in a Recognizer, which acts
+ * as a cursor over that text. <code>isProgram</code> and
+ * <code>recognize</code> borrow a Recognizer from a small pool kept by
+ * the Grammar, reset it for the text and give it back afterwards, so its
+ * buffers are reused rather than made again for every call. No thread
+ * keeps one of its own, and a listener that recognizes another text with
+ * the same Grammar, on the same thread, borrows a different Recognizer
+ * from the one it was called from. <code>recognizer</code> gives a new one to a
+ * caller that wants to recognize something other than a whole program.
+ * <p>Unless <code>FlightRecorder.setDefault(null)</code> has turned it
+ * off, the Recognizers of every Grammar record what they do in a
+ * FlightRecorder, so that a slow or failed recognition can be looked
+ * at afterwards.
+ *
+ * @author James Park
+ */
+public final class Grammar {
+    /** The grammar with no limits other than the default nesting depth. */
+    public static final Grammar DEFAULT =
+        new Grammar(Recognizer.DEFAULT_MAX_DEPTH, Long.MAX_VALUE, Long.MAX_VALUE, -1,
+                    null, null, null);
+
+    /** The most blocks and switch statements open at once. */
+    private final int maxDepth;
+    /** The most characters a text may have. */
+    private final long maxLength;
+    /** The most tokens that may be read. */
+    private final long maxTokens;
+    /** How long recognition of a text may take, in nanoseconds, or -1. */
+    private final long timeLimit;
+    /** Told about each nonterminal tried, or <code>null</code>. */
+    private final RecognizerListener listener;
+    /** Where the latency of each program is recorded, or <code>null</code>. */
+    private final RecognitionMetrics metrics;
+    /** Records the events of each recognition, or <code>null</code> for the default. */
+    private final FlightRecorder recorder;
+    /** The idle Recognizers, for <code>isProgram</code> and <code>recognize</code>. */
+    private final RecognizerPool cursors = new RecognizerPool();
+
+    /**
+     * Constructor for Grammars.
+     * @param maxDepth The most blocks and switch statements open at once.
+     * @param maxLength The most characters a text may have.
+     * @param maxTokens The most tokens that may be read.
+     * @param timeLimit How long recognition may take, in nanoseconds, or -1.
+     * @param listener Told about each nonterminal tried, or <code>null</code>.
+     * @param metrics Where the latency of each program is recorded, or <code>null</code>.
+     * @param recorder Records the events of each recognition, or <code>null</code>.
+     */
+    private Grammar(int maxDepth, long maxLength, long maxTokens, long timeLimit,
+                    RecognizerListener listener, RecognitionMetrics metrics,
+                    FlightRecorder recorder) {
+        this.maxDepth = maxDepth;
+        this.maxLength = maxLength;
+        this.maxTokens = maxTokens;
+        this.timeLimit = timeLimit;
+        this.listener = listener;
+        this.metrics = metrics;
+        this.recorder = recorder;
+    }
+
+    /**
+     * Returns a Grammar like this one but with a different nesting limit.
+     * @param maxDepth The most blocks and switch statements that may be
+     *        open at once, at least 1.
+     * @return The new Grammar.
+     * @see Recognizer#setMaxDepth(int)
+     */
+    public Grammar withMaxDepth(int maxDepth) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("Maximum depth must be at least 1: " + maxDepth);
+        }
+        return new Grammar(maxDepth, maxLength, maxTokens, timeLimit, listener, metrics, recorder);
+    }
+
+    /**
+     * Returns a Grammar like this one but with a different length limit.
+     * @param maxLength The most characters a text may have, at least 0.
+     * @return The new Grammar.
+     * @see Recognizer#setMaxLength(long)
+     */
+    public Grammar withMaxLength(long maxLength) {
+        if (maxLength < 0) {
+            throw new IllegalArgumentException("Maximum length must be at least 0: " + maxLength);
+        }
+        return new Grammar(maxDepth, maxLength, maxTokens, timeLimit, listener, metrics, recorder);
+    }
+
+    /**
+     * Returns a Grammar like this one but with a different token limit.
+     * @param maxTokens The most tokens that may be read, at least 1.
+     * @return The new Grammar.
+     * @see Recognizer#setMaxTokens(long)
+     */
+    public Grammar withMaxTokens(long maxTokens) {
+        if (maxTokens < 1) {
+            throw new IllegalArgumentException("Maximum tokens must be at least 1: " + maxTokens);
+        }
+        return new Grammar(maxDepth, maxLength, maxTokens, timeLimit, listener, metrics, recorder);
+    }
+
+    /**
+     * Returns a Grammar like this one but with a time limit, which each
+     * recognition has from the time its Recognizer is made.
+     * @param timeout How long recognition may take, at least 0.
+     * @param unit The unit of <code>timeout</code>.
+     * @return The new Grammar.
+     * @see Recognizer#setTimeLimit(long, TimeUnit)
+     */
+    public Grammar withTimeLimit(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Time limit must be at least 0: " + timeout);
+        }
+        return new Grammar(maxDepth, maxLength, maxTokens, unit.toNanos(timeout),
+                           listener, metrics, recorder);
+    }
+
+    /**
+     * Returns a Grammar like this one but whose Recognizers tell a
+     * listener about each nonterminal they try, such as a
+     * <code>RecognizerProfile</code>. The listener is shared by every
+     * Recognizer the Grammar makes, so it must be thread safe if they
+     * are used on more than one thread.
+     * @param listener The listener, or <code>null</code> for none.
+     * @return The new Grammar.
+     */
+    public Grammar withListener(RecognizerListener listener) {
+        return new Grammar(maxDepth, maxLength, maxTokens, timeLimit, listener, metrics, recorder);
+    }
+
+    /**
+     * Returns a Grammar like this one but whose Recognizers record how
+     * long each program takes, by its size and the outcome, in the given
+     * metrics rather than the default ones.
+     * @param metrics Where to record, or <code>null</code> for the default.
+     * @return The new Grammar.
+     */
+    public Grammar withMetrics(RecognitionMetrics metrics) {
+        return new Grammar(maxDepth, maxLength, maxTokens, timeLimit, listener, metrics, recorder);
+    }
+
+    /**
+     * Returns a Grammar like this one but whose Recognizers record the
+     * events of each recognition in the given FlightRecorder rather than
+     * the default one.
+     * @param recorder Where to record, or <code>null</code> for the default.
+     * @return The new Grammar.
+     * @see FlightRecorder#getDefault()
+     */
+    public Grammar withFlightRecorder(FlightRecorder recorder) {
+        return new Grammar(maxDepth, maxLength, maxTokens, timeLimit, listener, metrics, recorder);
+    }
+
+    /**
+     * Makes a Recognizer for a text, with the limits of this Grammar. The
+     * Recognizer belongs to the caller, and should only be used by one
+     * thread at a time.
+     * @param text The text to be recognized.
+     * @return The new Recognizer.
+     */
+    public Recognizer recognizer(CharSequence text) {
+        Lexer lexer = new Lexer(text);
+        FlightRecorder recorder = recorder();
+        if (listener == null && recorder == null) return limit(new Recognizer(lexer));
+        return limit(new ListeningRecognizer(lexer, listener, recorder));
+    }
+
+    /**
+     * Returns the FlightRecorder that a Recognizer made now records in.
+     * @return The recorder, or <code>null</code> if none.
+     */
+    private FlightRecorder recorder() {
+        return recorder != null ? recorder : FlightRecorder.getDefault();
+    }
+
+    /**
+     * Borrows an idle Recognizer, reset to recognize a text with the
+     * limits of this Grammar, or makes one if none is idle. It belongs to
+     * the caller until it is given back to <code>cursors</code>.
+     * @param text The text to be recognized.
+     * @return The Recognizer.
+     */
+    private Recognizer cursor(CharSequence text) {
+        Recognizer recognizer = cursors.borrow();
+        if (recognizer == null || recognizer.getRecorder() != recorder()) {
+            return recognizer(text);
+        }
+        return limit(recognizer.reset(text));
+    }
+
+    /**
+     * Applies the limits of this Grammar to a Recognizer that has none.
+     * @param recognizer The Recognizer.
+     * @return The Recognizer.
+     */
+    private Recognizer limit(Recognizer recognizer) {
+        if (maxDepth != Recognizer.DEFAULT_MAX_DEPTH) recognizer.setMaxDepth(maxDepth);
+        if (maxLength != Long.MAX_VALUE) recognizer.setMaxLength(maxLength);
+        if (maxTokens != Long.MAX_VALUE) recognizer.setMaxTokens(maxTokens);
+        if (timeLimit >= 0) recognizer.setTimeLimit(timeLimit, TimeUnit.NANOSECONDS);
+        if (metrics != null) recognizer.setMetrics(metrics);
+        return recognizer;
+    }
+
+    /**
+     * Tries to recognize a &lt;program&gt;.
+     * @param text The program.
+     * @return <code>true</code> if a program is found.
+     * @throws SyntaxException If the program has an error, or goes past
+     *         one of the limits of this Grammar.
+     * @see Recognizer#isProgram()
+     */
+    public boolean isProgram(CharSequence text) {
+        Recognizer recognizer = cursor(text);
+        try {
+            return recognizer.isProgram();
+        } finally {
+            cursors.giveBack(recognizer);
+        }
+    }
+
+    /**
+     * Recognizes a program.
+     * @param text The program.
+     * @return Whether it was accepted and, if not, where and why it
+     *         was rejected.
+     * @see Recognizer#recognizeProgram()
+     */
+    public RecognitionResult recognize(CharSequence text) {
+        Recognizer recognizer = cursor(text);
+        try {
+            return recognizer.recognizeProgram();
+        } finally {
+            cursors.giveBack(recognizer);
+        }
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "Grammar[maxDepth=" + maxDepth
+            + (maxLength != Long.MAX_VALUE ? ", maxLength=" + maxLength : "")
+            + (maxTokens != Long.MAX_VALUE ? ", maxTokens=" + maxTokens : "")
+            + (timeLimit >= 0 ? ", timeLimit=" + timeLimit + "ns" : "")
+            + (listener != null ? ", listener=" + listener.getClass().getSimpleName() : "")
+            + (metrics != null ? ", metrics" : "")
+            + (recorder != null ? ", recorder" : "") + "]";
+    }
+}
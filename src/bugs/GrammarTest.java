@@ -0,0 +1,109 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Test class for sharing a Grammar.
+ *
+ * @author James Park
+ */
+public class GrammarTest {
+
+    private static final String GOOD = "Bug b {\n loop {\n  loop {\n   move 1\n  }\n }\n}\n";
+    private static final String BAD = "Bug b {\n move 1\n turn (\n}\n";
+
+    @Test
+    public final void testLimits() {
+        assertTrue(Grammar.DEFAULT.isProgram(GOOD));
+        assertEquals(RecognitionResult.of(BAD).toString(), Grammar.DEFAULT.recognize(BAD).toString());
+
+        Grammar grammar = Grammar.DEFAULT.withMaxDepth(1).withMaxTokens(100);
+        assertEquals(LimitExceededException.Limit.DEPTH, grammar.recognize(GOOD).getLimit());
+        assertTrue(grammar.withMaxDepth(2).isProgram(GOOD));
+        assertEquals(LimitExceededException.Limit.TOKENS,
+                     grammar.withMaxTokens(5).recognize(BAD).getLimit());
+        assertEquals(LimitExceededException.Limit.LENGTH,
+                     grammar.withMaxLength(10).recognize(BAD).getLimit());
+        assertEquals(LimitExceededException.Limit.DEADLINE,
+                     grammar.withTimeLimit(0, TimeUnit.SECONDS).recognize(GOOD).getLimit());
+        assertEquals("Grammar[maxDepth=1, maxTokens=100]", grammar.toString());
+        assertEquals("Grammar[maxDepth=" + Recognizer.DEFAULT_MAX_DEPTH + "]",
+                     Grammar.DEFAULT.toString());
+    }
+
+    @Test
+    public final void testRecognizerReused() {
+        Grammar grammar = Grammar.DEFAULT.withMaxTokens(40);
+        String longer = GOOD.replace("move 1", "move 1\n   move 2\n   move 3");
+        assertEquals(LimitExceededException.Limit.TOKENS, grammar.recognize(longer + longer).getLimit());
+        assertTrue(grammar.isProgram(GOOD));
+        assertEquals(3, grammar.recognize(BAD).getLine());
+        assertTrue(grammar.isProgram(longer));
+        assertFalse(grammar.isProgram("move 1\n"));
+        assertNotSame(grammar.recognizer(GOOD), grammar.recognizer(GOOD));
+    }
+
+    @Test
+    public final void testReentrant() {
+        final Grammar[] grammar = new Grammar[1];
+        final RecognitionResult[] inner = new RecognitionResult[4];
+        final int[] calls = new int[1];
+        grammar[0] = Grammar.DEFAULT.withListener(new RecognizerListener() {
+            @Override
+            public void enter(int nonterminal, long offset) {
+                // Recognize another program, with the same Grammar, from
+                // inside the blocks of the outer one
+                if (calls[0] < inner.length && nonterminal == FirstSets.id("block")) {
+                    int call = calls[0]++;
+                    inner[call] = grammar[0].recognize(call % 2 == 0 ? BAD : GOOD);
+                }
+            }
+
+            @Override
+            public void exit(int nonterminal, int outcome, long tokens, long nanos) {
+            }
+        });
+        assertTrue(grammar[0].isProgram(GOOD));
+        assertTrue(grammar[0].recognize(GOOD).isAccepted());
+        assertEquals(3, grammar[0].recognize(BAD).getLine());
+        assertEquals(inner.length, calls[0]);
+        for (int i = 0; i < inner.length; i++) {
+            assertEquals(i % 2 != 0, inner[i].isAccepted());
+            if (i % 2 == 0) assertEquals(3, inner[i].getLine());
+        }
+    }
+
+    @Test
+    public final void testSharedBetweenThreads() throws Exception {
+        final Grammar grammar = Grammar.DEFAULT.withMaxDepth(10);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 64; i++) {
+                final String program = i % 3 == 0 ? BAD : GOOD;
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 200; j++) {
+                        RecognitionResult result = grammar.recognize(program);
+                        if (result.isAccepted() != (program == GOOD)) return false;
+                        if (!result.isAccepted() && result.getLine() != 3) return false;
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package bugs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Recognizes a program that is being edited. The program is kept as a
+ * list of parts, one for each top level <code>Allbugs</code> or
+ * <code>Bug</code> definition, together with the tokens of each part
+ * and the result of recognizing it. An edit re-tokenizes and
+ * re-recognizes only the parts it touches, so the work done for an
+ * edit depends on the size of the definitions edited, not on the size
+ * of the program.
+ * <p>The text of the parts is tokenized again only from the start of
+ * the first part touched to the end of a line outside all braces, since
+ * an edit may open a comment or a block that swallows the parts after
+ * it. Each part taken in is tokenized on its own and its tokens added
+ * to the ones already made, so taking in many parts costs no more than
+ * tokenizing them once. The offset of the end of each part is kept, so
+ * finding the part that an edit falls in is a binary search.
+ * <code>isProgram()</code> gives the same verdict, and throws the
+ * same SyntaxException, as <code>new Recognizer(getText()).isProgram()</code>.
+ *
+ * @author James Park
+ */
+public class IncrementalRecognizer {
+    /** The top level definitions of the program, in order. */
+    private final List<Part> parts = new ArrayList<Part>();
+    /** The index in the program just past the last character of each part. */
+    private int[] ends = new int[16];
+    /** The number of characters in the program. */
+    private int length;
+
+    /**
+     * Constructs an IncrementalRecognizer for the given program.
+     * @param text The program.
+     */
+    public IncrementalRecognizer(CharSequence text) {
+        TokenBuffer tokens = new TokenBuffer(text);
+        split(tokens, parts);
+        index(0);
+        length = text.length();
+    }
+
+    /**
+     * Replaces some of the characters of the program.
+     * @param offset The index of the first character to be replaced.
+     * @param removed The number of characters to be replaced.
+     * @param inserted The characters to put in their place.
+     */
+    public void edit(int offset, int removed, CharSequence inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > length) {
+            throw new IndexOutOfBoundsException("Edit of " + removed + " at " + offset
+                                                + " in " + length + " characters");
+        }
+        // Include the parts on both sides of the edit, so that a token
+        // ending just before it or starting just after it is lexed again
+        int first = partAt(offset - 1);
+        int last = partAt(offset + removed);
+        int start = offsetOf(first);
+        StringBuilder text = new StringBuilder();
+        for (int i = first; i <= last; i++) parts.get(i).appendTo(text);
+        text.replace(offset - start, offset - start + removed, inserted.toString());
+
+        TokenBuffer tokens = new TokenBuffer(text);
+        while (true) {
+            if (first > 0 && !tokens.startsDefinition()) {
+                // The text no longer starts a definition, so it belongs to
+                // the one before; that one does start a definition, so
+                // this is only done once
+                text.setLength(0);
+                parts.get(--first).appendTo(text);
+                text.append(tokens.buf, 0, tokens.end);
+                tokens = new TokenBuffer(text);
+            } else if (last + 1 < parts.size() && !tokens.endsBetweenDefinitions()) {
+                parts.get(++last).appendTo(tokens);
+            } else {
+                break;
+            }
+        }
+        List<Part> replacement = new ArrayList<Part>();
+        split(tokens, replacement);
+        parts.subList(first, last + 1).clear();
+        parts.addAll(first, replacement);
+        index(first);
+        length += inserted.length() - removed;
+    }
+
+    /**
+     * Tries to recognize the program as a &lt;program&gt;, using the
+     * results kept for each of its parts.
+     * <pre>&lt;program&gt; ::= [ &lt;allbugs code&gt; ] &lt;bug definition&gt; { &lt;bug definition&gt; }</pre>
+     * @return <code>true</code> if a program is found.
+     * @see Recognizer#isProgram()
+     */
+    public boolean isProgram() {
+        int bugs = 0;
+        int line = 1;
+        for (int i = 0; i < parts.size(); i++) {
+            Part part = parts.get(i);
+            ParallelRecognizer.Segment segment = part.segment;
+            if (segment == null) return false; // Neither Allbugs nor Bug at the start
+            if (segment.allbugs && i > 0) break; // Not a Bug definition
+            if (segment.error != null) {
+                if (segment.ranIntoNext && i + 1 < parts.size()) {
+                    return isProgramFrom(i, line);
+                }
+                // Recognize the part again to number the error from the right line
+                SyntaxException e = new ParallelRecognizer.Segment(part.tokens, part.from,
+                                                                   part.to, line).error;
+                throw e.getError().toException(e.getLine(), e.getValue(),
+                                               e.getOffset() - part.start + offsetOf(i));
+            }
+            if (segment.allbugs) {
+                if (!segment.complete) return false;
+            } else {
+                bugs++;
+                if (!segment.complete) break;
+            }
+            line += part.lines;
+        }
+        return bugs > 0;
+    }
+
+    /**
+     * Returns the text of the program.
+     * @return The program, with all edits applied.
+     */
+    public String getText() {
+        StringBuilder text = new StringBuilder(length);
+        for (Part part : parts) part.appendTo(text);
+        return text.toString();
+    }
+
+    /**
+     * Returns the number of parts the program is kept in.
+     * @return The number of parts.
+     */
+    int partCount() {
+        return parts.size();
+    }
+
+    /**
+     * Recognizes the rest of the program sequentially, starting from a
+     * part whose definition ran into the part after it.
+     * @param i The index of the part.
+     * @param line The line number of the start of the part.
+     * @return <code>true</code> if a program is found.
+     */
+    private boolean isProgramFrom(int i, int line) {
+        StringBuilder text = new StringBuilder();
+        for (int j = i; j < parts.size(); j++) parts.get(j).appendTo(text);
+        Recognizer recognizer = new Recognizer(new Lexer(text));
+        recognizer.setMetrics(null); // Only part of the work of an edit
+        recognizer.lineNumber = line;
+        if (i == 0) return recognizer.isProgram();
+        while (recognizer.isBugDefinition()) {
+            ;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the index of the part holding a character.
+     * @param offset The index of the character in the program.
+     * @return The index of the part, clamped to the range of parts.
+     */
+    private int partAt(int offset) {
+        int low = 0;
+        int high = parts.size() - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (offset < ends[middle]) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index in the program of the first character of a part.
+     * @param i The index of the part.
+     * @return The index of its first character.
+     */
+    private int offsetOf(int i) {
+        return i == 0 ? 0 : ends[i - 1];
+    }
+
+    /**
+     * Works out the end of each part from one on, after the parts from
+     * there on have changed.
+     * @param from The index of the first part that changed.
+     */
+    private void index(int from) {
+        if (ends.length < parts.size()) {
+            ends = Arrays.copyOf(ends, Math.max(ends.length * 2, parts.size()));
+        }
+        int end = offsetOf(from);
+        for (int i = from; i < parts.size(); i++) {
+            end += parts.get(i).length;
+            ends[i] = end;
+        }
+    }
+
+    /**
+     * Splits tokenized text into parts, one for each top level definition
+     * and one for anything before the first of them, and recognizes each
+     * of the definitions.
+     * @param tokens The tokens of the text.
+     * @param into The list to add the parts to.
+     */
+    private static void split(TokenBuffer tokens, List<Part> into) {
+        int[] starts = tokens.definitionStarts();
+        int end = tokens.size() - 1;
+        if (starts.length == 0 || starts[0] != 0) {
+            into.add(new Part(tokens, 0, starts.length == 0 ? end : starts[0], false));
+        }
+        for (int i = 0; i < starts.length; i++) {
+            into.add(new Part(tokens, starts[i], i + 1 < starts.length ? starts[i + 1] : end,
+                              true));
+        }
+    }
+
+    /**
+     * One top level definition, or the text before the first of them.
+     */
+    private static final class Part {
+        /** The tokens of the text this part was tokenized with. */
+        final TokenBuffer tokens;
+        /** The index of the first token of this part. */
+        final int from;
+        /** The index of the first token after this part. */
+        final int to;
+        /** The index in the tokenized text of the first character of this part. */
+        final int start;
+        /** The number of characters in this part. */
+        final int length;
+        /** The number of lines this part moves the line number on by. */
+        final int lines;
+        /** The result of recognizing the definition, or <code>null</code>. */
+        final ParallelRecognizer.Segment segment;
+
+        /**
+         * Constructs a Part for a range of tokens.
+         * @param tokens The tokens of the text.
+         * @param from The index of the first token of the part.
+         * @param to The index of the first token after the part.
+         * @param definition Whether the part is a definition to be recognized.
+         */
+        Part(TokenBuffer tokens, int from, int to, boolean definition) {
+            this.tokens = tokens;
+            this.from = from;
+            this.to = to;
+            start = from == 0 ? 0 : tokens.startAt(from);
+            int end = to == tokens.size() - 1 ? tokens.end : tokens.startAt(to);
+            length = end - start;
+            lines = tokens.lineAt(to) - tokens.lineAt(from);
+            segment = definition ? new ParallelRecognizer.Segment(tokens, from, to, 1) : null;
+        }
+
+        /**
+         * Appends the text of this part.
+         * @param text The text to append to.
+         */
+        void appendTo(StringBuilder text) {
+            text.append(tokens.buf, start, length);
+        }
+
+        /**
+         * Appends the text of this part to some tokenized text, and
+         * tokenizes it.
+         * @param text The tokens of the text to append to.
+         */
+        void appendTo(TokenBuffer text) {
+            text.append(tokens.buf, start, length);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test class for recognizing a program incrementally as it is edited.
+ *
+ * @author James Park
+ */
+public class IncrementalRecognizerTest {
+
+    private static final String PROGRAM =
+        "Allbugs {\n var a, b\n define f using x {\n return x * 2\n }\n}\n"
+        + "Bug one {\n var c\n initially {\n c = 1\n }\n move f(c) // {\n"
+        + " loop {\n exit if c > 10\n c = c + 1\n }\n}\n\n"
+        + "Bug two {\n turn 90\n do f (a)\n line 0, 0, 1, 1\n}\n"
+        + "Bug three {\n /* } */ color red\n switch {\n case a < b\n move 1\n }\n}\n";
+
+    @Test
+    public final void testEdits() {
+        IncrementalRecognizer recognizer = new IncrementalRecognizer(PROGRAM);
+        assertEquals(4, recognizer.partCount());
+        assertTrue(recognizer.isProgram());
+
+        int at = PROGRAM.indexOf("turn 90") + 5;
+        recognizer.edit(at, 2, "");
+        assertEquals(PROGRAM.replace("turn 90", "turn "), recognizer.getText());
+        assertEquals(4, recognizer.partCount());
+        try {
+            recognizer.isProgram();
+            fail();
+        } catch (SyntaxException e) {
+            assertEquals("Line 20: Error after 'turn'!", e.getMessage());
+        }
+        recognizer.edit(at, 0, "45");
+        assertTrue(recognizer.isProgram());
+
+        // Opening a comment swallows every definition after it
+        recognizer.edit(at, 0, "/*");
+        assertEquals(3, recognizer.partCount());
+        recognizer.edit(at, 2, "");
+        assertEquals(4, recognizer.partCount());
+        assertEquals(PROGRAM.replace("turn 90", "turn 45"), recognizer.getText());
+    }
+
+    @Test
+    public final void testRandomEditsSameAsSequential() {
+        Random random = new Random(594);
+        String[] snippets = { "{", "}", "\n", " ", "x", "Bug b {\n move 1\n}\n", "/*", "*/",
+                              "//", "\"", "Allbugs {\n}\n", "move 2\n", "B" };
+        IncrementalRecognizer recognizer = new IncrementalRecognizer(PROGRAM);
+        StringBuilder expected = new StringBuilder(PROGRAM);
+        for (int i = 0; i < 2000; i++) {
+            int offset = random.nextInt(expected.length() + 1);
+            int removed = random.nextInt(Math.min(4, expected.length() - offset + 1));
+            String inserted = random.nextInt(3) == 0 ? ""
+                : snippets[random.nextInt(snippets.length)];
+            recognizer.edit(offset, removed, inserted);
+            expected.replace(offset, offset + removed, inserted);
+            assertEquals(expected.toString(), recognizer.getText());
+            assertEquals(expected.toString(), verdict(new Recognizer(expected.toString())),
+                         verdict(recognizer));
+            if (i % 100 == 99) {
+                recognizer = new IncrementalRecognizer(PROGRAM);
+                expected = new StringBuilder(PROGRAM);
+            }
+        }
+    }
+
+    /**
+     * Returns the verdict of a Recognizer on a program, or its error message.
+     * @param recognizer The Recognizer.
+     * @return The verdict or message.
+     */
+    private String verdict(Recognizer recognizer) {
+        try {
+            return "" + recognizer.isProgram();
+        } catch (SyntaxException e) {
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Returns the verdict of an IncrementalRecognizer, or its error message.
+     * @param recognizer The IncrementalRecognizer.
+     * @return The verdict or message.
+     */
+    private String verdict(IncrementalRecognizer recognizer) {
+        try {
+            return "" + recognizer.isProgram();
+        } catch (SyntaxException e) {
+            return e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package bugs;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds, with buckets laid out as in
+ * an HDR histogram: each power of two is split into 32 equal buckets,
+ * so a recorded value is known to within about 3%, and durations from
+ * a nanosecond to about 18 minutes need only 1152 counters. Longer
+ * durations are counted in the last bucket, though the largest value
+ * is kept exactly.
+ * <p>Recording is lock-free and any number of threads may record at
+ * once. The histogram never grows. A <code>snapshot</code> copies the
+ * counts so that percentiles can be worked out from them.
+ *
+ * @author James Park
+ */
+public final class LatencyHistogram {
+    /** The number of bits of a value that pick its bucket within a power of two. */
+    private static final int SUB_BITS = 5;
+    /** The number of buckets each power of two is split into. */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    /** The largest power of two that has buckets of its own. */
+    private static final int MAX_EXPONENT = 39;
+    /** The number of buckets. */
+    private static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BITS + 1) * SUB_BUCKETS;
+
+    /** The number of values in each bucket. */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    /** The total of the values recorded. */
+    private final AtomicLong sum = new AtomicLong();
+    /** The largest value recorded. */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration.
+     * @param nanos The duration in nanoseconds; a negative one counts as 0.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.getAndIncrement(bucket(nanos));
+        sum.getAndAdd(nanos);
+        long largest;
+        while (nanos > (largest = max.get()) && !max.compareAndSet(largest, nanos)) {
+            ;
+        }
+    }
+
+    /**
+     * Sets all the counts back to zero. Values recorded at the same time
+     * may be partly counted.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Copies the counts. Values recorded at the same time may be partly
+     * counted, so the count, sum and maximum may disagree slightly.
+     * @return The snapshot.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, sum.get(), max.get());
+    }
+
+    /**
+     * Finds the bucket that a value is counted in.
+     * @param value A value, at least 0.
+     * @return The index of the bucket.
+     */
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) return BUCKETS - 1;
+        int shift = exponent - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Returns the largest value that is counted in a bucket.
+     * @param bucket The index of the bucket.
+     * @return The largest value.
+     */
+    static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * The counts of a LatencyHistogram at one moment.
+     */
+    public static final class Snapshot {
+        /** The number of values in each bucket. */
+        private final long[] counts;
+        /** The number of values. */
+        private final long count;
+        /** The total of the values. */
+        private final long sum;
+        /** The largest value. */
+        private final long max;
+
+        /**
+         * Constructor for Snapshots.
+         * @param counts The number of values in each bucket.
+         * @param sum The total of the values.
+         * @param max The largest value.
+         */
+        private Snapshot(long[] counts, long sum, long max) {
+            long n = 0;
+            for (long c : counts) {
+                n += c;
+            }
+            this.counts = counts;
+            this.count = n;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * Returns the number of values recorded.
+         * @return The number.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the total of the values recorded.
+         * @return The total in nanoseconds.
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * Returns the largest value recorded.
+         * @return The value in nanoseconds, or 0 if there are none.
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Returns the mean of the values recorded.
+         * @return The mean in nanoseconds, or 0 if there are none.
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Returns a value that the given percentage of the values recorded
+         * are no larger than. It is the largest value of the bucket the
+         * percentile falls in, so it is at most about 3% too high.
+         * @param percentile The percentage, from 0 to 100.
+         * @return The value in nanoseconds, or 0 if there are none.
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("Not a percentile: " + percentile);
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen < rank) continue;
+                return i == counts.length - 1 ? max : Math.min(highestValue(i), max);
+            }
+            return 0;
+        }
+
+        /**
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return String.format("count=%d, p50=%.3fms, p99=%.3fms, p999=%.3fms, max=%.3fms",
+                count, getValueAtPercentile(50) / 1e6, getValueAtPercentile(99) / 1e6,
+                getValueAtPercentile(99.9) / 1e6, max / 1e6);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Test class for LatencyHistogram.
+ *
+ * @author James Park
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public final void testBuckets() {
+        long previous = -1;
+        for (int i = 0; i < 1152; i++) {
+            long highest = LatencyHistogram.highestValue(i);
+            assertEquals(i, LatencyHistogram.bucket(previous + 1));
+            assertEquals(i, LatencyHistogram.bucket(highest));
+            assertTrue(highest - previous <= Math.max(1, highest / 32));
+            previous = highest;
+        }
+        assertEquals((1L << 40) - 1, previous);
+        assertEquals(1151, LatencyHistogram.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public final void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.snapshot().getValueAtPercentile(99));
+        for (long value = 1; value <= 100000; value++) {
+            histogram.record(value * 1000);
+        }
+        histogram.record(-5);
+        histogram.record(1L << 50);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100002, snapshot.getCount());
+        assertEquals(1L << 50, snapshot.getMax());
+        assertEquals(0, snapshot.getValueAtPercentile(0));
+        assertEquals(1L << 50, snapshot.getValueAtPercentile(100));
+        for (double percentile : new double[] { 10, 50, 99, 99.9 }) {
+            long exact = (long) Math.ceil(percentile / 100 * 100002) * 1000;
+            long value = snapshot.getValueAtPercentile(percentile);
+            assertTrue(percentile + ": " + value, value >= exact - 1000);
+            assertTrue(percentile + ": " + value, value <= exact * 33 / 32);
+        }
+        assertTrue(snapshot.toString(), snapshot.toString().startsWith("count=100002, p50=50."));
+
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().getMax());
+    }
+
+    @Test
+    public final void testConcurrentRecording() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Long>> futures = new ArrayList<Future<Long>>();
+            for (int i = 0; i < 8; i++) {
+                final long seed = i;
+                futures.add(executor.submit(() -> {
+                    Random random = new Random(seed);
+                    long sum = 0;
+                    for (int j = 0; j < 100000; j++) {
+                        long value = random.nextInt(1 << 20);
+                        histogram.record(value);
+                        sum += value;
+                    }
+                    return sum;
+                }));
+            }
+            long sum = 0;
+            for (Future<Long> future : futures) {
+                sum += future.get();
+            }
+            assertEquals(800000, histogram.snapshot().getCount());
+            assertEquals(sum, histogram.snapshot().getSum());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,847 @@
+package bugs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * A tokenizer for the Bugs language that works directly on the
+ * characters of the source.
+ * <p>It returns exactly the token codes that a <code>StreamTokenizer</code>
+ * configured the way the <code>Recognizer</code> used to configure one
+ * would return: numbers are parsed, end of lines are significant,
+ * <code>/* ... *&#47;</code> and <code>// ...</code> comments are skipped,
+ * <code>"</code> is the only quote character, and all other punctuation
+ * is returned as an ordinary character. Unlike a <code>StreamTokenizer</code>
+ * it does not read through a synchronized <code>Reader</code> or consult a
+ * character class table for every character.
+ * <p>A Lexer either holds all of its input in memory, or reads it from a
+ * <code>Reader</code> into a fixed-size window that is refilled as tokens
+ * are consumed. Only the characters of the current token are kept when
+ * the window is refilled, so the window grows only for a single token
+ * longer than the window itself.
+ * <p>The fields <code>ttype</code>, <code>sval</code> and <code>nval</code>
+ * and the token types <code>TT_*</code> mean what they mean in a
+ * <code>StreamTokenizer</code>, and have the same values, but a Lexer
+ * does not extend one, so making a Lexer sets up no syntax table.
+ *
+ * @author James Park
+ */
+class Lexer implements Closeable {
+    /** The token type at the end of input. */
+    static final int TT_EOF = -1;
+    /** The token type of an end of line. */
+    static final int TT_EOL = '\n';
+    /** The token type of a number, whose value is in <code>nval</code>. */
+    static final int TT_NUMBER = -2;
+    /** The token type of a word, whose value is in <code>sval</code>. */
+    static final int TT_WORD = -3;
+    /** The token type before the first call of <code>nextToken()</code>. */
+    static final int TT_NOTHING = -4;
+    /** The number of characters read from a Reader at a time. */
+    static final int WINDOW_SIZE = 8192;
+    /** The most characters scanned between calls of the poll. */
+    static final int POLL_INTERVAL = 4096;
+
+    /**
+     * The type of the current token: one of the <code>TT_*</code>
+     * constants, or for a quoted string or an ordinary character, the
+     * character itself.
+     */
+    int ttype = TT_NOTHING;
+    /** The value of the current word or quoted string, or <code>null</code>. */
+    String sval;
+    /** The value of the current number. */
+    double nval;
+    /** The characters being tokenized, or the current window of them. */
+    char[] buf;
+    /** One past the index of the last character in <code>buf</code>. */
+    int end;
+    /** Index of the next character to be examined. */
+    int pos;
+    /** Index of the first character of the current token. */
+    int tokenStart;
+    /** The number of characters that have been dropped from the window. */
+    private long base;
+    /** Whether <code>buf</code> belongs to this Lexer, so that it may be reused. */
+    private boolean ownsBuffer;
+    /** Where more characters come from, or <code>null</code> if there are no more. */
+    private Reader in;
+    /** Line number, counted the same way <code>StreamTokenizer</code> does. */
+    private int line = 1;
+    /** The most characters the input may have. */
+    private long maxLength = Long.MAX_VALUE;
+    /** Set by <code>pushBack()</code> so the current token is returned again. */
+    private boolean pushedBack;
+    /** Set by <code>stop()</code> so that no more characters are read. */
+    private boolean stopped;
+    /** The number of characters read when <code>stop()</code> was called. */
+    private long stoppedLength;
+    /** Called every so often while scanning, or <code>null</code>. */
+    private Runnable poll;
+    /** The index in <code>buf</code> at which the poll is next called. */
+    private int pollAt = Integer.MAX_VALUE;
+    /**
+     * The current token as a Token, or <code>null</code> if not yet needed.
+     * After <code>scan()</code> returns a word, this is the keyword Token
+     * if the word is a keyword and <code>null</code> otherwise.
+     */
+    Token token;
+
+    /**
+     * Constructs a Lexer for the given text.
+     * @param text The characters to be tokenized.
+     */
+    Lexer(CharSequence text) {
+        this(text.toString().toCharArray());
+        ownsBuffer = true;
+    }
+
+    /**
+     * Constructs a Lexer for the characters in an array, which is used
+     * as is rather than copied.
+     * @param chars The characters to be tokenized.
+     */
+    Lexer(char[] chars) {
+        buf = chars;
+        end = chars.length;
+    }
+
+    /**
+     * Constructs a Lexer that reads its characters from a Reader as
+     * they are needed. An <code>IOException</code> from the Reader is
+     * rethrown as an <code>UncheckedIOException</code>.
+     * @param reader The source of the characters to be tokenized.
+     */
+    Lexer(Reader reader) {
+        buf = new char[WINDOW_SIZE];
+        ownsBuffer = true;
+        in = reader;
+    }
+
+    /**
+     * Starts this Lexer again on new text, as if it had just been
+     * constructed for it. The characters are copied into the array this
+     * Lexer already has if they fit, so nothing is allocated for text no
+     * longer than the text before. An array much bigger than the text is
+     * let go, so that one long text does not keep its array alive. An
+     * array passed to the constructor is never written to, and a Reader
+     * being read from is not closed.
+     * @param text The characters to be tokenized.
+     */
+    void reset(CharSequence text) {
+        int length = text.length();
+        if (!ownsBuffer || buf.length < length
+                || (buf.length > WINDOW_SIZE && buf.length / 4 > length)) {
+            buf = new char[Math.max(length, WINDOW_SIZE)];
+            ownsBuffer = true;
+        }
+        if (text instanceof String) {
+            ((String) text).getChars(0, length, buf, 0);
+        } else {
+            for (int i = 0; i < length; i++) buf[i] = text.charAt(i);
+        }
+        end = length;
+        pos = 0;
+        tokenStart = 0;
+        base = 0;
+        in = null;
+        line = 1;
+        maxLength = Long.MAX_VALUE;
+        pushedBack = false;
+        stopped = false;
+        if (poll != null) pollAt = POLL_INTERVAL;
+        token = null;
+        ttype = TT_NOTHING;
+        sval = null;
+        nval = 0;
+    }
+
+    /**
+     * Returns the next token, leaving its value in <code>sval</code>
+     * (for words and quoted strings) or <code>nval</code> (for numbers).
+     * @return The type of the token.
+     */
+    int nextToken() {
+        int type = next();
+        if (sval == null && (type == TT_WORD || type == '"')) sval = text();
+        return type;
+    }
+
+    /**
+     * Moves to the next token without creating a String for its value.
+     * Use <code>type()</code>, <code>keywordId()</code> and
+     * <code>valueEquals</code> to examine it, and <code>token()</code>
+     * to get its value.
+     * @return The type of the token.
+     */
+    int next() {
+        if (pushedBack) {
+            pushedBack = false;
+            return ttype;
+        }
+        sval = null;
+        return ttype = scan();
+    }
+
+    /**
+     * Returns the Bugs token type of the current token.
+     * @return The type of the token most recently returned.
+     */
+    Token.Type type() {
+        switch (ttype) {
+            case TT_WORD:
+                return keywordId() != Token.NOT_A_KEYWORD ? Token.Type.KEYWORD : Token.Type.NAME;
+            case TT_NUMBER:
+                return Token.Type.NUMBER;
+            case TT_EOL:
+                return Token.Type.EOL;
+            case TT_EOF:
+                return Token.Type.EOF;
+            default:
+                return Token.Type.SYMBOL;
+        }
+    }
+
+    /**
+     * Returns the keyword ID of the current token.
+     * @return The keyword ID, or <code>Token.NOT_A_KEYWORD</code> if the
+     *         current token is not a keyword.
+     */
+    int keywordId() {
+        return ttype == TT_WORD && token != null ? token.id : Token.NOT_A_KEYWORD;
+    }
+
+    /**
+     * Tests whether the value of the current token is the given string,
+     * without creating a String for the token.
+     * @param value The expected value.
+     * @return <code>true</code> if the token has that value.
+     */
+    boolean valueEquals(String value) {
+        switch (ttype) {
+            case TT_WORD:
+                if (token != null) return token.value.equals(value);
+                int length = pos - tokenStart;
+                if (value.length() != length) return false;
+                for (int i = 0; i < length; i++) {
+                    if (value.charAt(i) != buf[tokenStart + i]) return false;
+                }
+                return true;
+            case TT_NUMBER:
+            case TT_EOL:
+            case TT_EOF:
+                return token().value.equals(value);
+            default:
+                return value.length() == 1 && value.charAt(0) == (char) ttype;
+        }
+    }
+
+    /**
+     * Returns the current token as a Token. Keywords, symbols, end of
+     * lines and the end of input are shared instances, and the Token for
+     * a name or number is created only once, so a token that is pushed
+     * back and read again costs nothing.
+     * @return The Token most recently returned by <code>next()</code>.
+     */
+    Token token() {
+        if (token == null) {
+            switch (ttype) {
+                case TT_WORD:
+                    if (sval == null) sval = text();
+                    token = new Token(Token.Type.NAME, sval);
+                    break;
+                case TT_NUMBER:
+                    token = new Token(Token.Type.NUMBER, nval + "");
+                    break;
+                case TT_EOL:
+                    token = Token.EOL;
+                    break;
+                case TT_EOF:
+                    token = Token.EOF;
+                    break;
+                default:
+                    token = Token.symbol(ttype);
+            }
+        }
+        return token;
+    }
+
+    /**
+     * Returns the value of the current word or quoted string. The
+     * characters of the current token are always still in the window.
+     * @return The value.
+     */
+    String text() {
+        if (ttype == '"') {
+            StringBuilder value = new StringBuilder();
+            pos = tokenStart + 1;
+            skipQuoted(value);
+            return value.toString();
+        }
+        if (token != null && token.type == Token.Type.KEYWORD) return token.value;
+        return new String(buf, tokenStart, pos - tokenStart);
+    }
+
+    /**
+     * Causes the next call of <code>nextToken()</code> to return the
+     * current token again.
+     */
+    void pushBack() {
+        if (ttype != TT_NOTHING) pushedBack = true;
+    }
+
+    /**
+     * Tells whether the current token has been pushed back, so that it
+     * is the token that <code>next()</code> will return.
+     * @return <code>true</code> if the current token has been pushed back.
+     */
+    boolean isPushedBack() {
+        return pushedBack;
+    }
+
+    /**
+     * Returns the terminal code of the current token, as used in the
+     * FIRST sets of the grammar.
+     * @return The code.
+     * @see FirstSets
+     */
+    int terminal() {
+        switch (ttype) {
+            case TT_WORD:
+                int id = keywordId();
+                return id != Token.NOT_A_KEYWORD ? id : FirstSets.NAME;
+            case TT_NUMBER:
+                return FirstSets.NUMBER;
+            case TT_EOL:
+                return FirstSets.EOL;
+            case TT_EOF:
+                return FirstSets.EOF;
+            default:
+                return FirstSets.symbol(ttype);
+        }
+    }
+
+    /**
+     * Returns a position to which <code>reset</code> can later return.
+     * Only a <code>TokenBuffer</code> supports this.
+     * @return The position of the next token.
+     * @throws UnsupportedOperationException For a plain Lexer.
+     */
+    int mark() {
+        throw new UnsupportedOperationException("mark/reset needs a TokenBuffer");
+    }
+
+    /**
+     * Returns to a position obtained from <code>mark</code>, so that the
+     * token that was next at that time is the next token again.
+     * Only a <code>TokenBuffer</code> supports this.
+     * @param mark A value returned by <code>mark()</code>.
+     * @throws UnsupportedOperationException For a plain Lexer.
+     */
+    void reset(int mark) {
+        throw new UnsupportedOperationException("mark/reset needs a TokenBuffer");
+    }
+
+    /**
+     * Returns the current line number. An end of line counts as being on
+     * the following line, as in <code>StreamTokenizer</code>.
+     * @return The line number.
+     */
+    int lineno() {
+        return line;
+    }
+
+    /**
+     * Describes the current token as <code>StreamTokenizer</code> does.
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        String ret;
+        switch (ttype) {
+            case TT_EOF:     ret = "EOF"; break;
+            case TT_EOL:     ret = "EOL"; break;
+            case TT_WORD:    ret = sval; break;
+            case TT_NUMBER:  ret = "n=" + nval; break;
+            case TT_NOTHING: ret = "NOTHING"; break;
+            case '"':        ret = sval; break;
+            default:         ret = "'" + (char) ttype + "'";
+        }
+        return "Token[" + ret + "], line " + line;
+    }
+
+    /**
+     * Returns the offset in the whole input of the first character of the
+     * current token.
+     * @return The number of characters before the current token.
+     */
+    long tokenOffset() {
+        return base + tokenStart;
+    }
+
+    /**
+     * Returns the number of characters of input read so far, which for
+     * text held in memory is all of it.
+     * @return The number of characters.
+     */
+    long length() {
+        return stopped ? stoppedLength : base + end;
+    }
+
+    /**
+     * Sets the most characters the input may have. Input read from a
+     * Reader is checked each time the window is filled, so reading stops
+     * within a window of the limit.
+     * @param maxLength The most characters.
+     */
+    void setMaxLength(long maxLength) {
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Tells whether more characters have been read than are allowed.
+     * @return <code>true</code> if more have been read.
+     */
+    boolean isTooLong() {
+        return base + end > maxLength;
+    }
+
+    /**
+     * Returns the most characters the input may have.
+     * @return The most characters.
+     */
+    long getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Stops reading the input, even in the middle of a token: the current
+     * scan ends as if the input ended where it is, and every token after
+     * it is the end of input. A poll calls this to stop recognition
+     * without throwing. The Reader, if any, is not closed.
+     */
+    void stop() {
+        stoppedLength = length();
+        end = pos;
+        pushedBack = false;
+        stopped = true;
+    }
+
+    /**
+     * Sets what to call at least every <code>POLL_INTERVAL</code> characters
+     * while scanning, each time the window is filled, and at the end of
+     * input. Checking the time or cancellation in it, and throwing or
+     * calling <code>stop()</code>, stops a scan even in the middle of a
+     * very long comment, string or word, which the tokens read never
+     * would. Since the poll is called each time the window is filled, it
+     * checks the length of the input too; without a poll, the Lexer
+     * checks it itself. It is kept by <code>reset</code>.
+     * @param poll What to call, or <code>null</code> for nothing.
+     */
+    void setPoll(Runnable poll) {
+        this.poll = poll;
+        pollAt = poll == null ? Integer.MAX_VALUE : pos + POLL_INTERVAL;
+    }
+
+    /**
+     * Calls the poll, and works out when to call it next.
+     */
+    private void poll() {
+        pollAt = pos < Integer.MAX_VALUE - POLL_INTERVAL ? pos + POLL_INTERVAL : Integer.MAX_VALUE;
+        poll.run();
+    }
+
+    /**
+     * Checks that no more characters have been read than are allowed.
+     * @throws LimitExceededException If more have been read.
+     */
+    void checkLength() {
+        if (isTooLong()) {
+            throw SyntaxErrorEvent.thrown(
+                ErrorCode.INPUT_TOO_LONG.toException(line, maxLength, maxLength));
+        }
+    }
+
+    /**
+     * Closes the Reader this Lexer reads from, if any.
+     * @throws IOException If the Reader cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        Reader reader = in;
+        in = null;
+        if (reader != null) reader.close();
+    }
+
+    /**
+     * Scans the next token, skipping white space and comments. The token
+     * starts at <code>tokenStart</code> and ends just before <code>pos</code>.
+     * The values of numbers and quoted strings are left in <code>nval</code>
+     * and <code>sval</code>, but no String is made for a word.
+     * @return The type of the token.
+     */
+    int scan() {
+        token = null;
+        while (true) {
+            tokenStart = pos;
+            int c = read();
+            if (c < 0) return endOfInput();
+            if (c <= ' ') {
+                if (c == '\n') {
+                    line++;
+                    return TT_EOL;
+                }
+                if (c == '\r') {
+                    line++;
+                    if (peek() == '\n') pos++;
+                    return TT_EOL;
+                }
+                if (pos >= pollAt) poll();
+                continue;
+            }
+            if (c >= '0' && c <= '9') {
+                return scanNumber();
+            }
+            if (isAlpha((char) c)) {
+                int d;
+                while ((d = peek()) >= 0 && isAlphaOrDigit((char) d)) {
+                    if (++pos >= pollAt) poll();
+                }
+                token = Token.keyword(buf, tokenStart, pos - tokenStart);
+                return TT_WORD;
+            }
+            if (c == '"') {
+                StringBuilder value = new StringBuilder();
+                skipQuoted(value);
+                sval = value.toString();
+                return '"';
+            }
+            if (c == '/') {
+                int d = peek();
+                if (d == '/') {
+                    skipLineComment();
+                    continue;
+                }
+                if (d == '*') {
+                    pos++;
+                    if (!skipBlockComment()) {
+                        tokenStart = pos;
+                        return endOfInput();
+                    }
+                    continue;
+                }
+            }
+            return c;
+        }
+    }
+
+    /**
+     * Calls the poll a last time, once the input has been scanned.
+     * @return <code>TT_EOF</code>.
+     */
+    private int endOfInput() {
+        if (poll != null) poll();
+        return TT_EOF;
+    }
+
+    /**
+     * Returns the next character and moves past it.
+     * @return The character, or -1 at the end of input.
+     */
+    private int read() {
+        if (pos >= end && !fill()) return -1;
+        return buf[pos++];
+    }
+
+    /**
+     * Returns the next character without moving past it.
+     * @return The character, or -1 at the end of input.
+     */
+    private int peek() {
+        if (pos >= end && !fill()) return -1;
+        return buf[pos];
+    }
+
+    /**
+     * Reads more characters into the window. The characters of the
+     * current token (from <code>tokenStart</code> on) are moved to the
+     * front of the window first; everything before them is dropped.
+     * @return <code>true</code> if at least one more character was read,
+     *         and the poll did not stop the Lexer.
+     */
+    private boolean fill() {
+        if (in == null || stopped) return false;
+        if (tokenStart > 0) {
+            System.arraycopy(buf, tokenStart, buf, 0, end - tokenStart);
+            base += tokenStart;
+            end -= tokenStart;
+            pos -= tokenStart;
+            tokenStart = 0;
+        }
+        if (end == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        int n;
+        try {
+            do {
+                n = in.read(buf, end, buf.length - end);
+            } while (n == 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (n < 0) {
+            in = null;
+            return false;
+        }
+        end += n;
+        if (poll != null) {
+            poll();
+        } else {
+            checkLength();
+        }
+        return pos < end;
+    }
+
+    /**
+     * Scans the rest of a number whose first digit has been read.
+     * @return <code>TT_NUMBER</code>.
+     */
+    private int scanNumber() {
+        boolean seenDot = false;
+        int c;
+        while ((c = peek()) >= 0) {
+            if (c == '.' && !seenDot) {
+                seenDot = true;
+            } else if (c < '0' || c > '9') {
+                break;
+            }
+            if (++pos >= pollAt) poll();
+        }
+        nval = numberValue(buf, tokenStart, pos);
+        return TT_NUMBER;
+    }
+
+    /**
+     * Returns the value of a number. The digits are accumulated exactly
+     * as <code>StreamTokenizer</code> does, so the result is identical to
+     * the <code>nval</code> it would produce.
+     * @param b The array holding the number.
+     * @param start The index of the first digit.
+     * @param end One past the index of the last character of the number.
+     * @return The value of the number.
+     */
+    static double numberValue(char[] b, int start, int end) {
+        double v = 0;
+        int decexp = 0;
+        int seendot = 0;
+        for (int p = start; p < end; p++) {
+            char c = b[p];
+            if (c == '.') {
+                seendot = 1;
+            } else {
+                v = v * 10 + (c - '0');
+                decexp += seendot;
+            }
+        }
+        if (decexp != 0) {
+            double denom = 10;
+            decexp--;
+            while (decexp > 0) {
+                denom *= 10;
+                decexp--;
+            }
+            v = v / denom;
+        }
+        return v;
+    }
+
+    /**
+     * Skips the rest of a quoted string whose opening quote has been read.
+     * The string ends at the closing quote (which is skipped) or just
+     * before an end of line or the end of input. Escapes are processed
+     * as in <code>StreamTokenizer</code>.
+     * @param value Receives the characters of the string.
+     */
+    void skipQuoted(StringBuilder value) {
+        int d = read();
+        while (d >= 0 && d != '"' && d != '\n' && d != '\r') {
+            int c;
+            if (d == '\\') {
+                c = read();
+                int first = c;
+                if (c >= '0' && c <= '7') {
+                    c = c - '0';
+                    int c2 = read();
+                    if ('0' <= c2 && c2 <= '7') {
+                        c = (c << 3) + (c2 - '0');
+                        c2 = read();
+                        if ('0' <= c2 && c2 <= '7' && first <= '3') {
+                            c = (c << 3) + (c2 - '0');
+                            d = read();
+                        } else {
+                            d = c2;
+                        }
+                    } else {
+                        d = c2;
+                    }
+                } else {
+                    switch (c) {
+                        case 'a': c = 0x7; break;
+                        case 'b': c = '\b'; break;
+                        case 'f': c = 0xC; break;
+                        case 'n': c = '\n'; break;
+                        case 'r': c = '\r'; break;
+                        case 't': c = '\t'; break;
+                        case 'v': c = 0xB; break;
+                        default: break;
+                    }
+                    d = read();
+                }
+            } else {
+                c = d;
+                d = read();
+            }
+            value.append((char) c);
+            if (pos >= pollAt) poll();
+        }
+        // The character that ended the string is only consumed if it
+        // is the closing quote.
+        if (d >= 0 && d != '"') pos--;
+    }
+
+    /**
+     * Skips a <code>// ...</code> comment, up to but not including the
+     * end of line.
+     */
+    private void skipLineComment() {
+        int c;
+        do {
+            tokenStart = pos; // Nothing in a comment needs to be kept
+            c = peek();
+            if (c < 0 || c == '\n' || c == '\r') return;
+            if (++pos >= pollAt) poll();
+        } while (true);
+    }
+
+    /**
+     * Skips the body of a <code>/* ... *&#47;</code> comment, counting
+     * lines as <code>StreamTokenizer</code> does.
+     * @return <code>true</code> if the comment was closed, <code>false</code>
+     *         if the input ends inside it.
+     */
+    private boolean skipBlockComment() {
+        int prevc = 0;
+        while (true) {
+            tokenStart = pos; // Nothing in a comment needs to be kept
+            int c = read();
+            if (c == '/' && prevc == '*') return true;
+            if (c == '\r') {
+                line++;
+                c = read();
+                if (c == '\n') c = read();
+            } else if (c == '\n') {
+                line++;
+                c = read();
+            }
+            if (c < 0) return false;
+            if (pos >= pollAt) poll();
+            prevc = c;
+        }
+    }
+
+    /**
+     * Finds where the <code>Allbugs</code> and <code>Bug</code> keywords
+     * that are not inside braces start, without making any tokens. The
+     * characters are skipped over just as <code>scan</code> skips them,
+     * so that braces and keywords in comments and quoted strings, or
+     * inside other words, are passed over; this is much cheaper than
+     * tokenizing the text and calling <code>TokenBuffer.definitionStarts</code>,
+     * and finds the same keywords.
+     * @param b The array holding the text.
+     * @param end One past the index of the last character of the text.
+     * @return For each keyword, in order, the index of its first
+     *         character followed by its line, counted as a TokenBuffer
+     *         counts them.
+     */
+    static int[] definitionStarts(char[] b, int end) {
+        int[] result = new int[16];
+        int n = 0;
+        int depth = 0;
+        int line = 1;
+        int p = 0;
+        while (p < end) {
+            int start = p;
+            char c = b[p++];
+            if (c <= ' ') {
+                if (c == '\n') {
+                    line++;
+                } else if (c == '\r') {
+                    line++;
+                    if (p < end && b[p] == '\n') p++;
+                }
+            } else if (c >= '0' && c <= '9') {
+                boolean seenDot = false;
+                for (; p < end; p++) {
+                    if (b[p] == '.' && !seenDot) {
+                        seenDot = true;
+                    } else if (b[p] < '0' || b[p] > '9') {
+                        break;
+                    }
+                }
+            } else if (isAlpha(c)) {
+                while (p < end && isAlphaOrDigit(b[p])) p++;
+                Token token = depth == 0 ? Token.keyword(b, start, p - start) : null;
+                if (token != null && (token.id == Token.BUG || token.id == Token.ALLBUGS)) {
+                    if (n == result.length) result = Arrays.copyOf(result, n * 2);
+                    result[n++] = start;
+                    result[n++] = line;
+                }
+            } else if (c == '"') {
+                // As in skipQuoted, a backslash takes the next character
+                // with it, and an end of line ends the string
+                while (p < end && b[p] != '"' && b[p] != '\n' && b[p] != '\r') {
+                    if (b[p++] == '\\' && p < end) p++;
+                }
+                if (p < end && b[p] == '"') p++;
+            } else if (c == '/' && p < end && b[p] == '/') {
+                while (p < end && b[p] != '\n' && b[p] != '\r') p++;
+            } else if (c == '/' && p < end && b[p] == '*') {
+                p++;
+                int prevc = 0; // The star that opens the comment does not close it
+                while (true) {
+                    if (p >= end) return Arrays.copyOf(result, n); // The comment is not closed
+                    int d = b[p++];
+                    if (d == '/' && prevc == '*') break;
+                    prevc = d;
+                }
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Tests whether the character can start a word.
+     * @param c The character to test.
+     * @return <code>true</code> for ASCII letters and for characters
+     *         from <code>'&#92;u00A0'</code> up.
+     */
+    private static boolean isAlpha(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c >= '\u00A0';
+    }
+
+    /**
+     * Tests whether the character can continue a word.
+     * @param c The character to test.
+     * @return <code>true</code> for letters and digits.
+     */
+    private static boolean isAlphaOrDigit(char c) {
+        return isAlpha(c) || (c >= '0' && c <= '9');
+    }
+}
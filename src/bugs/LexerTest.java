@@ -0,0 +1,345 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StreamTokenizer;
+import java.io.StringReader;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test class for the Bugs lexer. Most tests compare the token stream
+ * with the one produced by a <code>StreamTokenizer</code> configured
+ * the way <code>Recognizer</code> originally configured it.
+ *
+ * @author James Park
+ */
+public class LexerTest {
+
+    @Test
+    public final void testSimpleTokens() {
+        Lexer lexer = new Lexer("abc move 25 *\n");
+        assertEquals(StreamTokenizer.TT_WORD, lexer.nextToken());
+        assertEquals("abc", lexer.sval);
+        assertEquals(StreamTokenizer.TT_WORD, lexer.nextToken());
+        assertEquals("move", lexer.sval);
+        assertEquals(StreamTokenizer.TT_NUMBER, lexer.nextToken());
+        assertEquals(25.0, lexer.nval, 0.0);
+        assertEquals('*', lexer.nextToken());
+        assertEquals(StreamTokenizer.TT_EOL, lexer.nextToken());
+        assertEquals(StreamTokenizer.TT_EOF, lexer.nextToken());
+        assertEquals(StreamTokenizer.TT_EOF, lexer.nextToken());
+    }
+
+    @Test
+    public final void testPushBack() {
+        Lexer lexer = new Lexer("abc 25");
+        lexer.pushBack(); // No effect before the first token
+        assertEquals(StreamTokenizer.TT_WORD, lexer.nextToken());
+        lexer.pushBack();
+        assertEquals(StreamTokenizer.TT_WORD, lexer.nextToken());
+        assertEquals("abc", lexer.sval);
+        assertEquals(StreamTokenizer.TT_NUMBER, lexer.nextToken());
+    }
+
+    @Test
+    public final void testSameAsStreamTokenizer() {
+        String[] inputs = {
+            "",
+            "12 * ((5 - 3) * 4) / 6 + (8)",
+            "foo.bar 123.456 1.2.3 12. .5 Abc_123",
+            "a // comment\nb /* block\n comment */ c / d",
+            "x /* unterminated",
+            "line 1\r\nline 2\rline 3\n\n",
+            "\"a \\\"quoted\\\" \\101\\7\\n string\" \"unclosed\nnext",
+            "<= != >= {}[]$#@!~`'^&|?;:",
+            "caf\u00e9 \u00a0x \u0080 \u4e2d\u6587 tab\tsep\u000bvt",
+            "/**/ /***/ /* *\n/ */ end",
+        };
+        for (String input : inputs) {
+            assertSameTokens(input);
+        }
+    }
+
+    @Test
+    public final void testRandomInputsSameAsStreamTokenizer() {
+        String alphabet = "ab Z09._+-*/\n\r\t\"\\{}()=<>!,$#\u00e9\u0085";
+        Random random = new Random(594);
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(40);
+            for (int j = 0; j < length; j++) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            assertSameTokens(sb.toString());
+        }
+    }
+
+    @Test
+    public final void testTokenBufferSameAsLexer() {
+        String input = "Bug b { \n move 1.5 + foo.bar // c\n \"s\\\"t\" /* \n */ $\r\n}";
+        Lexer expected = new Lexer(input);
+        TokenBuffer actual = new TokenBuffer(input);
+        while (true) {
+            int type = expected.nextToken();
+            assertEquals(type, actual.nextToken());
+            assertEquals(expected.sval, actual.sval);
+            assertEquals(expected.token(), actual.token());
+            if (type == StreamTokenizer.TT_NUMBER) {
+                assertEquals(expected.nval, actual.nval, 0.0);
+            }
+            if (type == StreamTokenizer.TT_EOF) break;
+        }
+        assertEquals(StreamTokenizer.TT_EOF, actual.nextToken());
+    }
+
+    @Test
+    public final void testTokenBufferMarkAndReset() {
+        TokenBuffer buffer = new TokenBuffer("a + b\n c");
+        assertEquals(6, buffer.size());
+        assertEquals(new Token(Token.Type.NAME, "a"), buffer.peek(0));
+        assertEquals(new Token(Token.Type.NAME, "b"), buffer.peek(2));
+        assertEquals(Token.EOF, buffer.peek(10));
+        buffer.nextToken();
+        int mark = buffer.mark();
+        buffer.nextToken();
+        buffer.nextToken();
+        buffer.nextToken();
+        assertEquals(2, buffer.lineno());
+        buffer.pushBack();
+        buffer.pushBack();
+        assertEquals(StreamTokenizer.TT_EOL, buffer.nextToken());
+        buffer.reset(mark);
+        assertEquals(1, buffer.lineAt(mark));
+        assertEquals(2, buffer.lineAt(buffer.size()));
+        assertEquals('+', buffer.nextToken());
+        assertEquals(StreamTokenizer.TT_WORD, buffer.nextToken());
+        assertEquals("b", buffer.sval);
+    }
+
+    @Test
+    public final void testReaderSameAsString() {
+        String alphabet = "ab Z09._+-*/\n\r\t\"\\{}()=<>!,$#";
+        Random random = new Random(594);
+        for (int i = 0; i < 500; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(60);
+            for (int j = 0; j < length; j++) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            assertSameTokens(new Lexer(sb.toString()), new Lexer(trickle(sb.toString())));
+        }
+        StringBuilder longName = new StringBuilder("x");
+        while (longName.length() < 3 * Lexer.WINDOW_SIZE) longName.append("y1");
+        String input = "a /* " + longName + " */ " + longName + " 42\n";
+        assertSameTokens(new Lexer(input), new Lexer(new StringReader(input)));
+        Lexer lexer = new Lexer(new StringReader(input));
+        lexer.nextToken();
+        lexer.nextToken();
+        assertEquals(input.lastIndexOf(longName.toString()), lexer.tokenOffset());
+    }
+
+    @Test
+    public final void testReset() {
+        String alphabet = "ab Z09._+-*/\n\r\t\"\\{}()=<>!,$#";
+        Random random = new Random(18);
+        Lexer reused = new Lexer(new StringReader("abc ("));
+        reused.nextToken();
+        reused.pushBack();
+        for (int i = 0; i < 500; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(60);
+            for (int j = 0; j < length; j++) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            reused.reset(i % 2 == 0 ? sb.toString() : sb);
+            assertSameTokens(new Lexer(sb.toString()), reused);
+        }
+        char[] shared = "move 1".toCharArray();
+        Lexer lexer = new Lexer(shared);
+        lexer.reset("turn");
+        assertEquals("move 1", new String(shared));
+        assertEquals(StreamTokenizer.TT_WORD, lexer.nextToken());
+        assertEquals("turn", lexer.sval);
+    }
+
+    @Test
+    public final void testPoll() {
+        StringBuilder filler = new StringBuilder();
+        for (int i = 0; i < 10 * Lexer.POLL_INTERVAL; i++) {
+            filler.append('x');
+        }
+        String[] inputs = { "/*" + filler + "*/", "//" + filler, "\"" + filler + "\"",
+                            "a" + filler, "1" + filler.toString().replace('x', '2'),
+                            filler.toString().replace('x', ' ') };
+        for (String input : inputs) {
+            int[] polls = new int[1];
+            Lexer lexer = new Lexer(input);
+            lexer.setPoll(() -> polls[0]++);
+            while (lexer.nextToken() != StreamTokenizer.TT_EOF) {
+                ;
+            }
+            assertTrue(input.substring(0, 2), polls[0] > 10);
+        }
+        Lexer lexer = new Lexer(inputs[0]);
+        lexer.setPoll(() -> {
+            throw new IllegalStateException("stop");
+        });
+        try {
+            lexer.nextToken();
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(lexer.tokenOffset() <= Lexer.POLL_INTERVAL);
+        }
+    }
+
+    @Test
+    public final void testTokenBufferReset() {
+        TokenBuffer buffer = new TokenBuffer("Bug b {\n move 1, 2, 3, 4, 5, 6\n}\n");
+        buffer.next();
+        buffer.next();
+        for (String text : new String[] { "x", "", "loop {\n turn 1 // a\n}\n", "Bug\n\n\n" }) {
+            char[] chars = buffer.buf;
+            buffer.reset(text);
+            assertSame(chars, buffer.buf);
+            assertEquals(0, buffer.mark());
+            assertTrue(buffer.endsBetweenDefinitions() == new TokenBuffer(text).endsBetweenDefinitions());
+            assertSameTokens(new TokenBuffer(text), buffer);
+        }
+        buffer.reset("a b");
+        buffer.next();
+        int mark = buffer.mark();
+        buffer.next();
+        buffer.reset(mark);
+        assertEquals(StreamTokenizer.TT_WORD, buffer.nextToken());
+        assertEquals("b", buffer.sval);
+    }
+
+    @Test
+    public final void testTokenBufferAppend() {
+        String[] pieces = { "a", "b ", "Bug", " ", "09", ".", "\n", "\r", "\"", "\\", "{", "}",
+                            "/", "*", "//", "/*", "*/", "(" };
+        Random random = new Random(594);
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder whole = new StringBuilder();
+            TokenBuffer buffer = new TokenBuffer("");
+            for (int j = random.nextInt(8); j > 0; j--) {
+                StringBuilder piece = new StringBuilder();
+                for (int k = random.nextInt(4); k > 0; k--) {
+                    piece.append(pieces[random.nextInt(pieces.length)]);
+                }
+                whole.append(piece);
+                buffer.append(piece.toString().toCharArray(), 0, piece.length());
+            }
+            TokenBuffer expected = new TokenBuffer(whole);
+            assertEquals(whole.toString(), expected.size(), buffer.size());
+            for (int j = 0; j < expected.size(); j++) {
+                assertEquals(whole.toString(), expected.startAt(j), buffer.startAt(j));
+            }
+            assertTrue(expected.endsBetweenDefinitions() == buffer.endsBetweenDefinitions());
+            assertTrue(expected.startsDefinition() == buffer.startsDefinition());
+            assertSameTokens(expected, buffer);
+        }
+    }
+
+    @Test
+    public final void testDefinitionStarts() {
+        String[] pieces = { "Bug", "Allbugs", "Bugs", " ", "x", "1", ".", "\n", "\r", "\"", "\\",
+                            "{", "}", "/", "*", "//", "/*", "*/", "\t", "*\n/", "*\r\n/" };
+        Random random = new Random(594);
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = random.nextInt(30); j > 0; j--) {
+                text.append(pieces[random.nextInt(pieces.length)]);
+            }
+            TokenBuffer tokens = new TokenBuffer(text);
+            int[] expected = tokens.definitionStarts();
+            int[] actual = Lexer.definitionStarts(text.toString().toCharArray(), text.length());
+            assertEquals(text.toString(), expected.length * 2, actual.length);
+            for (int j = 0; j < expected.length; j++) {
+                assertEquals(text.toString(), tokens.startAt(expected[j]), actual[2 * j]);
+                assertEquals(text.toString(), tokens.lineAt(expected[j]), actual[2 * j + 1]);
+            }
+        }
+    }
+
+    /**
+     * Returns a Reader that delivers the given text one character at a
+     * time, so that every character boundary is also a refill boundary.
+     * @param text The text to deliver.
+     * @return The Reader.
+     */
+    private Reader trickle(String text) {
+        return new FilterReader(new StringReader(text)) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                return super.read(cbuf, off, Math.min(len, 1));
+            }
+        };
+    }
+
+    /**
+     * Asserts that two Lexers produce the same tokens, values and lines.
+     * @param expected The Lexer giving the expected tokens.
+     * @param actual The Lexer to be tested.
+     */
+    private void assertSameTokens(Lexer expected, Lexer actual) {
+        while (true) {
+            int type = expected.nextToken();
+            assertEquals(type, actual.nextToken());
+            assertEquals(expected.sval, actual.sval);
+            assertEquals(expected.lineno(), actual.lineno());
+            assertEquals(expected.nval, actual.nval, 0.0);
+            if (type == StreamTokenizer.TT_EOF) break;
+        }
+    }
+
+    /**
+     * Asserts that the Lexer and a StreamTokenizer produce the same tokens,
+     * values and line numbers for the given input.
+     * @param input The text to tokenize.
+     */
+    private void assertSameTokens(String input) {
+        StreamTokenizer expected = streamTokenizer(input);
+        Lexer actual = new Lexer(input);
+        try {
+            while (true) {
+                int expectedType = expected.nextToken();
+                int actualType = actual.nextToken();
+                assertEquals(input, expectedType, actualType);
+                assertEquals(input, expected.sval, actual.sval);
+                assertEquals(input, expected.lineno(), actual.lineno());
+                if (actualType == StreamTokenizer.TT_NUMBER) {
+                    assertEquals(input, expected.nval, actual.nval, 0.0);
+                }
+                if (actualType == StreamTokenizer.TT_EOF) break;
+            }
+        } catch (IOException e) {
+            fail(e.toString());
+        }
+    }
+
+    /**
+     * Creates a StreamTokenizer configured the way Recognizer used to.
+     * @param input The text to tokenize.
+     * @return The configured StreamTokenizer.
+     */
+    private StreamTokenizer streamTokenizer(String input) {
+        StreamTokenizer tokenizer = new StreamTokenizer(new StringReader(input));
+        tokenizer.parseNumbers();
+        tokenizer.eolIsSignificant(true);
+        tokenizer.slashStarComments(true);
+        tokenizer.slashSlashComments(true);
+        tokenizer.lowerCaseMode(false);
+        tokenizer.ordinaryChars(33, 47);
+        tokenizer.ordinaryChars(58, 64);
+        tokenizer.ordinaryChars(91, 96);
+        tokenizer.ordinaryChars(123, 126);
+        tokenizer.quoteChar('\"');
+        return tokenizer;
+    }
+}
@@ -0,0 +1,31 @@
+package bugs;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A Flight Recorder event for tokenizing a whole text up front, as a
+ * TokenBuffer does. A Lexer that tokenizes as it goes is timed as part
+ * of recognition instead. Only texts that take longer than the
+ * threshold are recorded.
+ *
+ * @author James Park
+ */
+@Name("bugs.Lexing")
+@Label("Lexing")
+@Category("Bugs")
+@Description("Tokenizing a text before it is recognized")
+@Threshold("10 ms")
+@StackTrace(false)
+final class LexingEvent extends jdk.jfr.Event {
+    @Label("Characters")
+    @Description("The number of characters tokenized; not a number of bytes")
+    long length;
+
+    @Label("Tokens")
+    long tokens;
+}
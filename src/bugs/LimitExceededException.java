@@ -0,0 +1,55 @@
+package bugs;
+
+/**
+ * Thrown when recognition is stopped because the program went past one
+ * of the limits set on the Recognizer, or because recognition was
+ * cancelled. It says nothing about whether the program is correct, so
+ * it is never recovered from, and can be told apart from an ordinary
+ * syntax error by its type or by <code>getLimit()</code>.
+ *
+ * @author James Park
+ */
+public class LimitExceededException extends SyntaxException {
+
+    private static final long serialVersionUID = -2406873913652254178L;
+
+    /**
+     * The limits that can stop recognition.
+     */
+    public enum Limit {
+        /** The most characters of input. */
+        LENGTH,
+        /** The most tokens read. */
+        TOKENS,
+        /** The most blocks and switch statements open at once. */
+        DEPTH,
+        /** The time by which recognition must finish. */
+        DEADLINE,
+        /** Recognition was cancelled by the caller. */
+        CANCELLED
+    }
+
+    /** The limit that stopped recognition. */
+    private final Limit limit;
+
+    /**
+     * Constructor for LimitExceededException.
+     * @param line The line on which recognition stopped.
+     * @param error Which limit was reached.
+     * @param value The value of the limit.
+     * @param offset The position in the source at which recognition stopped.
+     * @see ErrorCode#toException(int, long, long)
+     */
+    LimitExceededException(int line, ErrorCode error, long value, long offset) {
+        super(line, error, value, offset);
+        this.limit = error.getLimit();
+    }
+
+    /**
+     * Returns the limit that stopped recognition.
+     * @return The limit.
+     */
+    public Limit getLimit() {
+        return limit;
+    }
+}
@@ -0,0 +1,672 @@
+package bugs;
+
+import java.util.Arrays;
+
+/**
+ * A Recognizer that tells a RecognizerListener, a FlightRecorder, or both,
+ * about each nonterminal it tries to recognize and each token it pushes
+ * back. Each <code>isX</code> method is overridden to report entering
+ * and leaving it; since the grammar methods call one another
+ * through these overrides, nested nonterminals are reported too. The
+ * nonterminals within an expression, which <code>isExpression()</code>
+ * recognizes in a loop rather than by calling their methods, are noted
+ * by the loop and reported in the same way; a function call in an
+ * expression is reported from its opening parenthesis.
+ * <p>The nonterminals open are kept on an explicit stack, together with
+ * the tokens consumed when each was entered and, if the listener wants
+ * times, when it was entered. Each override adds just one small frame
+ * to the thread's stack, so a ListeningRecognizer accepts the same
+ * programs, with the same nesting limit, as any other Recognizer. Only
+ * a Recognizer made for a listener or a recorder is one of these; in an
+ * ordinary Recognizer the hooks it overrides do nothing.
+ *
+ * @author James Park
+ */
+final class ListeningRecognizer extends Recognizer {
+    private static final int PROGRAM = FirstSets.id("program");
+    private static final int ALLBUGS_CODE = FirstSets.id("allbugsCode");
+    private static final int BUG_DEFINITION = FirstSets.id("bugDefinition");
+    private static final int VAR_DECLARATION = FirstSets.id("varDeclaration");
+    private static final int INITIALIZATION_BLOCK = FirstSets.id("initializationBlock");
+    private static final int FUNCTION_DEFINITION = FirstSets.id("functionDefinition");
+    private static final int BLOCK = FirstSets.id("block");
+    private static final int COMMAND = FirstSets.id("command");
+    private static final int ACTION = FirstSets.id("action");
+    private static final int STATEMENT = FirstSets.id("statement");
+    private static final int MOVE_ACTION = FirstSets.id("moveAction");
+    private static final int MOVE_TO_ACTION = FirstSets.id("moveToAction");
+    private static final int TURN_ACTION = FirstSets.id("turnAction");
+    private static final int TURN_TO_ACTION = FirstSets.id("turnToAction");
+    private static final int LINE_ACTION = FirstSets.id("lineAction");
+    private static final int ASSIGNMENT_STATEMENT = FirstSets.id("assignmentStatement");
+    private static final int LOOP_STATEMENT = FirstSets.id("loopStatement");
+    private static final int EXIT_IF_STATEMENT = FirstSets.id("exitIfStatement");
+    private static final int SWITCH_STATEMENT = FirstSets.id("switchStatement");
+    private static final int RETURN_STATEMENT = FirstSets.id("returnStatement");
+    private static final int DO_STATEMENT = FirstSets.id("doStatement");
+    private static final int COLOR_STATEMENT = FirstSets.id("colorStatement");
+    private static final int EOL = FirstSets.id("eol");
+    private static final int EXPRESSION = FirstSets.id("expression");
+    private static final int ARITHMETIC_EXPRESSION = FirstSets.id("arithmeticExpression");
+    private static final int TERM = FirstSets.id("term");
+    private static final int FACTOR = FirstSets.id("factor");
+    private static final int UNSIGNED_FACTOR = FirstSets.id("unsignedFactor");
+    private static final int PARAMETER_LIST = FirstSets.id("parameterList");
+    private static final int FUNCTION_CALL = FirstSets.id("functionCall");
+    private static final int COMPARATOR = FirstSets.id("comparator");
+    private static final int ADD_OPERATOR = FirstSets.id("addOperator");
+    private static final int MULTIPLY_OPERATOR = FirstSets.id("multiplyOperator");
+    private static final int VARIABLE = FirstSets.id("variable");
+
+    /** The most nonterminals a ListeningRecognizer kept for reuse may have room for. */
+    private static final int MAX_REUSED_RULES = 1024;
+
+    /** Told about each nonterminal, or <code>null</code>. */
+    private final RecognizerListener listener;
+    /** Whether there is a listener and it wants to know how long each nonterminal took. */
+    private final boolean timed;
+    /** Records each event, or <code>null</code>. */
+    private final FlightRecorder recorder;
+    /** The ring buffer of the recorder for the thread recognizing, while recognizing. */
+    private FlightRecorder.Ring ring;
+    /** The nonterminals open, innermost last. */
+    private int[] rules = new int[64];
+    /** The tokens consumed when each of <code>rules</code> was entered. */
+    private long[] rulePositions = new long[64];
+    /** The time each of <code>rules</code> was entered, if <code>timed</code>. */
+    private long[] ruleStarts = new long[64];
+    /** The number of <code>rules</code> open. */
+    private int rulesOpen = 0;
+
+    /**
+     * Constructs a ListeningRecognizer.
+     * @param lexer The source of tokens.
+     * @param listener Told about each nonterminal, or <code>null</code>.
+     * @param recorder Records each event, or <code>null</code>.
+     */
+    ListeningRecognizer(Lexer lexer, RecognizerListener listener, FlightRecorder recorder) {
+        super(lexer);
+        this.listener = listener;
+        this.recorder = recorder;
+        timed = listener != null && listener.isTimed();
+    }
+
+    /**
+     * Pushes a nonterminal onto the stack of those open, and tells the
+     * listener that it is being tried.
+     * @param nonterminal The ID of the nonterminal.
+     * @return The number of nonterminals that were open before it.
+     */
+    private int enter(int nonterminal) {
+        int open = rulesOpen;
+        if (open == rules.length) {
+            rules = Arrays.copyOf(rules, open * 2);
+            rulePositions = Arrays.copyOf(rulePositions, open * 2);
+            ruleStarts = Arrays.copyOf(ruleStarts, open * 2);
+        }
+        rules[open] = nonterminal;
+        rulePositions[open] = position();
+        rulesOpen = open + 1;
+        long offset = tokenizer.tokenOffset();
+        if (recorder != null) {
+            if (open == 0) ring = recorder.ring(); // The thread may differ from last time
+            ring.enter(nonterminal, offset);
+        }
+        if (listener != null) listener.enter(nonterminal, offset);
+        if (timed) ruleStarts[open] = System.nanoTime();
+        return open;
+    }
+
+    /**
+     * Pops the innermost nonterminal off the stack of those open, and
+     * tells the listener how trying it ended.
+     * @param outcome <code>RECOGNIZED</code>, <code>NOT_RECOGNIZED</code>
+     *        or <code>THREW</code>.
+     */
+    private void leave(int outcome) {
+        int i = --rulesOpen;
+        long nanos = timed ? System.nanoTime() - ruleStarts[i] : 0;
+        long tokens = position() - rulePositions[i];
+        if (ring != null) ring.exit(rules[i], outcome, tokens);
+        if (listener != null) listener.exit(rules[i], outcome, tokens, nanos);
+    }
+
+    /**
+     * Pops the innermost nonterminal, which <code>isExpression()</code>
+     * has finished.
+     * @param recognized Whether it was recognized.
+     */
+    private void exit(boolean recognized) {
+        leave(recognized ? RecognizerListener.RECOGNIZED : RecognizerListener.NOT_RECOGNIZED);
+    }
+
+    /**
+     * Pops the nonterminal of a method that has returned. If the method
+     * returned because an error was recorded, it and any nonterminals it
+     * left open are popped as if it had thrown the error.
+     * @param open The number of nonterminals open before the method was entered.
+     * @param recognized What the method returned.
+     * @return <code>recognized</code>.
+     */
+    private boolean exit(int open, boolean recognized) {
+        if (failed()) {
+            unwind(open);
+        } else {
+            exit(recognized);
+        }
+        return recognized;
+    }
+
+    /**
+     * Pops the nonterminals left open by a method that threw or stopped
+     * at an error, innermost first. After a method returns normally
+     * there are none.
+     * @param open The number of nonterminals open before the method was entered.
+     */
+    private void unwind(int open) {
+        while (rulesOpen > open) {
+            leave(RecognizerListener.THREW);
+        }
+    }
+
+    /**
+     * Also tells whether the stack of nonterminals open has not grown
+     * for a deeply nested program.
+     * @see bugs.Recognizer#isReusable()
+     */
+    @Override
+    boolean isReusable() {
+        return rules.length <= MAX_REUSED_RULES && super.isReusable();
+    }
+
+    /**
+     * @see bugs.Recognizer#getRecorder()
+     */
+    @Override
+    FlightRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * @see bugs.Recognizer#enterFactor(int)
+     */
+    @Override
+    protected void enterFactor(int before) {
+        boolean inGroup = before >= START_OF_PARENTHESES;
+        if (inGroup) enter(EXPRESSION);
+        if (inGroup || before <= AFTER_COMPARATOR) enter(ARITHMETIC_EXPRESSION);
+        if (before != AFTER_MULTIPLY_OPERATOR) enter(TERM);
+        enter(FACTOR);
+    }
+
+    /**
+     * @see bugs.Recognizer#enterRule(int)
+     */
+    @Override
+    protected void enterRule(int nonterminal) {
+        enter(nonterminal);
+    }
+
+    /**
+     * @see bugs.Recognizer#exitRules(int, boolean)
+     */
+    @Override
+    protected void exitRules(int count, boolean recognized) {
+        for (int i = 0; i < count; i++) {
+            exit(recognized);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#pushBack()
+     */
+    @Override
+    void pushBack() {
+        super.pushBack();
+        if (failed()) return; // Only the end of input, while returning from an error
+        if (ring != null) ring.pushBack(tokenizer.tokenOffset());
+        if (listener != null) listener.pushBack(tokenizer.tokenOffset());
+    }
+
+    /**
+     * @see bugs.Recognizer#program()
+     */
+    @Override
+    boolean program() {
+        int open = enter(PROGRAM);
+        try {
+            return exit(open, super.program());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isAllbugsCode()
+     */
+    @Override
+    public boolean isAllbugsCode() {
+        int open = enter(ALLBUGS_CODE);
+        try {
+            return exit(open, super.isAllbugsCode());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isBugDefinition()
+     */
+    @Override
+    public boolean isBugDefinition() {
+        int open = enter(BUG_DEFINITION);
+        try {
+            return exit(open, super.isBugDefinition());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isVarDeclaration()
+     */
+    @Override
+    public boolean isVarDeclaration() {
+        int open = enter(VAR_DECLARATION);
+        try {
+            return exit(open, super.isVarDeclaration());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isInitializationBlock()
+     */
+    @Override
+    public boolean isInitializationBlock() {
+        int open = enter(INITIALIZATION_BLOCK);
+        try {
+            return exit(open, super.isInitializationBlock());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isFunctionDefinition()
+     */
+    @Override
+    public boolean isFunctionDefinition() {
+        int open = enter(FUNCTION_DEFINITION);
+        try {
+            return exit(open, super.isFunctionDefinition());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isBlock()
+     */
+    @Override
+    public boolean isBlock() {
+        int open = enter(BLOCK);
+        try {
+            return exit(open, super.isBlock());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isCommand()
+     */
+    @Override
+    public boolean isCommand() {
+        int open = enter(COMMAND);
+        try {
+            return exit(open, super.isCommand());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isAction()
+     */
+    @Override
+    public boolean isAction() {
+        int open = enter(ACTION);
+        try {
+            return exit(open, super.isAction());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isStatement()
+     */
+    @Override
+    public boolean isStatement() {
+        int open = enter(STATEMENT);
+        try {
+            return exit(open, super.isStatement());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isMoveAction()
+     */
+    @Override
+    public boolean isMoveAction() {
+        int open = enter(MOVE_ACTION);
+        try {
+            return exit(open, super.isMoveAction());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isMoveToAction()
+     */
+    @Override
+    public boolean isMoveToAction() {
+        int open = enter(MOVE_TO_ACTION);
+        try {
+            return exit(open, super.isMoveToAction());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isTurnAction()
+     */
+    @Override
+    public boolean isTurnAction() {
+        int open = enter(TURN_ACTION);
+        try {
+            return exit(open, super.isTurnAction());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isTurnToAction()
+     */
+    @Override
+    public boolean isTurnToAction() {
+        int open = enter(TURN_TO_ACTION);
+        try {
+            return exit(open, super.isTurnToAction());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isLineAction()
+     */
+    @Override
+    public boolean isLineAction() {
+        int open = enter(LINE_ACTION);
+        try {
+            return exit(open, super.isLineAction());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isAssignmentStatement()
+     */
+    @Override
+    public boolean isAssignmentStatement() {
+        int open = enter(ASSIGNMENT_STATEMENT);
+        try {
+            return exit(open, super.isAssignmentStatement());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isLoopStatement()
+     */
+    @Override
+    public boolean isLoopStatement() {
+        int open = enter(LOOP_STATEMENT);
+        try {
+            return exit(open, super.isLoopStatement());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isExitIfStatement()
+     */
+    @Override
+    public boolean isExitIfStatement() {
+        int open = enter(EXIT_IF_STATEMENT);
+        try {
+            return exit(open, super.isExitIfStatement());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isSwitchStatement()
+     */
+    @Override
+    public boolean isSwitchStatement() {
+        int open = enter(SWITCH_STATEMENT);
+        try {
+            return exit(open, super.isSwitchStatement());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isReturnStatement()
+     */
+    @Override
+    public boolean isReturnStatement() {
+        int open = enter(RETURN_STATEMENT);
+        try {
+            return exit(open, super.isReturnStatement());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isDoStatement()
+     */
+    @Override
+    public boolean isDoStatement() {
+        int open = enter(DO_STATEMENT);
+        try {
+            return exit(open, super.isDoStatement());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isColorStatement()
+     */
+    @Override
+    public boolean isColorStatement() {
+        int open = enter(COLOR_STATEMENT);
+        try {
+            return exit(open, super.isColorStatement());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isEol()
+     */
+    @Override
+    public boolean isEol() {
+        int open = enter(EOL);
+        try {
+            return exit(open, super.isEol());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isExpression()
+     */
+    @Override
+    public boolean isExpression() {
+        int open = enter(EXPRESSION);
+        try {
+            return exit(open, super.isExpression());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isArithmeticExpression()
+     */
+    @Override
+    public boolean isArithmeticExpression() {
+        int open = enter(ARITHMETIC_EXPRESSION);
+        try {
+            return exit(open, super.isArithmeticExpression());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isTerm()
+     */
+    @Override
+    public boolean isTerm() {
+        int open = enter(TERM);
+        try {
+            return exit(open, super.isTerm());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isFactor()
+     */
+    @Override
+    public boolean isFactor() {
+        int open = enter(FACTOR);
+        try {
+            return exit(open, super.isFactor());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isUnsignedFactor()
+     */
+    @Override
+    public boolean isUnsignedFactor() {
+        int open = enter(UNSIGNED_FACTOR);
+        try {
+            return exit(open, super.isUnsignedFactor());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isParameterList()
+     */
+    @Override
+    public boolean isParameterList() {
+        int open = enter(PARAMETER_LIST);
+        try {
+            return exit(open, super.isParameterList());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isFunctionCall()
+     */
+    @Override
+    public boolean isFunctionCall() {
+        int open = enter(FUNCTION_CALL);
+        try {
+            return exit(open, super.isFunctionCall());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isComparator()
+     */
+    @Override
+    public boolean isComparator() {
+        int open = enter(COMPARATOR);
+        try {
+            return exit(open, super.isComparator());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isAddOperator()
+     */
+    @Override
+    public boolean isAddOperator() {
+        int open = enter(ADD_OPERATOR);
+        try {
+            return exit(open, super.isAddOperator());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isMultiplyOperator()
+     */
+    @Override
+    public boolean isMultiplyOperator() {
+        int open = enter(MULTIPLY_OPERATOR);
+        try {
+            return exit(open, super.isMultiplyOperator());
+        } finally {
+            unwind(open);
+        }
+    }
+
+    /**
+     * @see bugs.Recognizer#isVariable()
+     */
+    @Override
+    public boolean isVariable() {
+        int open = enter(VARIABLE);
+        try {
+            return exit(open, super.isVariable());
+        } finally {
+            unwind(open);
+        }
+    }
+}
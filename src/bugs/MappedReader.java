@@ -0,0 +1,132 @@
+package bugs;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A Reader for a UTF-8 (or plain ASCII) file that is memory-mapped
+ * rather than read. Characters are decoded straight from the mapped
+ * bytes into the array passed to <code>read</code>, so no copy of the
+ * file is ever made on the heap. Runs of ASCII, which is nearly all of
+ * a Bugs program, are copied a byte at a time; anything else goes
+ * through a UTF-8 decoder.
+ * <p>A single mapping is limited to 2GB, so larger files are mapped a
+ * region at a time.
+ *
+ * @author James Park
+ */
+class MappedReader extends Reader {
+    /** The largest region of the file mapped at once. */
+    static final int REGION_SIZE = 1 << 30;
+    /** The most bytes that one UTF-8 encoded character can take. */
+    private static final int MAX_BYTES_PER_CHAR = 4;
+
+    /** The file being read. */
+    private final FileChannel channel;
+    /** The size of the file. */
+    private final long size;
+    /** The position in the file of the first byte of <code>bytes</code>. */
+    private long regionStart;
+    /** The currently mapped region of the file. */
+    private MappedByteBuffer bytes;
+    /**
+     * The second half of a surrogate pair that did not fit in the last
+     * call of <code>read</code>, or -1.
+     */
+    private int leftover = -1;
+    /** Decodes anything that is not ASCII. */
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * Opens and maps the given file.
+     * @param path The file to be read.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    MappedReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            size = channel.size();
+            map(0);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Decodes characters from the file into part of an array.
+     * @see java.io.Reader#read(char[], int, int)
+     */
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (bytes == null) throw new IOException("Stream closed");
+        if (len == 0) return 0;
+        if (leftover >= 0) {
+            cbuf[off] = (char) leftover;
+            leftover = -1;
+            return 1;
+        }
+        if (bytes.remaining() < MAX_BYTES_PER_CHAR && regionStart + bytes.limit() < size) {
+            map(regionStart + bytes.position());
+        }
+        if (!bytes.hasRemaining()) return -1;
+        MappedByteBuffer b = bytes;
+        int p = b.position();
+        int limit = Math.min(b.limit(), p + len);
+        int n = 0;
+        while (p < limit) {
+            byte c = b.get(p);
+            if (c < 0) break;
+            cbuf[off + n++] = (char) c;
+            p++;
+        }
+        b.position(p);
+        if (n < len && b.hasRemaining()) {
+            CharBuffer out = CharBuffer.wrap(cbuf, off + n, len - n);
+            boolean lastRegion = regionStart + b.limit() == size;
+            decoder.decode(b, out, lastRegion);
+            n = out.position() - off;
+            if (n == 0 && b.hasRemaining()) {
+                // Only room for one char, and the next character needs two
+                CharBuffer pair = CharBuffer.allocate(2);
+                decoder.decode(b, pair, lastRegion);
+                cbuf[off] = pair.get(0);
+                if (pair.position() > 1) leftover = pair.get(1);
+                n = 1;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Closes the file. The mapping itself is released when it is
+     * garbage collected.
+     * @see java.io.Reader#close()
+     */
+    @Override
+    public void close() throws IOException {
+        bytes = null;
+        channel.close();
+    }
+
+    /**
+     * Maps the region of the file starting at the given position.
+     * @param start The position in the file of the first byte to map.
+     * @throws IOException If the region cannot be mapped.
+     */
+    private void map(long start) throws IOException {
+        regionStart = start;
+        bytes = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                            Math.min(REGION_SIZE, size - start));
+    }
+}
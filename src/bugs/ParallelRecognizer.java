@@ -0,0 +1,192 @@
+package bugs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Recognizes a single program using several threads. A program is an
+ * optional <code>Allbugs</code> block followed by independent
+ * <code>Bug</code> definitions, so after a quick scan of the characters
+ * finds the top level definitions by counting braces, each definition
+ * is tokenized and recognized on its own, in parallel, and the results
+ * are combined in order. The scan skips comments and quoted strings as
+ * the Lexer does, but makes no tokens.
+ * <p>The verdict, and the SyntaxException thrown for an invalid program,
+ * are the same as those of <code>new Recognizer(text).isProgram()</code>,
+ * and line numbers refer to the whole program. Where a definition runs
+ * into the next one, which the brace count cannot foresee, the program
+ * is recognized again sequentially.
+ *
+ * @author James Park
+ */
+public final class ParallelRecognizer {
+
+    /**
+     * This class only has static methods.
+     */
+    private ParallelRecognizer() {}
+
+    /**
+     * Tries to recognize a &lt;program&gt;, using the common pool.
+     * <pre>&lt;program&gt; ::= [ &lt;allbugs code&gt; ] &lt;bug definition&gt; { &lt;bug definition&gt; }</pre>
+     * @param text The program.
+     * @return <code>true</code> if a program is found.
+     * @see Recognizer#isProgram()
+     */
+    public static boolean isProgram(CharSequence text) {
+        return isProgram(text, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Tries to recognize a &lt;program&gt;, using the threads of a pool.
+     * @param text The program.
+     * @param pool The pool in which to recognize the definitions.
+     * @return <code>true</code> if a program is found.
+     * @see Recognizer#isProgram()
+     */
+    public static boolean isProgram(CharSequence text, ForkJoinPool pool) {
+        char[] chars = text.toString().toCharArray();
+        RecognitionMetrics metrics = RecognitionMetrics.getDefault();
+        ProgramEvent event = ProgramEvent.start(0, 0);
+        long start = metrics != null ? System.nanoTime() : 0;
+        long[] tokens = new long[1];
+        RecognitionMetrics.Outcome outcome = null;
+        boolean recognized = false;
+        try {
+            recognized = recognize(chars, pool, tokens);
+            outcome = recognized ? RecognitionMetrics.Outcome.ACCEPTED
+                                 : RecognitionMetrics.Outcome.SYNTAX_ERROR;
+            return recognized;
+        } catch (SyntaxException e) {
+            outcome = RecognitionMetrics.outcome(e);
+            throw e;
+        } finally {
+            event.finish(recognized, chars.length, tokens[0]);
+            if (metrics != null && outcome != null) {
+                metrics.record(chars.length, outcome, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Tries to recognize a &lt;program&gt; for <code>isProgram</code>,
+     * which records it for Flight Recorder and in the default metrics.
+     * @param chars The program.
+     * @param pool The pool in which to recognize the definitions.
+     * @param tokens Receives the number of tokens recognized.
+     * @return <code>true</code> if a program is found.
+     */
+    private static boolean recognize(char[] chars, ForkJoinPool pool, long[] tokens) {
+        int[] starts = Lexer.definitionStarts(chars, chars.length);
+        int count = starts.length / 2;
+        if (count < 2) return sequentially(chars, tokens);
+        List<Callable<Segment>> tasks = new ArrayList<Callable<Segment>>(count);
+        for (int i = 0; i < count; i++) {
+            // The first segment also has whatever comes before the first
+            // definition, to tell whether anything does
+            int from = i == 0 ? 0 : starts[2 * i];
+            int to = i + 1 < count ? starts[2 * i + 2] : chars.length;
+            int line = i == 0 ? 1 : starts[2 * i + 1];
+            tasks.add(() -> new Segment(new TokenBuffer(chars, from, to, line), line));
+        }
+        List<Segment> segments = BatchRecognizer.invokeAll(pool, tasks);
+        if (!segments.get(0).definition) return false; // Neither Allbugs nor Bug at the start
+
+        int bugs = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            tokens[0] += segment.tokens;
+            if (segment.allbugs && i > 0) break; // Not a Bug definition
+            if (segment.error != null) {
+                if (segment.ranIntoNext && i + 1 < segments.size()) {
+                    tokens[0] = 0;
+                    return sequentially(chars, tokens);
+                }
+                throw segment.error;
+            }
+            if (segment.allbugs) {
+                if (!segment.complete) return false;
+            } else {
+                bugs++;
+                if (!segment.complete) break;
+            }
+        }
+        return bugs > 0;
+    }
+
+    /**
+     * Recognizes a whole program with a single Recognizer, tokenizing it
+     * as it goes. The Recognizer does not record the program, since
+     * <code>isProgram</code> does.
+     * @param chars The program.
+     * @param tokens Receives the number of tokens recognized.
+     * @return <code>true</code> if a program is found.
+     */
+    private static boolean sequentially(char[] chars, long[] tokens) {
+        Recognizer recognizer = new Recognizer(new Lexer(chars));
+        try {
+            return recognizer.program();
+        } finally {
+            tokens[0] = recognizer.position();
+        }
+    }
+
+    /**
+     * The result of recognizing one top level definition.
+     */
+    static final class Segment {
+        /** Whether the tokens start with <code>Allbugs</code> or <code>Bug</code>. */
+        final boolean definition;
+        /** Whether the definition is the Allbugs block. */
+        final boolean allbugs;
+        /** The number of tokens recognized. */
+        long tokens;
+        /** Whether the definition used up all of its tokens. */
+        boolean complete;
+        /** The error in the definition, or <code>null</code>. */
+        SyntaxException error;
+        /** Whether the error was found at the end of the tokens. */
+        boolean ranIntoNext;
+
+        /**
+         * Recognizes a top level definition.
+         * @param whole All the tokens of the program.
+         * @param from The index of the first token of the definition.
+         * @param to The index of the first token of the next definition.
+         * @param line The line number of the first token of the definition.
+         */
+        Segment(TokenBuffer whole, int from, int to, int line) {
+            this(whole.slice(from, to), line);
+        }
+
+        /**
+         * Recognizes a top level definition that has been tokenized on
+         * its own. Nothing is recognized unless the tokens start with
+         * <code>Allbugs</code> or <code>Bug</code>.
+         * @param tokens The tokens of the definition.
+         * @param line The line number of the first token of the definition.
+         */
+        Segment(TokenBuffer tokens, int line) {
+            definition = tokens.startsDefinition();
+            allbugs = tokens.isKeywordAt(0, Token.ALLBUGS);
+            if (!definition) return;
+            Recognizer recognizer = new Recognizer(tokens);
+            recognizer.lineNumber = line;
+            try {
+                if (allbugs) {
+                    recognizer.isAllbugsCode();
+                } else {
+                    recognizer.isBugDefinition();
+                }
+                complete = tokens.peek(0) == Token.EOF;
+            } catch (SyntaxException e) {
+                error = e;
+                ranIntoNext = tokens.mark() >= tokens.size() - 1;
+            } finally {
+                this.tokens = recognizer.position();
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * Test class for recognizing a program in parallel, one top level
+ * definition at a time.
+ *
+ * @author James Park
+ */
+public class ParallelRecognizerTest {
+
+    private static final String PROGRAM =
+        "Allbugs {\n var a, b\n define f using x {\n return x * 2\n }\n}\n"
+        + "Bug one {\n var c\n initially {\n c = 1\n }\n move f(c) // {\n"
+        + " loop {\n exit if c > 10\n c = c + 1\n }\n}\n\n"
+        + "Bug two {\n turn 90\n do f (a)\n line 0, 0, 1, 1\n}\n"
+        + "Bug three {\n /* } */ color red\n switch {\n case a < b\n move 1\n }\n}\n";
+
+    @Test
+    public final void testSameAsSequential() {
+        assertTrue(new Recognizer(PROGRAM).isProgram());
+        assertSameVerdict(PROGRAM);
+        assertSameVerdict("");
+        assertSameVerdict("x\nBug a {\n move 1\n}\nBug b {\n move 1\n}\n");
+        assertSameVerdict("Bug a {\n move 1\n}\n}\nBug b {\n move\n}\n");
+        assertSameVerdict("Bug a {\n move 1\n} Bug b {\n move 1\n}\n");
+        assertSameVerdict("Bug a {\n move 1\n}\nAllbugs {\n}\nBug b {\n move\n}\n");
+    }
+
+    @Test
+    public final void testErrorLineNumbers() {
+        String program = PROGRAM + "Bug four {\n move 1\n turn\n}\n";
+        assertSameVerdict(program);
+        try {
+            ParallelRecognizer.isProgram(program);
+            fail();
+        } catch (SyntaxException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Line 33: "));
+        }
+    }
+
+    @Test
+    public final void testMutatedProgramsSameAsSequential() {
+        Random random = new Random(594);
+        String alphabet = "{}\n x1=(";
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (int i = 0; i < 1000; i++) {
+                StringBuilder sb = new StringBuilder(PROGRAM);
+                for (int j = random.nextInt(3); j >= 0; j--) {
+                    int at = random.nextInt(sb.length());
+                    if (random.nextBoolean()) {
+                        sb.deleteCharAt(at);
+                    } else {
+                        sb.insert(at, alphabet.charAt(random.nextInt(alphabet.length())));
+                    }
+                }
+                assertSameVerdict(sb.toString(), pool);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Asserts that recognizing a program in parallel gives the same
+     * verdict or error message as recognizing it sequentially.
+     * @param program The program to recognize.
+     */
+    private void assertSameVerdict(String program) {
+        assertSameVerdict(program, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Asserts that recognizing a program in parallel gives the same
+     * verdict or error message as recognizing it sequentially.
+     * @param program The program to recognize.
+     * @param pool The pool to recognize the program in.
+     */
+    private void assertSameVerdict(String program, ForkJoinPool pool) {
+        String expected;
+        try {
+            expected = "" + new Recognizer(program).isProgram();
+        } catch (SyntaxException e) {
+            expected = e.getMessage();
+        }
+        String actual;
+        try {
+            actual = "" + ParallelRecognizer.isProgram(program, pool);
+        } catch (SyntaxException e) {
+            actual = e.getMessage();
+        }
+        assertEquals(program, expected, actual);
+    }
+}
@@ -0,0 +1,65 @@
+package bugs;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A Flight Recorder event for recognizing a whole program with
+ * <code>isProgram</code>. Only programs that take longer than the
+ * threshold are recorded, and when Flight Recorder is not recording
+ * the event costs nothing.
+ *
+ * @author James Park
+ */
+@Name("bugs.Program")
+@Label("Program")
+@Category("Bugs")
+@Description("Recognizing a program")
+@Threshold("50 ms")
+@StackTrace(false)
+final class ProgramEvent extends jdk.jfr.Event {
+    @Label("Characters")
+    @Description("The number of characters read, up to the start of the current token; "
+                 + "not a number of bytes")
+    long length;
+
+    @Label("Tokens")
+    long tokens;
+
+    @Label("Recognized")
+    boolean recognized;
+
+    /**
+     * Starts timing a program.
+     * @param offset The position in the source of the current token.
+     * @param position The tokens consumed so far.
+     * @return The event.
+     */
+    static ProgramEvent start(long offset, long position) {
+        ProgramEvent event = new ProgramEvent();
+        event.begin();
+        event.length = -offset;
+        event.tokens = -position;
+        return event;
+    }
+
+    /**
+     * Stops timing the program, and records it if it took long enough.
+     * @param recognized Whether a program was found.
+     * @param offset The position in the source of the current token.
+     * @param position The tokens consumed so far.
+     */
+    void finish(boolean recognized, long offset, long position) {
+        end();
+        if (shouldCommit()) {
+            this.recognized = recognized;
+            length += offset;
+            tokens += position;
+            commit();
+        }
+    }
+}
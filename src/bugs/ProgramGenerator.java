@@ -0,0 +1,441 @@
+package bugs;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Generates random Bugs programs, for benchmarks and load tests. The
+ * programs follow the productions documented on <code>isProgram</code>,
+ * <code>isBugDefinition</code>, <code>isFunctionDefinition</code>,
+ * <code>isSwitchStatement</code> and the rest of the Recognizer, so
+ * unless errors are asked for, every program generated is accepted.
+ * <p>The same seed and settings always give the same program. The
+ * program is written to a <code>Writer</code> a line at a time, so a
+ * program of any size can be generated without holding it in memory.
+ *
+ * @author James Park
+ */
+public final class ProgramGenerator {
+    /** How deeply loops and switch statements are nested at most. */
+    private static final int MAX_NESTING = 3;
+    /** Names that are not keywords, for variables and functions. */
+    private static final String[] NAMES = { "x", "y", "angle", "step", "speed", "count", "f", "g" };
+    private static final String[] COLORS = { "black", "blue", "cyan", "darkGray", "gray", "green",
+        "lightGray", "magenta", "orange", "pink", "red", "white", "yellow", "brown", "purple",
+        "none" };
+    private static final String[] OPERATORS = { "+", "-", "*", "/", "<", "<=", "=", "!", "!=", ">",
+        ">=" };
+    /** Commands that each have a syntax error. */
+    private static final String[] ERRORS = { "move 1 +", "turn (2", "line 1, 2", "moveto 3",
+        "exit 1", "color 7", "do 5", "x = * 2", "switch", "loop 3" };
+
+    /** The seed of the random numbers. */
+    private final long seed;
+    /** Whether the program has an Allbugs block. */
+    private boolean allbugs = true;
+    /** The number of Bug definitions. */
+    private int bugs = 1;
+    /** The number of function definitions in each definition. */
+    private int functions = 1;
+    /** The number of top level commands in each Bug definition. */
+    private int commands = 10;
+    /** How deeply the parentheses of an expression are nested at most. */
+    private int expressionDepth = 3;
+    /** The chance of a blank line after each line. */
+    private double blankLineRate = 0;
+    /** The chance of a comment after each line. */
+    private double commentRate = 0;
+    /** The chance of each command having a syntax error. */
+    private double errorRate = 0;
+
+    /** The random numbers for the program being generated. */
+    private Random random;
+    /** Where the program being generated is written. */
+    private Writer out;
+    /** How deeply the current line is indented. */
+    private int indent;
+    /** The number of errors put into the program being generated. */
+    private int errors;
+
+    /**
+     * Constructs a ProgramGenerator with the default settings: an Allbugs
+     * block and one Bug, each with one function, ten commands, expressions
+     * nested three deep, no blank lines or comments and no errors.
+     * @param seed The seed of the random numbers.
+     */
+    public ProgramGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Sets whether programs start with an Allbugs block.
+     * @param allbugs <code>true</code> for an Allbugs block.
+     * @return This ProgramGenerator.
+     */
+    public ProgramGenerator setAllbugs(boolean allbugs) {
+        this.allbugs = allbugs;
+        return this;
+    }
+
+    /**
+     * Sets the number of Bug definitions.
+     * @param bugs The number, at least 1.
+     * @return This ProgramGenerator.
+     */
+    public ProgramGenerator setBugs(int bugs) {
+        this.bugs = atLeast(1, bugs, "Bugs");
+        return this;
+    }
+
+    /**
+     * Sets the number of function definitions in the Allbugs block and
+     * in each Bug definition.
+     * @param functions The number, at least 0.
+     * @return This ProgramGenerator.
+     */
+    public ProgramGenerator setFunctions(int functions) {
+        this.functions = atLeast(0, functions, "Functions");
+        return this;
+    }
+
+    /**
+     * Sets the number of top level commands in each Bug definition.
+     * Loops and switch statements add the commands inside them.
+     * @param commands The number, at least 1.
+     * @return This ProgramGenerator.
+     */
+    public ProgramGenerator setCommands(int commands) {
+        this.commands = atLeast(1, commands, "Commands");
+        return this;
+    }
+
+    /**
+     * Sets how deeply the parentheses and parameter lists of an expression
+     * may be nested. Each expression is nested to a random depth up to this.
+     * @param expressionDepth The depth, at least 0.
+     * @return This ProgramGenerator.
+     */
+    public ProgramGenerator setExpressionDepth(int expressionDepth) {
+        this.expressionDepth = atLeast(0, expressionDepth, "Expression depth");
+        return this;
+    }
+
+    /**
+     * Sets the chance of a blank line after each line.
+     * @param blankLineRate The chance, from 0 to 1.
+     * @return This ProgramGenerator.
+     */
+    public ProgramGenerator setBlankLineRate(double blankLineRate) {
+        this.blankLineRate = rate(blankLineRate, "Blank line rate");
+        return this;
+    }
+
+    /**
+     * Sets the chance of a comment after each line, either at the end of
+     * the line or on a line of its own.
+     * @param commentRate The chance, from 0 to 1.
+     * @return This ProgramGenerator.
+     */
+    public ProgramGenerator setCommentRate(double commentRate) {
+        this.commentRate = rate(commentRate, "Comment rate");
+        return this;
+    }
+
+    /**
+     * Sets the chance of each command being replaced by one with a
+     * syntax error.
+     * @param errorRate The chance, from 0 to 1.
+     * @return This ProgramGenerator.
+     */
+    public ProgramGenerator setErrorRate(double errorRate) {
+        this.errorRate = rate(errorRate, "Error rate");
+        return this;
+    }
+
+    /**
+     * Generates a program.
+     * @return The program.
+     */
+    public String generate() {
+        StringWriter text = new StringWriter();
+        try {
+            generate(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Can't ever get here
+        }
+        return text.toString();
+    }
+
+    /**
+     * Generates a program and writes it out. The Writer is neither
+     * flushed nor closed.
+     * @param out Where to write the program.
+     * @return The number of commands with syntax errors put into the
+     *         program; if this is 0, the program is valid.
+     * @throws IOException If the program cannot be written.
+     */
+    public int generate(Writer out) throws IOException {
+        this.random = new Random(seed);
+        this.out = out;
+        indent = 0;
+        errors = 0;
+        try {
+            if (allbugs) {
+                open("Allbugs {");
+                varDeclarations();
+                for (int i = 0; i < functions; i++) functionDefinition();
+                close();
+            }
+            for (int i = 0; i < bugs; i++) {
+                open("Bug b" + i + " {");
+                varDeclarations();
+                if (random.nextBoolean()) {
+                    open("initially {");
+                    command(1);
+                    close();
+                }
+                for (int j = 0; j < commands; j++) command(0);
+                for (int j = 0; j < functions; j++) functionDefinition();
+                close();
+            }
+            return errors;
+        } finally {
+            this.out = null;
+        }
+    }
+
+    /**
+     * Writes zero to two &lt;var declaration&gt;s.
+     */
+    private void varDeclarations() throws IOException {
+        for (int i = random.nextInt(3); i > 0; i--) {
+            StringBuilder text = new StringBuilder("var ").append(name());
+            for (int j = random.nextInt(3); j > 0; j--) text.append(", ").append(name());
+            line(text);
+        }
+    }
+
+    /**
+     * Writes a &lt;function definition&gt;.
+     */
+    private void functionDefinition() throws IOException {
+        StringBuilder text = new StringBuilder("define ").append(name());
+        if (random.nextBoolean()) {
+            text.append(" using ").append(name());
+            for (int j = random.nextInt(3); j > 0; j--) text.append(", ").append(name());
+        }
+        open(text.append(" {"));
+        for (int i = random.nextInt(3); i > 0; i--) command(1);
+        line(expression(new StringBuilder("return ")));
+        close();
+    }
+
+    /**
+     * Writes a &lt;command&gt;, or, now and then, a command with an error.
+     * @param nesting How many loops and switch statements it is inside.
+     */
+    private void command(int nesting) throws IOException {
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+            errors++;
+            line(ERRORS[random.nextInt(ERRORS.length)]);
+            return;
+        }
+        int kinds = nesting < MAX_NESTING ? 12 : 10;
+        StringBuilder text = new StringBuilder();
+        switch (random.nextInt(kinds)) {
+            case 0:
+                line(expression(text.append("move ")));
+                break;
+            case 1:
+                line(expression(expression(text.append("moveto ")).append(", ")));
+                break;
+            case 2:
+                line(expression(text.append("turn ")));
+                break;
+            case 3:
+                line(expression(text.append("turnto ")));
+                break;
+            case 4:
+                text.append("line ");
+                for (int i = 0; i < 3; i++) expression(text).append(", ");
+                line(expression(text));
+                break;
+            case 5:
+                line(expression(text.append(name()).append(" = ")));
+                break;
+            case 6:
+                line(expression(text.append("exit if ")));
+                break;
+            case 7:
+                line(expression(text.append("return ")));
+                break;
+            case 8:
+                text.append("do ").append(name());
+                if (random.nextBoolean()) {
+                    text.append("(");
+                    for (int i = random.nextInt(3); i > 0; i--) {
+                        expression(text).append(i > 1 ? ", " : "");
+                    }
+                    text.append(")");
+                }
+                line(text);
+                break;
+            case 9:
+                line(text.append("color ").append(COLORS[random.nextInt(COLORS.length)]));
+                break;
+            case 10:
+                open("loop {");
+                for (int i = 1 + random.nextInt(3); i > 0; i--) command(nesting + 1);
+                close();
+                break;
+            default:
+                open("switch {");
+                for (int i = random.nextInt(3); i > 0; i--) {
+                    line(expression(new StringBuilder("case ")));
+                    indent++;
+                    for (int j = random.nextInt(3); j > 0; j--) command(nesting + 1);
+                    indent--;
+                }
+                close();
+        }
+    }
+
+    /**
+     * Appends an &lt;expression&gt;, with its parentheses and parameter
+     * lists nested to a random depth. Every group is closed by a
+     * <code>)</code>, so the groups are opened in one loop and closed in
+     * another, and any depth can be generated without recursion.
+     * @param text The text to append to.
+     * @return The text.
+     */
+    private StringBuilder expression(StringBuilder text) {
+        int depth = random.nextInt(expressionDepth + 1);
+        for (int i = 0; i < depth; i++) {
+            if (random.nextBoolean()) factor(text).append(' ').append(operator()).append(' ');
+            if (random.nextInt(3) == 0) {
+                text.append(name()).append('(');
+                if (random.nextBoolean()) factor(text).append(", ");
+            } else {
+                if (random.nextInt(4) == 0) text.append('-');
+                text.append('(');
+            }
+        }
+        factor(text);
+        for (int i = depth - 1; i >= 0; i--) {
+            text.append(')');
+            if (random.nextBoolean()) factor(text.append(' ').append(operator()).append(' '));
+        }
+        if (random.nextInt(3) == 0) factor(text.append(' ').append(operator()).append(' '));
+        return text;
+    }
+
+    /**
+     * Appends a &lt;factor&gt; without parentheses: a number, a variable
+     * or a reference to a variable of another Bug, maybe with a sign.
+     * @param text The text to append to.
+     * @return The text.
+     */
+    private StringBuilder factor(StringBuilder text) {
+        if (random.nextInt(8) == 0) text.append(random.nextBoolean() ? '-' : '+');
+        switch (random.nextInt(4)) {
+            case 0:
+                return text.append(random.nextInt(1000));
+            case 1:
+                return text.append(random.nextInt(100)).append('.').append(random.nextInt(100));
+            case 2:
+                return text.append(name()).append('.').append(name());
+            default:
+                return text.append(name());
+        }
+    }
+
+    /**
+     * Returns a random add, multiply or comparison operator.
+     * @return The operator.
+     */
+    private String operator() {
+        return OPERATORS[random.nextInt(OPERATORS.length)];
+    }
+
+    /**
+     * Returns a random name that is not a keyword.
+     * @return The name.
+     */
+    private String name() {
+        return NAMES[random.nextInt(NAMES.length)];
+    }
+
+    /**
+     * Writes a line that opens a block, and indents the lines after it.
+     * @param text The line, ending with <code>{</code>.
+     */
+    private void open(CharSequence text) throws IOException {
+        line(text);
+        indent++;
+    }
+
+    /**
+     * Writes the line that closes a block.
+     */
+    private void close() throws IOException {
+        indent--;
+        line("}");
+    }
+
+    /**
+     * Writes a line, and maybe a comment and blank lines after it.
+     * @param text The line, without its end of line.
+     */
+    private void line(CharSequence text) throws IOException {
+        indent();
+        out.append(text);
+        boolean comment = commentRate > 0 && random.nextDouble() < commentRate;
+        if (comment && random.nextBoolean()) {
+            out.write("  // note " + random.nextInt(100));
+            comment = false;
+        }
+        out.write('\n');
+        if (comment) {
+            indent();
+            out.write(random.nextBoolean() ? "// comment\n" : "/* comment */\n");
+        }
+        if (blankLineRate > 0 && random.nextDouble() < blankLineRate) out.write('\n');
+    }
+
+    /**
+     * Writes the indentation of the current line.
+     */
+    private void indent() throws IOException {
+        for (int i = 0; i < indent; i++) out.write("  ");
+    }
+
+    /**
+     * Checks that a setting is not too small.
+     * @param least The smallest value allowed.
+     * @param value The value.
+     * @param what The name of the setting.
+     * @return The value.
+     */
+    private static int atLeast(int least, int value, String what) {
+        if (value < least) {
+            throw new IllegalArgumentException(what + " must be at least " + least + ": " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Checks that a setting is a chance from 0 to 1.
+     * @param value The value.
+     * @param what The name of the setting.
+     * @return The value.
+     */
+    private static double rate(double value, String what) {
+        if (!(value >= 0 && value <= 1)) {
+            throw new IllegalArgumentException(what + " must be from 0 to 1: " + value);
+        }
+        return value;
+    }
+}
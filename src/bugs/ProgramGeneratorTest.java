@@ -0,0 +1,71 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.junit.Test;
+
+/**
+ * Test class for generating Bugs programs.
+ *
+ * @author James Park
+ */
+public class ProgramGeneratorTest {
+
+    @Test
+    public final void testGeneratedProgramsAreValid() {
+        for (long seed = 0; seed < 300; seed++) {
+            ProgramGenerator generator = new ProgramGenerator(seed)
+                .setAllbugs(seed % 2 == 0)
+                .setBugs(1 + (int) (seed % 4))
+                .setFunctions((int) (seed % 3))
+                .setCommands(1 + (int) (seed % 20))
+                .setExpressionDepth((int) (seed % 6))
+                .setBlankLineRate(seed % 5 / 4.0)
+                .setCommentRate(seed % 3 / 2.0);
+            String program = generator.generate();
+            assertTrue(program, new Recognizer(program).isProgram());
+            assertEquals(program, generator.generate());
+        }
+        assertFalse(new ProgramGenerator(1).generate().equals(new ProgramGenerator(2).generate()));
+        String deep = new ProgramGenerator(7).setExpressionDepth(5000).setCommands(50).generate();
+        assertTrue(new Recognizer(deep).isProgram());
+    }
+
+    @Test
+    public final void testInjectedErrors() throws IOException {
+        StringBuilder text = new StringBuilder();
+        Writer out = new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) {
+                text.append(cbuf, off, len);
+            }
+
+            @Override
+            public void flush() {}
+
+            @Override
+            public void close() {}
+        };
+        int rejected = 0;
+        for (long seed = 0; seed < 200; seed++) {
+            text.setLength(0);
+            int errors = new ProgramGenerator(seed).setBugs(3).setErrorRate(0.05).generate(out);
+            RecognitionResult result = RecognitionResult.of(text);
+            if (errors == 0) {
+                assertTrue(result.isAccepted());
+            } else {
+                assertFalse(text.toString(), result.isAccepted());
+                rejected++;
+            }
+        }
+        assertTrue(rejected > 50);
+        try {
+            new ProgramGenerator(0).setErrorRate(1.5);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+/**
+ * Test class for the Flight Recorder events.
+ *
+ * @author James Park
+ */
+public class RecognitionEventsTest {
+
+    private static final String PROGRAM = "Allbugs {\n var x\n}\n"
+        + "Bug alpha {\n move 1\n define f using a {\n  return a\n }\n}\n"
+        + "Bug beta {\n turn (\n}\n";
+
+    @Test
+    public final void testEvents() throws IOException {
+        List<RecordedEvent> events = record(() -> {
+            Recognizer.pretokenized(PROGRAM).findProgramErrors(10);
+            Grammar.DEFAULT.withMaxLength(5).recognize(PROGRAM);
+        });
+        int definitions = 0;
+        for (RecordedEvent event : events) {
+            if (!event.getEventType().getName().equals("bugs.Definition")) continue;
+            String kind = event.getString("kind");
+            if (kind.equals("Allbugs")) {
+                assertNull(event.getString("name"));
+                assertEquals(1, event.getInt("line"));
+                assertEquals(8, event.getLong("tokens"));
+            } else if (kind.equals("define")) {
+                assertEquals("f", event.getString("name"));
+                assertEquals(6, event.getInt("line"));
+            } else if (event.getString("name").equals("alpha")) {
+                assertEquals(4, event.getInt("line"));
+                assertEquals(PROGRAM.indexOf("Bug beta") - PROGRAM.indexOf("Bug alpha"),
+                             event.getLong("length"));
+            } else {
+                assertEquals("beta", event.getString("name"));
+            }
+            definitions++;
+        }
+        assertEquals(4, definitions);
+
+        List<RecordedEvent> programs = all(events, "bugs.Program");
+        assertEquals(2, programs.size());
+        RecordedEvent program = programs.get(0);
+        assertTrue(program.getBoolean("recognized"));
+        assertEquals(PROGRAM.length(), program.getLong("length"));
+        for (RecordedEvent event : events) {
+            assertNull(event.getEventType().getName(), // Characters, not a DataAmount in bytes
+                       event.getEventType().getField("length") == null ? null
+                           : event.getEventType().getField("length").getContentType());
+        }
+        assertFalse(programs.get(1).getBoolean("recognized"));
+        List<RecordedEvent> lexing = all(events, "bugs.Lexing");
+        assertEquals(1, lexing.size());
+        assertEquals(PROGRAM.length(), lexing.get(0).getLong("length"));
+        assertEquals(program.getLong("tokens") + 1, lexing.get(0).getLong("tokens")); // EOF
+
+        int errors = 0;
+        for (RecordedEvent event : events) {
+            if (!event.getEventType().getName().equals("bugs.SyntaxError")) continue;
+            if (errors++ == 0) {
+                assertEquals(11, event.getInt("line"));
+                assertNull(event.getString("limit"));
+            } else {
+                assertEquals("LENGTH", event.getString("limit"));
+                assertEquals("Input longer than 5 characters", event.getString("detail"));
+            }
+        }
+        assertEquals(2, errors);
+    }
+
+    @Test
+    public final void testParallelEvents() throws IOException {
+        String program = PROGRAM.replace("turn (", "turn 1");
+        List<RecordedEvent> events = record(() -> assertTrue(ParallelRecognizer.isProgram(program)));
+        List<RecordedEvent> programs = all(events, "bugs.Program");
+        assertEquals(1, programs.size());
+        assertTrue(programs.get(0).getBoolean("recognized"));
+        assertEquals(program.length(), programs.get(0).getLong("length"));
+
+        // Each definition is lexed on its own
+        List<RecordedEvent> lexing = all(events, "bugs.Lexing");
+        assertEquals(3, lexing.size());
+        long length = 0;
+        long tokens = 0;
+        for (RecordedEvent event : lexing) {
+            length += event.getLong("length");
+            tokens += event.getLong("tokens");
+        }
+        assertEquals(program.length(), length);
+        assertEquals(programs.get(0).getLong("tokens") + 3, tokens); // EOFs
+    }
+
+    @Test
+    public final void testThreshold() throws IOException {
+        List<RecordedEvent> events = record(() -> {
+            for (int i = 0; i < 100; i++) {
+                Grammar.DEFAULT.isProgram("Bug b {\n move 1\n}\n");
+            }
+        }, Duration.ofSeconds(10));
+        for (RecordedEvent event : events) {
+            assertFalse(event.getEventType().getName().startsWith("bugs."));
+        }
+    }
+
+    /**
+     * Records the events of the Bugs category while something runs,
+     * with no threshold.
+     */
+    private List<RecordedEvent> record(Runnable work) throws IOException {
+        return record(work, Duration.ZERO);
+    }
+
+    /**
+     * Records the events of the Bugs category while something runs.
+     */
+    private List<RecordedEvent> record(Runnable work, Duration threshold) throws IOException {
+        Path file = Files.createTempFile("bugs", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : new String[] { "Program", "Definition", "Lexing", "SyntaxError" }) {
+                recording.enable("bugs." + name).withThreshold(threshold);
+            }
+            recording.start();
+            work.run();
+            recording.stop();
+            recording.dump(file);
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            events.sort(Comparator.comparing(RecordedEvent::getStartTime));
+            return events;
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Finds the events of a type, in the order they started.
+     */
+    private List<RecordedEvent> all(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> found = new ArrayList<RecordedEvent>();
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) found.add(event);
+        }
+        return found;
+    }
+}
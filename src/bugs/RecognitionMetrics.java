@@ -0,0 +1,257 @@
+package bugs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency and throughput of recognizing programs, broken down by the
+ * size of the program and by the outcome. For each size bucket and each
+ * outcome there is a LatencyHistogram of how long recognition took and
+ * a count of the characters recognized. Each call of a Recognizer's
+ * <code>isProgram</code> or <code>recognizeProgram</code> is recorded in
+ * the metrics given to its <code>setMetrics</code>, or else in the
+ * metrics set with <code>setDefault</code>, if any. That covers
+ * <code>RecognitionResult.of</code>, BatchRecognizer and Grammar, which
+ * can be given metrics of its own with <code>withMetrics</code>;
+ * ParallelRecognizer records each program once, in the default
+ * metrics. Other callers can use <code>record</code>.
+ * <p>Like LatencyHistogram, recording is lock-free and the memory used
+ * is fixed. The metrics can be read one histogram at a time with
+ * <code>snapshot</code>, or all at once as text with <code>toString</code>.
+ *
+ * @author James Park
+ */
+public final class RecognitionMetrics {
+
+    /**
+     * How a recognition ended.
+     */
+    public enum Outcome {
+        /** The program was accepted. */
+        ACCEPTED,
+        /** The program was rejected because of a syntax error. */
+        SYNTAX_ERROR,
+        /** Recognition was stopped by a limit, or cancelled. */
+        LIMIT_EXCEEDED
+    }
+
+    /** The largest size, in characters, of each size bucket. */
+    private static final long[] SIZES = { 1L << 10, 1L << 14, 1L << 18, 1L << 22, Long.MAX_VALUE };
+    /** The names of the size buckets, as upper bounds. */
+    private static final String[] SIZE_NAMES = { "1Ki", "16Ki", "256Ki", "4Mi", "+Inf" };
+    /** The percentiles shown by <code>toString</code>. */
+    private static final double[] PERCENTILES = { 50, 99, 99.9 };
+    /** The number of outcomes. */
+    private static final int OUTCOMES = Outcome.values().length;
+    /** Where recognitions are recorded by default, or <code>null</code>. */
+    private static volatile RecognitionMetrics defaultMetrics = null;
+
+    /** The histogram for each size bucket and outcome. */
+    private final LatencyHistogram[] histograms = new LatencyHistogram[SIZES.length * OUTCOMES];
+    /** The characters recognized for each size bucket and outcome. */
+    private final AtomicLongArray characters = new AtomicLongArray(SIZES.length * OUTCOMES);
+
+    /**
+     * Constructs metrics with nothing recorded.
+     */
+    public RecognitionMetrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Sets the metrics that recognitions are recorded in when no others
+     * are given. There are none until this is called.
+     * @param metrics The metrics, or <code>null</code> not to record.
+     */
+    public static void setDefault(RecognitionMetrics metrics) {
+        defaultMetrics = metrics;
+    }
+
+    /**
+     * Returns the metrics that recognitions are recorded in when no
+     * others are given.
+     * @return The metrics, or <code>null</code> if there are none.
+     */
+    public static RecognitionMetrics getDefault() {
+        return defaultMetrics;
+    }
+
+    /**
+     * Returns the number of size buckets.
+     * @return The number.
+     */
+    public static int sizeBuckets() {
+        return SIZES.length;
+    }
+
+    /**
+     * Finds the size bucket that a program is counted in.
+     * @param length The number of characters in the program.
+     * @return The index of the bucket: the first one whose largest
+     *         size is at least <code>length</code>.
+     */
+    public static int sizeBucket(long length) {
+        int bucket = 0;
+        while (length > SIZES[bucket]) bucket++;
+        return bucket;
+    }
+
+    /**
+     * Returns the largest size that is counted in a size bucket.
+     * @param bucket The index of the bucket.
+     * @return The size in characters; the last bucket has no limit.
+     */
+    public static long sizeLimit(int bucket) {
+        return SIZES[bucket];
+    }
+
+    /**
+     * Works out the outcome of a recognition from its result.
+     * @param result The result.
+     * @return The outcome.
+     */
+    public static Outcome outcome(RecognitionResult result) {
+        if (result.isAccepted()) return Outcome.ACCEPTED;
+        return result.getLimit() != null ? Outcome.LIMIT_EXCEEDED : Outcome.SYNTAX_ERROR;
+    }
+
+    /**
+     * Works out the outcome of a recognition from the exception it threw.
+     * @param e The exception.
+     * @return The outcome.
+     */
+    public static Outcome outcome(SyntaxException e) {
+        return e instanceof LimitExceededException ? Outcome.LIMIT_EXCEEDED : Outcome.SYNTAX_ERROR;
+    }
+
+    /**
+     * Works out the outcome of a recognition from the error that stopped it.
+     * @param error The code of the error.
+     * @return The outcome.
+     */
+    public static Outcome outcome(ErrorCode error) {
+        return error.getLimit() != null ? Outcome.LIMIT_EXCEEDED : Outcome.SYNTAX_ERROR;
+    }
+
+    /**
+     * Records one recognition.
+     * @param length The number of characters in the program.
+     * @param outcome How recognition ended.
+     * @param nanos How long it took, in nanoseconds.
+     */
+    public void record(long length, Outcome outcome, long nanos) {
+        int i = sizeBucket(length) * OUTCOMES + outcome.ordinal();
+        histograms[i].record(nanos);
+        characters.getAndAdd(i, length);
+    }
+
+    /**
+     * Returns the latencies of the recognitions in one size bucket with
+     * one outcome.
+     * @param bucket The index of the size bucket.
+     * @param outcome The outcome.
+     * @return A snapshot of the histogram.
+     */
+    public LatencyHistogram.Snapshot snapshot(int bucket, Outcome outcome) {
+        return histograms[bucket * OUTCOMES + outcome.ordinal()].snapshot();
+    }
+
+    /**
+     * Returns the characters recognized in one size bucket with one outcome.
+     * @param bucket The index of the size bucket.
+     * @param outcome The outcome.
+     * @return The total number of characters.
+     */
+    public long characters(int bucket, Outcome outcome) {
+        return characters.get(bucket * OUTCOMES + outcome.ordinal());
+    }
+
+    /**
+     * Sets everything back to zero. Recognitions recorded at the same
+     * time may be partly counted.
+     */
+    public void reset() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i].reset();
+            characters.set(i, 0);
+        }
+    }
+
+    /**
+     * Writes the metrics in the Prometheus text exposition format: a
+     * summary of the latency in seconds, with its 50th, 99th and 99.9th
+     * percentiles, and a counter of the characters recognized, for each
+     * size bucket and outcome that has been recorded. Rates of
+     * recognitions and of characters come from two dumps taken apart.
+     * @param out Where to write the metrics.
+     * @throws IOException If <code>out</code> throws it.
+     */
+    public void writeTo(Appendable out) throws IOException {
+        out.append("# HELP bugs_recognition_seconds Time taken to recognize a program.\n");
+        out.append("# TYPE bugs_recognition_seconds summary\n");
+        for (int bucket = 0; bucket < SIZES.length; bucket++) {
+            for (Outcome outcome : Outcome.values()) {
+                LatencyHistogram.Snapshot snapshot = snapshot(bucket, outcome);
+                if (snapshot.getCount() == 0) continue;
+                String labels = labels(bucket, outcome);
+                for (double percentile : PERCENTILES) {
+                    out.append("bugs_recognition_seconds{").append(labels)
+                       .append(",quantile=\"").append(Double.toString(percentile / 100)).append("\"} ")
+                       .append(seconds(snapshot.getValueAtPercentile(percentile))).append('\n');
+                }
+                out.append("bugs_recognition_seconds_sum{").append(labels).append("} ")
+                   .append(seconds(snapshot.getSum())).append('\n');
+                out.append("bugs_recognition_seconds_count{").append(labels).append("} ")
+                   .append(Long.toString(snapshot.getCount())).append('\n');
+            }
+        }
+        out.append("# HELP bugs_recognition_characters_total Characters of programs recognized.\n");
+        out.append("# TYPE bugs_recognition_characters_total counter\n");
+        for (int bucket = 0; bucket < SIZES.length; bucket++) {
+            for (Outcome outcome : Outcome.values()) {
+                if (snapshot(bucket, outcome).getCount() == 0) continue;
+                out.append("bugs_recognition_characters_total{").append(labels(bucket, outcome))
+                   .append("} ").append(Long.toString(characters(bucket, outcome))).append('\n');
+            }
+        }
+    }
+
+    /**
+     * Returns the metrics in the Prometheus text exposition format.
+     * @see #writeTo(Appendable)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        try {
+            writeTo(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // A StringBuilder never throws it
+        }
+        return text.toString();
+    }
+
+    /**
+     * Makes the labels of a size bucket and outcome.
+     * @param bucket The index of the size bucket.
+     * @param outcome The outcome.
+     * @return The labels, without braces.
+     */
+    private static String labels(int bucket, Outcome outcome) {
+        return "size=\"" + SIZE_NAMES[bucket] + "\",outcome=\""
+            + outcome.name().toLowerCase() + "\"";
+    }
+
+    /**
+     * Converts nanoseconds to seconds, as text.
+     * @param nanos The time in nanoseconds.
+     * @return The time in seconds.
+     */
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+}
@@ -0,0 +1,117 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Test class for RecognitionMetrics.
+ *
+ * @author James Park
+ */
+public class RecognitionMetricsTest {
+
+    private static final String GOOD = "Bug b {\n move 1\n}\n";
+    private static final String BAD = "Bug b {\n turn (\n}\n";
+
+    @Test
+    public final void testRecording() {
+        RecognitionMetrics metrics = new RecognitionMetrics();
+        Grammar grammar = Grammar.DEFAULT.withMetrics(metrics);
+        String large = new ProgramGenerator(1).setBugs(20).generate();
+        assertTrue(large.length() > 1024);
+        assertTrue(grammar.isProgram(GOOD));
+        assertTrue(grammar.recognize(large).isAccepted());
+        assertFalse(grammar.recognize(BAD).isAccepted());
+        try {
+            grammar.isProgram(BAD);
+            fail();
+        } catch (SyntaxException e) {
+            assertFalse(e instanceof LimitExceededException);
+        }
+        try {
+            grammar.withMaxTokens(3).isProgram(GOOD);
+            fail();
+        } catch (LimitExceededException e) {
+        }
+
+        int small = RecognitionMetrics.sizeBucket(GOOD.length());
+        assertEquals(0, small);
+        int big = RecognitionMetrics.sizeBucket(large.length());
+        assertTrue(big > 0 && large.length() <= RecognitionMetrics.sizeLimit(big));
+        assertEquals(1, metrics.snapshot(small, RecognitionMetrics.Outcome.ACCEPTED).getCount());
+        assertEquals(1, metrics.snapshot(big, RecognitionMetrics.Outcome.ACCEPTED).getCount());
+        assertEquals(2, metrics.snapshot(small, RecognitionMetrics.Outcome.SYNTAX_ERROR).getCount());
+        assertEquals(1, metrics.snapshot(small, RecognitionMetrics.Outcome.LIMIT_EXCEEDED).getCount());
+        assertEquals(2 * BAD.length(), metrics.characters(small, RecognitionMetrics.Outcome.SYNTAX_ERROR));
+        assertEquals(large.length(), metrics.characters(big, RecognitionMetrics.Outcome.ACCEPTED));
+
+        String text = metrics.toString();
+        assertTrue(text, text.startsWith("# HELP bugs_recognition_seconds "));
+        assertTrue(text, text.contains(
+            "bugs_recognition_seconds{size=\"1Ki\",outcome=\"syntax_error\",quantile=\"0.99\"} "));
+        assertTrue(text, text.contains(
+            "bugs_recognition_seconds_count{size=\"1Ki\",outcome=\"limit_exceeded\"} 1\n"));
+        assertTrue(text, text.contains("bugs_recognition_characters_total{size=\"1Ki\",outcome=\"accepted\"} "
+                                       + GOOD.length() + "\n"));
+        assertFalse(text, text.contains("+Inf"));
+
+        metrics.reset();
+        assertEquals(0, metrics.snapshot(small, RecognitionMetrics.Outcome.ACCEPTED).getCount());
+        assertEquals(0, metrics.characters(big, RecognitionMetrics.Outcome.ACCEPTED));
+    }
+
+    @Test
+    public final void testDefault() {
+        RecognitionMetrics metrics = new RecognitionMetrics();
+        String two = GOOD + GOOD;
+        RecognitionMetrics.setDefault(metrics);
+        try {
+            assertTrue(new Recognizer(GOOD).isProgram());
+            assertFalse(new Recognizer(BAD).recognizeProgram().isAccepted());
+            assertTrue(RecognitionResult.of(GOOD).isAccepted());
+            try (BatchRecognizer batch = new BatchRecognizer(2)) {
+                assertEquals(2, batch.recognize(Arrays.asList(GOOD, BAD, GOOD)).getAccepted());
+            }
+            assertTrue(ParallelRecognizer.isProgram(two));
+            Recognizer limited = new Recognizer(GOOD);
+            limited.setMaxTokens(3);
+            assertNotNull(limited.recognizeProgram().getLimit());
+
+            Recognizer quiet = new Recognizer(GOOD);
+            quiet.setMetrics(null);
+            assertTrue(quiet.isProgram());
+            Recognizer broken = new Recognizer(new Reader() {
+                @Override
+                public int read(char[] cbuf, int off, int len) throws IOException {
+                    throw new IOException("unreadable");
+                }
+
+                @Override
+                public void close() {
+                }
+            });
+            try {
+                broken.isProgram();
+                fail();
+            } catch (UncheckedIOException e) {
+            }
+        } finally {
+            RecognitionMetrics.setDefault(null);
+        }
+        assertTrue(new Recognizer(GOOD).isProgram());
+
+        int small = RecognitionMetrics.sizeBucket(two.length());
+        assertEquals(0, small);
+        assertEquals(5, metrics.snapshot(small, RecognitionMetrics.Outcome.ACCEPTED).getCount());
+        assertEquals(4 * GOOD.length() + two.length(),
+                     metrics.characters(small, RecognitionMetrics.Outcome.ACCEPTED));
+        assertEquals(2, metrics.snapshot(small, RecognitionMetrics.Outcome.SYNTAX_ERROR).getCount());
+        assertEquals(1, metrics.snapshot(small, RecognitionMetrics.Outcome.LIMIT_EXCEEDED).getCount());
+    }
+}
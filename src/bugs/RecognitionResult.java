@@ -0,0 +1,191 @@
+package bugs;
+
+/**
+ * The outcome of recognizing one program: either it was accepted, or
+ * it was rejected, in which case the line and source position of the
+ * error and the code for what is wrong are kept. The message is only
+ * put together when it is asked for.
+ *
+ * @author James Park
+ */
+public final class RecognitionResult {
+    /** The Recognizers reused by <code>of</code>. */
+    private static final RecognizerPool POOL = new RecognizerPool();
+    /** The shared result for every accepted program. */
+    private static final RecognitionResult ACCEPTED =
+        new RecognitionResult(true, 0, null, 0, -1);
+
+    /** Whether the program was accepted. */
+    private final boolean accepted;
+    /** The line on which recognition stopped, if the program was rejected. */
+    private final int line;
+    /** What is wrong, or <code>null</code>. */
+    private final ErrorCode error;
+    /** The value of the limit passed, if <code>error</code> is a limit. */
+    private final long value;
+    /** The position in the source of the token in error, or -1. */
+    private final long offset;
+
+    /**
+     * Constructor for RecognitionResults.
+     * @param accepted Whether the program was accepted.
+     * @param line The line on which recognition stopped.
+     * @param error What is wrong, or <code>null</code>.
+     * @param value The value of the limit passed, if <code>error</code> is a limit.
+     * @param offset The position in the source of the token in error.
+     */
+    private RecognitionResult(boolean accepted, int line, ErrorCode error, long value,
+                              long offset) {
+        this.accepted = accepted;
+        this.line = line;
+        this.error = error;
+        this.value = value;
+        this.offset = offset;
+    }
+
+    /**
+     * Returns the result for an accepted program.
+     * @return The result.
+     */
+    static RecognitionResult accepted() {
+        return ACCEPTED;
+    }
+
+    /**
+     * Returns the result for a program that was simply not recognized,
+     * without an error.
+     * @param line The line on which recognition stopped.
+     * @param offset The position in the source of the next token.
+     * @return The result.
+     */
+    static RecognitionResult rejected(int line, long offset) {
+        return new RecognitionResult(false, line, null, 0, offset);
+    }
+
+    /**
+     * Returns the result for a program rejected because of an error.
+     * @param line The line on which the error was found.
+     * @param error What is wrong.
+     * @param value The value of the limit passed, if <code>error</code> is a limit.
+     * @param offset The position in the source of the token in error.
+     * @return The result.
+     */
+    static RecognitionResult rejected(int line, ErrorCode error, long value, long offset) {
+        return new RecognitionResult(false, line, error, value, offset);
+    }
+
+    /**
+     * Returns the result for a program rejected with a SyntaxException.
+     * @param e The exception.
+     * @return The result.
+     */
+    static RecognitionResult rejected(SyntaxException e) {
+        return new RecognitionResult(false, e.getLine(), e.getError(), e.getValue(), e.getOffset());
+    }
+
+    /**
+     * Recognizes a program.
+     * @param program The text of the program.
+     * @return Whether <code>isProgram()</code> accepted it and, if not,
+     *         where and why it was rejected.
+     */
+    public static RecognitionResult of(CharSequence program) {
+        Recognizer recognizer = POOL.borrow();
+        recognizer = recognizer == null ? new Recognizer(new Lexer(program))
+                                        : recognizer.reset(program);
+        try {
+            return recognizer.recognizeProgram();
+        } finally {
+            POOL.giveBack(recognizer);
+        }
+    }
+
+    /**
+     * Tells whether the program was accepted.
+     * @return <code>true</code> if the program was accepted.
+     */
+    public boolean isAccepted() {
+        return accepted;
+    }
+
+    /**
+     * Returns the line on which recognition of a rejected program stopped.
+     * @return The line number, or 0 for an accepted program.
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Returns the position in the source of the token at which
+     * recognition of a rejected program stopped.
+     * @return The number of characters before the token, or -1 for an
+     *         accepted program.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the code for what is wrong with a rejected program, which
+     * can be compared without putting together any text.
+     * @return The code, or <code>null</code> if the program was accepted
+     *         or was rejected without an error.
+     */
+    public ErrorCode getError() {
+        return error;
+    }
+
+    /**
+     * Returns what is wrong with a rejected program, without the line
+     * number.
+     * @return The description, or <code>null</code> if the program was
+     *         accepted or was rejected without an error.
+     */
+    public String getDetail() {
+        if (error == null) return null;
+        return error.getDetail(value);
+    }
+
+    /**
+     * Returns the limit that stopped recognition, for a program that was
+     * rejected because it went past a limit rather than because it had
+     * a syntax error.
+     * @return The limit, or <code>null</code> if no limit was passed.
+     */
+    public LimitExceededException.Limit getLimit() {
+        if (error == null) return null;
+        return error.getLimit();
+    }
+
+    /**
+     * Returns the message of the SyntaxException that rejected the program.
+     * @return The message, or <code>null</code> if the program was accepted
+     *         or was rejected without an error.
+     */
+    public String getMessage() {
+        if (error == null) return null;
+        return "Line " + line + ": " + getDetail();
+    }
+
+    /**
+     * Returns the SyntaxException that <code>isProgram()</code> would
+     * have thrown for a rejected program.
+     * @return The exception, or <code>null</code> if the program was
+     *         accepted or was rejected without an error.
+     */
+    public SyntaxException toException() {
+        if (error == null) return null;
+        return error.toException(line, value, offset);
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        if (accepted) return "accepted";
+        if (error == null) return "Line " + line + ": not a program";
+        return getMessage();
+    }
+}
@@ -1,9 +1,19 @@
 package bugs;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.StreamTokenizer;
-import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class consists of a number of methods that "recognize" strings
@@ -19,6 +29,10 @@ import java.io.StringReader;
  *       unrecoverable error has occurred and throw a
  *       <code>SyntaxException</code></li>.
  * </ul>
+ * <p>A Recognizer holds the state of recognizing one text, and should
+ * only be used by one thread at a time. The tables it recognizes with
+ * are shared by all Recognizers; a <code>Grammar</code> makes Recognizers
+ * with a given set of limits and can itself be shared between threads.
  * @author David Matuszek and James Park
  * @version February 2015
  */
@@ -26,49 +40,389 @@ import java.io.StringReader;
  * @author James Park
  *
  */
-public class Recognizer {
+public class Recognizer implements Closeable {
+    // The productions of <command>, for choosing one by the next token.
+    private static final int NO_COMMAND = 0;
+    private static final int MOVE_ACTION = 1;
+    private static final int MOVETO_ACTION = 2;
+    private static final int TURN_ACTION = 3;
+    private static final int TURNTO_ACTION = 4;
+    private static final int LINE_ACTION = 5;
+    private static final int ASSIGNMENT_STATEMENT = 6;
+    private static final int LOOP_STATEMENT = 7;
+    private static final int EXIT_IF_STATEMENT = 8;
+    private static final int SWITCH_STATEMENT = 9;
+    private static final int RETURN_STATEMENT = 10;
+    private static final int DO_STATEMENT = 11;
+    private static final int COLOR_STATEMENT = 12;
+
+    /** The nonterminal of each production of &lt;command&gt;. */
+    private static final String[] COMMAND_NONTERMINALS = {
+        null, "moveAction", "moveToAction", "turnAction", "turnToAction", "lineAction",
+        "assignmentStatement", "loopStatement", "exitIfStatement", "switchStatement",
+        "returnStatement", "doStatement", "colorStatement"
+    };
+
+    /**
+     * The production of &lt;command&gt; that starts with each terminal, by
+     * terminal code. It is worked out from the FIRST sets, so it always
+     * agrees with the grammar.
+     */
+    private static final byte[] COMMANDS = new byte[FirstSets.TERMINALS];
+
+    static {
+        for (int command = 1; command < COMMAND_NONTERMINALS.length; command++) {
+            long[] first = FirstSets.of(COMMAND_NONTERMINALS[command]);
+            for (int terminal = 0; terminal < COMMANDS.length; terminal++) {
+                if (!FirstSets.contains(first, terminal)) continue;
+                if (COMMANDS[terminal] != NO_COMMAND) {
+                    throw new ExceptionInInitializerError(
+                        "Two productions of <command> start with terminal " + terminal);
+                }
+                COMMANDS[terminal] = (byte) command;
+            }
+        }
+    }
+
+    // The FIRST sets of the nonterminals, so that a method can tell from
+    // the next token alone that its nonterminal does not start there.
+    private static final long[] FIRST_PROGRAM = FirstSets.of("program");
+    private static final long[] FIRST_ALLBUGS_CODE = FirstSets.of("allbugsCode");
+    private static final long[] FIRST_BUG_DEFINITION = FirstSets.of("bugDefinition");
+    private static final long[] FIRST_VAR_DECLARATION = FirstSets.of("varDeclaration");
+    private static final long[] FIRST_INITIALIZATION_BLOCK = FirstSets.of("initializationBlock");
+    private static final long[] FIRST_FUNCTION_DEFINITION = FirstSets.of("functionDefinition");
+    private static final long[] FIRST_BLOCK = FirstSets.of("block");
+    private static final long[] FIRST_MOVE_ACTION = FirstSets.of("moveAction");
+    private static final long[] FIRST_MOVE_TO_ACTION = FirstSets.of("moveToAction");
+    private static final long[] FIRST_TURN_ACTION = FirstSets.of("turnAction");
+    private static final long[] FIRST_TURN_TO_ACTION = FirstSets.of("turnToAction");
+    private static final long[] FIRST_LINE_ACTION = FirstSets.of("lineAction");
+    private static final long[] FIRST_ASSIGNMENT_STATEMENT = FirstSets.of("assignmentStatement");
+    private static final long[] FIRST_LOOP_STATEMENT = FirstSets.of("loopStatement");
+    private static final long[] FIRST_EXIT_IF_STATEMENT = FirstSets.of("exitIfStatement");
+    private static final long[] FIRST_SWITCH_STATEMENT = FirstSets.of("switchStatement");
+    private static final long[] FIRST_RETURN_STATEMENT = FirstSets.of("returnStatement");
+    private static final long[] FIRST_DO_STATEMENT = FirstSets.of("doStatement");
+    private static final long[] FIRST_COLOR_STATEMENT = FirstSets.of("colorStatement");
+    private static final long[] FIRST_EOL = FirstSets.of("eol");
+    private static final long[] FIRST_EXPRESSION = FirstSets.of("expression");
+    private static final long[] FIRST_ARITHMETIC_EXPRESSION = FirstSets.of("arithmeticExpression");
+    private static final long[] FIRST_TERM = FirstSets.of("term");
+    private static final long[] FIRST_FACTOR = FirstSets.of("factor");
+    private static final long[] FIRST_UNSIGNED_FACTOR = FirstSets.of("unsignedFactor");
+    private static final long[] FIRST_PARAMETER_LIST = FirstSets.of("parameterList");
+    private static final long[] FIRST_FUNCTION_CALL = FirstSets.of("functionCall");
+    private static final long[] FIRST_COMPARATOR = FirstSets.of("comparator");
+    private static final long[] FIRST_ADD_OPERATOR = FirstSets.of("addOperator");
+    private static final long[] FIRST_MULTIPLY_OPERATOR = FirstSets.of("multiplyOperator");
+    private static final long[] FIRST_VARIABLE = FirstSets.of("variable");
+
+    /** The default for the most blocks and switch statements open at once. */
+    public static final int DEFAULT_MAX_DEPTH = 1000;
+
+    /** The number of tokens read between checks of the time and cancellation. */
+    private static final int CHECK_INTERVAL = 64;
+
+    /** The most characters a Recognizer kept for reuse may have room for. */
+    static final int MAX_REUSED_LENGTH = 16 * Lexer.WINDOW_SIZE;
+    /** The most groups of an expression a Recognizer kept for reuse may have room for. */
+    static final int MAX_REUSED_GROUPS = 256;
+
+    // What came before the next factor of an expression, which decides
+    // what happens if there is none, and which nonterminals start there.
+    static final int START_OF_EXPRESSION = 0;
+    static final int AFTER_COMPARATOR = 1;
+    static final int AFTER_ADD_OPERATOR = 2;
+    static final int AFTER_MULTIPLY_OPERATOR = 3;
+    static final int START_OF_PARENTHESES = 4;
+    static final int START_OF_PARAMETER_LIST = 5;
+    static final int AFTER_COMMA = 6;
+    private static final ErrorCode[] MISSING_FACTOR = {
+        null,
+        ErrorCode.NO_OPERAND_AFTER_COMPARATOR,
+        ErrorCode.NO_TERM_AFTER_ADD_OPERATOR,
+        ErrorCode.NO_FACTOR_AFTER_MULTIPLY_OPERATOR,
+        ErrorCode.BAD_PARENTHESIZED_EXPRESSION,
+        null,
+        ErrorCode.NO_EXPRESSION_AFTER_COMMA
+    };
+
+    // The groups that can be open within an expression.
+    private static final int IN_PARENTHESES = 0;
+    private static final int IN_PARAMETER_LIST = 1;
+
+    // The nonterminals that isExpression() recognizes without calling
+    // their methods, as noted to a ListeningRecognizer.
+    private static final int UNSIGNED_FACTOR = FirstSets.id("unsignedFactor");
+    private static final int PARAMETER_LIST = FirstSets.id("parameterList");
+    private static final int FUNCTION_CALL = FirstSets.id("functionCall");
+
     /** The tokenizer used by this Parser. */
-    StreamTokenizer tokenizer = null;
+    Lexer tokenizer = null;
     /** The number of the line of source code currently being processed. */
     int lineNumber;
+    /** The errors recovered from so far, or <code>null</code> if not recovering. */
+    private List<SyntaxException> errors = null;
+    /** The most errors to recover from before giving up. */
+    private int maxErrors;
+    /** The number of blocks and switch statements open. */
+    private int depth = 0;
+    /** The most blocks and switch statements that may be open at once. */
+    private int maxDepth = DEFAULT_MAX_DEPTH;
+    /** The number of tokens read, not counting tokens read again. */
+    private long tokens = 0;
+    /** The number of tokens read at which the limits are next checked. */
+    private long nextCheck = 0;
+    /** The most tokens that may be read. */
+    private long maxTokens = Long.MAX_VALUE;
+    /** Whether there is a time by which recognition must finish. */
+    private boolean hasDeadline = false;
+    /** The value of <code>System.nanoTime()</code> by which recognition must finish. */
+    private long deadline;
+    /** Set, from any thread, to stop recognition. */
+    private volatile boolean cancelled = false;
+    /** Where each program recognized is recorded, or <code>null</code>. */
+    private RecognitionMetrics metrics = RecognitionMetrics.getDefault();
+    /** Whether errors are recorded and returned from, rather than thrown. */
+    private boolean recording = false;
+    /** The first error recorded, or <code>null</code>. */
+    private ErrorCode failure;
+    /** The line on which <code>failure</code> was found. */
+    private int failureLine;
+    /** The value of the limit passed, if <code>failure</code> is a limit. */
+    private long failureValue;
+    /** The position in the source of the token at which <code>failure</code> was found. */
+    private long failureOffset;
+
+    /** The groups open in the expression being recognized, innermost last. */
+    private int[] groups = new int[8];
     
     /**
      * Constructs a Recognizer for the given string.
      * @param text The string to be recognized.
      */
     public Recognizer(String text) {
-        Reader reader = new StringReader(text);
-        tokenizer = new StreamTokenizer(reader);
-        tokenizer.parseNumbers();
-        tokenizer.eolIsSignificant(true);
-        tokenizer.slashStarComments(true);
-        tokenizer.slashSlashComments(true);
-        tokenizer.lowerCaseMode(false);
-        tokenizer.ordinaryChars(33, 47);
-        tokenizer.ordinaryChars(58, 64);
-        tokenizer.ordinaryChars(91, 96);
-        tokenizer.ordinaryChars(123, 126);
-        tokenizer.quoteChar('\"');
+        this(new Lexer(text));
+    }
+
+    /**
+     * Constructs a Recognizer that reads the program from a Reader as
+     * recognition proceeds, through a fixed-size window, so the whole
+     * program is never held in memory. An <code>IOException</code> while
+     * reading is rethrown as an <code>UncheckedIOException</code>.
+     * @param reader The source of the program to be recognized.
+     */
+    public Recognizer(Reader reader) {
+        this(new Lexer(reader));
+    }
+
+    /**
+     * Constructs a Recognizer that reads the program from an InputStream
+     * as recognition proceeds.
+     * @param in The source of the program to be recognized.
+     * @param charset The encoding of the program.
+     * @see #Recognizer(Reader)
+     */
+    public Recognizer(InputStream in, Charset charset) {
+        this(new InputStreamReader(in, charset));
+    }
+
+    /**
+     * Constructs a Recognizer that reads the program from a file as
+     * recognition proceeds. The file is closed by <code>close()</code>.
+     * @param path The file holding the program to be recognized.
+     * @param charset The encoding of the file.
+     * @throws IOException If the file cannot be opened.
+     * @see #Recognizer(Reader)
+     */
+    public Recognizer(Path path, Charset charset) throws IOException {
+        this(Files.newInputStream(path), charset);
+    }
+
+    /**
+     * Constructs a Recognizer that reads a UTF-8 encoded program from a
+     * file as recognition proceeds. The file is closed by <code>close()</code>.
+     * @param path The file holding the program to be recognized.
+     * @throws IOException If the file cannot be opened.
+     * @see #Recognizer(Reader)
+     */
+    public Recognizer(Path path) throws IOException {
+        this(path, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Constructs a Recognizer for a UTF-8 or ASCII encoded file that is
+     * memory-mapped instead of read, so that even a very large program
+     * is never copied onto the heap; only a small window of decoded
+     * characters is. The file is closed by <code>close()</code>.
+     * @param path The file holding the program to be recognized.
+     * @return The new Recognizer.
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public static Recognizer mapped(Path path) throws IOException {
+        return new Recognizer(new MappedReader(path));
+    }
+
+    /**
+     * Constructs a Recognizer that gets its tokens from the given Lexer.
+     * @param lexer The source of tokens.
+     */
+    Recognizer(Lexer lexer) {
+        tokenizer = lexer;
+        tokenizer.setPoll(this::poll);
         lineNumber = 1;
     }
 
+    /**
+     * Constructs a Recognizer that tokenizes all of the given text before
+     * recognition starts. Its tokens are kept in compact arrays, so they
+     * are never lexed twice, and the Recognizer supports
+     * <code>mark()</code> and <code>reset(int)</code>.
+     * @param text The text to be recognized.
+     * @return The new Recognizer.
+     */
+    public static Recognizer pretokenized(CharSequence text) {
+        return new Recognizer(new TokenBuffer(text));
+    }
+
     /**
      * Tries to recognize an &lt;expression&gt;.
      * <pre>&lt;expression&gt; ::= &lt;arithmetic expression&gt;{ &lt;comparator&gt; &lt;arithmetic expression&gt; }</pre>
+     * Recognition only has to know which operands and operators may
+     * follow each other, not how they group, so the expression is read
+     * as a flat sequence of factors separated by operators. Parenthesized
+     * expressions and parameter lists are kept on an explicit stack
+     * instead of the call stack, so the depth to which they can be nested
+     * is limited by the heap, not by the thread's stack. The tokens
+     * consumed, and the SyntaxExceptions thrown, are the same as for the
+     * grammar above, and the loop notes where each of its nonterminals
+     * starts and ends so that a ListeningRecognizer can report them.
      * @return <code>true</code> if is an expression
      */
     public boolean isExpression() {
-    	if(!isArithmeticExpression()){
-    		return false;
-    	}
-    	while(isComparator() ){
-    		if(!isArithmeticExpression()){
-    			error("Error after arithmetic expression and comparator!");
-    		}
-    	}
-        return true;
-    }    
-    
+        if (!startsWith(FIRST_EXPRESSION)) return false;
+        int groupsOpen = 0;
+        int before = START_OF_EXPRESSION;
+        while (true) {
+            // A factor, or the start of a group
+            enterFactor(before);
+            boolean signed = isAddOperator();
+            enterRule(UNSIGNED_FACTOR);
+            if (isVariable()) {
+                if (symbol(".")) {              // reference to another Bug
+                    if (!name()) return error(ErrorCode.BAD_DOT_NOTATION);
+                } else if (symbol("(")) {       // function call
+                    enterRule(FUNCTION_CALL);
+                    enterRule(PARAMETER_LIST);
+                    groupsOpen = open(groupsOpen, IN_PARAMETER_LIST);
+                    before = START_OF_PARAMETER_LIST;
+                    continue;
+                }
+            } else if (!number()) {
+                if (symbol("(")) {
+                    groupsOpen = open(groupsOpen, IN_PARENTHESES);
+                    before = START_OF_PARENTHESES;
+                    continue;
+                }
+                if (signed) return error(ErrorCode.NO_FACTOR_AFTER_SIGN);
+                if (before == START_OF_EXPRESSION) {
+                    exitRules(4, false);
+                    return false;
+                }
+                if (before != START_OF_PARAMETER_LIST) return error(MISSING_FACTOR[before]);
+                exitRules(5, false);
+                if (!symbol(")")) return error(ErrorCode.UNCLOSED_PARAMETER_LIST);
+                exitRules(2, true);
+                groupsOpen--;                   // an empty parameter list
+            }
+            // An operator, or the end of the innermost expression
+            while (true) {
+                exitRules(2, true);  // <unsigned factor> <factor>
+                if (isMultiplyOperator()) {
+                    before = AFTER_MULTIPLY_OPERATOR;
+                    break;
+                }
+                exitRules(1, true);  // <term>
+                if (isAddOperator()) {
+                    before = AFTER_ADD_OPERATOR;
+                    break;
+                }
+                exitRules(1, true);  // <arithmetic expression>
+                if (isComparator()) {
+                    before = AFTER_COMPARATOR;
+                    break;
+                }
+                if (groupsOpen == 0) return true;
+                exitRules(1, true);  // <expression>
+                if (groups[groupsOpen - 1] == IN_PARENTHESES) {
+                    if (!symbol(")")) return error(ErrorCode.UNCLOSED_PARENTHESES);
+                    groupsOpen--;
+                    continue;
+                }
+                if (symbol(",")) {
+                    before = AFTER_COMMA;
+                    break;
+                }
+                if (!symbol(")")) return error(ErrorCode.UNCLOSED_PARAMETER_LIST);
+                exitRules(2, true);  // <parameter list> <function call>
+                groupsOpen--;
+            }
+        }
+    }
+
+    /**
+     * Notes that <code>isExpression()</code> is about to read a factor.
+     * The nonterminals that start there depend on what came before it.
+     * This does nothing; a ListeningRecognizer overrides it.
+     * @param before What came before the factor, such as <code>AFTER_COMMA</code>.
+     */
+    protected void enterFactor(int before) {
+    }
+
+    /**
+     * Notes that <code>isExpression()</code> has started on a nonterminal
+     * whose method it does not call. This does nothing; a
+     * ListeningRecognizer overrides it.
+     * @param nonterminal The ID of the nonterminal, as in <code>FirstSets</code>.
+     */
+    protected void enterRule(int nonterminal) {
+    }
+
+    /**
+     * Notes that <code>isExpression()</code> has finished the innermost
+     * nonterminals noted by <code>enterFactor</code> and <code>enterRule</code>.
+     * This does nothing; a ListeningRecognizer overrides it.
+     * @param count How many of them have finished.
+     * @param recognized Whether they were recognized.
+     */
+    protected void exitRules(int count, boolean recognized) {
+    }
+
+    /**
+     * Notes that a block or switch statement has been opened, and stops
+     * recognition if too many are now open. The caller must decrement
+     * <code>depth</code> once it is closed, whether or not this succeeds.
+     * @return <code>true</code> if no more than the most allowed are open.
+     */
+    private boolean nest() {
+        return ++depth <= maxDepth
+            || fail(ErrorCode.NESTED_TOO_DEEP, maxDepth, tokenizer.tokenOffset());
+    }
+
+    /**
+     * Pushes a parenthesized expression or parameter list onto the stack
+     * used by <code>isExpression()</code>, growing the stack if it is full.
+     * @param groupsOpen The number of groups already open.
+     * @param group <code>IN_PARENTHESES</code> or <code>IN_PARAMETER_LIST</code>.
+     * @return The number of groups now open.
+     */
+    private int open(int groupsOpen, int group) {
+        if (groupsOpen == groups.length) groups = Arrays.copyOf(groups, groupsOpen * 2);
+        groups[groupsOpen] = group;
+        return groupsOpen + 1;
+    }
+
     /**
      * Tries to recognize an &lt;arithmetic expression&gt;.
      * <pre>&lt;arithmetic expression&gt; ::= [ &lt;add_operator&gt; ] &lt;term&gt; { &lt;add_operator&gt; &lt;term&gt; }</pre>
@@ -77,10 +431,11 @@ public class Recognizer {
      * @return <code>true</code> if an expression is recognized.
      */
     public boolean isArithmeticExpression() {
+        if (!startsWith(FIRST_ARITHMETIC_EXPRESSION)) return false;
         if (!isTerm()) return false;
         while (isAddOperator()) {
             if (!isTerm()) {
-                error("Error in arithmetic expression after '+' or '-'");
+                return error(ErrorCode.NO_TERM_AFTER_ADD_OPERATOR);
             }
         }
         return true;
@@ -94,9 +449,10 @@ public class Recognizer {
      * @return <code>true</code> if a term is recognized.
      */
     public boolean isTerm() {
+        if (!startsWith(FIRST_TERM)) return false;
         if (!isFactor()) return false;
         while (isMultiplyOperator()) {
-            if (!isFactor()) error("No factor after '*' or '/'");
+            if (!isFactor()) return error(ErrorCode.NO_FACTOR_AFTER_MULTIPLY_OPERATOR);
         }
         return true;
     }
@@ -107,12 +463,12 @@ public class Recognizer {
      * @return <code>true</code> if a factor is parsed.
      */
     public boolean isFactor() {
+        if (!startsWith(FIRST_FACTOR)) return false;
         if(symbol("+") || symbol("-")) {
             if (isUnsignedFactor()) {
                 return true;
             }
-            error("No factor following unary plus or minus");
-            return false; // Can't ever get here
+            return error(ErrorCode.NO_FACTOR_AFTER_SIGN);
         }
         return isUnsignedFactor();
     }
@@ -130,18 +486,19 @@ public class Recognizer {
      * @return <code>true</code> if a factor is recognized.
      */
     public boolean isUnsignedFactor() {
+        if (!startsWith(FIRST_UNSIGNED_FACTOR)) return false;
         if (isVariable()) {
             if (symbol(".")) {              // reference to another Bug
                 if (name()) return true;
-                error("Incorrect use of dot notation");
+                return error(ErrorCode.BAD_DOT_NOTATION);
             }
             else if (isParameterList()) return true; // function call
             else return true;                        // just a variable
         }
         if (number()) return true;
         if (symbol("(")) {
-            if (!isExpression()) error("Error in parenthesized expression");
-            if (!symbol(")")) error("Unclosed parenthetical expression");
+            if (!isExpression()) return error(ErrorCode.BAD_PARENTHESIZED_EXPRESSION);
+            if (!symbol(")")) return error(ErrorCode.UNCLOSED_PARENTHESES);
             return true;
        }
        return false;
@@ -153,13 +510,14 @@ public class Recognizer {
      * @return <code>true</code> if a parameter list is recognized.
      */
     public boolean isParameterList() {
+        if (!startsWith(FIRST_PARAMETER_LIST)) return false;
         if (!symbol("(")) return false;
         if (isExpression()) {
             while (symbol(",")) {
-                if (!isExpression()) error("No expression after ','");
+                if (!isExpression()) return error(ErrorCode.NO_EXPRESSION_AFTER_COMMA);
             }
         }
-        if (!symbol(")")) error("Parameter list doesn't end with ')'");
+        if (!symbol(")")) return error(ErrorCode.UNCLOSED_PARAMETER_LIST);
         return true;
     }
 
@@ -169,6 +527,7 @@ public class Recognizer {
      * @return <code>true</code> if an addop is recognized.
      */
     public boolean isAddOperator() {
+        if (!startsWith(FIRST_ADD_OPERATOR)) return false;
         return symbol("+") || symbol("-");
     }
 
@@ -178,6 +537,7 @@ public class Recognizer {
      * @return <code>true</code> if a multiply_operator is recognized.
      */
     public boolean isMultiplyOperator() {
+        if (!startsWith(FIRST_MULTIPLY_OPERATOR)) return false;
         return symbol("*") || symbol("/");
     }
 
@@ -187,6 +547,7 @@ public class Recognizer {
      * @return <code>true</code> if a variable is recognized.
      */
     public boolean isVariable() {
+        if (!startsWith(FIRST_VARIABLE)) return false;
         return name();
     }
 
@@ -228,11 +589,14 @@ public class Recognizer {
      * Tests whether the next token is the expected keyword. If it is, the token
      * is moved to the stack, otherwise it is not.
      *
-     * @param expectedKeyword The String value of the expected next token.
-     * @return <code>true</code> if the next token is a keyword with the expected value.
+     * @param expectedKeyword The keyword ID of the expected next token.
+     * @return <code>true</code> if the next token is the expected keyword.
      */
-    private boolean keyword(String expectedKeyword) {
-        return nextTokenMatches(Token.Type.KEYWORD, expectedKeyword);
+    private boolean keyword(int expectedKeyword) {
+        advance();
+        if (tokenizer.keywordId() == expectedKeyword) return true;
+        pushBack();
+        return false;
     }
 
     /**
@@ -256,8 +620,8 @@ public class Recognizer {
      * @return <code>true</code> if the next token has the expected type.
      */
     boolean nextTokenMatches(Token.Type type) {
-        Token t = nextToken();
-        if (t.type == type) return true;
+        advance();
+        if (tokenizer.type() == type) return true;
         pushBack();
         return false;
     }
@@ -274,54 +638,480 @@ public class Recognizer {
      * @return <code>true</code> if the next token has the expected type.
      */
     boolean nextTokenMatches(Token.Type type, String value) {
-        Token t = nextToken();
-        if (type == t.type && value.equals(t.value)) return true;
+        advance();
+        if (type == tokenizer.type() && tokenizer.valueEquals(value)) return true;
         pushBack();
         return false;
     }
 
     /**
-     * Returns the next Token.
+     * Returns the next Token. Keywords, symbols, end of lines and the
+     * end of input are shared Token instances, and a token that has
+     * been pushed back is returned again without being recreated.
      * @return The next Token.
      */
     Token nextToken() {
-        int code;
-        try { code = tokenizer.nextToken(); }
-        catch (IOException e) { throw new Error(e); } // Should never happen
-        switch (code) {
-            case StreamTokenizer.TT_WORD:
-                if (Token.KEYWORDS.contains(tokenizer.sval)) {
-                    return new Token(Token.Type.KEYWORD, tokenizer.sval);
-                }
-                return new Token(Token.Type.NAME, tokenizer.sval);
-            case StreamTokenizer.TT_NUMBER:
-                return new Token(Token.Type.NUMBER, tokenizer.nval + "");
-            case StreamTokenizer.TT_EOL:
-                lineNumber++;
-                return new Token(Token.Type.EOL, "\n");
-            case StreamTokenizer.TT_EOF:
-                return new Token(Token.Type.EOF, "EOF");
-            default:
-                return new Token(Token.Type.SYMBOL, ((char) code) + "");
+        advance();
+        return tokenizer.token();
+    }
+
+    /**
+     * Moves to the next token without creating a Token for it, so that
+     * the value of a name or number is only made if someone asks for it.
+     * @return The type of the token, as in <code>Lexer</code>.
+     */
+    private int advance() {
+        if (!tokenizer.isPushedBack() && ++tokens > nextCheck) checkLimits();
+        int code = tokenizer.next();
+        if (code == Lexer.TT_EOL) lineNumber++;
+        return code;
+    }
+
+    /**
+     * Checks the limits on the input, the tokens read, the time taken and
+     * cancellation, and works out when to check them next.
+     * @throws LimitExceededException If a limit has been passed, unless
+     *         errors are being recorded.
+     */
+    private void checkLimits() {
+        if (tokens > maxTokens) {
+            fail(ErrorCode.TOO_MANY_TOKENS, maxTokens, tokenizer.tokenOffset());
+        } else {
+            poll();
         }
+        nextCheck = tokens + Math.min(CHECK_INTERVAL, maxTokens - tokens);
+    }
+
+    /**
+     * Checks the length of the input, the time taken and cancellation.
+     * Besides every few tokens, the tokenizer calls this every few
+     * thousand characters and each time it reads more input, so that a
+     * single long comment, string or word is stopped too.
+     * @throws LimitExceededException If a limit has been passed, unless
+     *         errors are being recorded.
+     */
+    private void poll() {
+        if (tokenizer.isTooLong()) {
+            long maxLength = tokenizer.getMaxLength();
+            fail(ErrorCode.INPUT_TOO_LONG, maxLength, maxLength);
+        } else if (cancelled) {
+            fail(ErrorCode.CANCELLED, 0, tokenizer.tokenOffset());
+        } else if (hasDeadline && System.nanoTime() - deadline > 0) {
+            fail(ErrorCode.TIME_LIMIT_EXCEEDED, 0, tokenizer.tokenOffset());
+        }
+    }
+
+    /**
+     * Returns the number of tokens consumed so far. A token that has been
+     * pushed back is not counted until it is read again.
+     * @return The number of tokens.
+     */
+    long position() {
+        return tokenizer.isPushedBack() ? tokens - 1 : tokens;
+    }
+
+    /**
+     * Starts timing a definition for Flight Recorder.
+     * @param kind The keyword that starts the definition, just read.
+     * @return The event, to be finished when the definition is.
+     */
+    private DefinitionEvent startDefinition(String kind) {
+        return DefinitionEvent.start(kind, lineNumber, tokenizer.tokenOffset(), position());
+    }
+
+    /**
+     * Finishes timing a definition for Flight Recorder.
+     * @param event The event returned by <code>startDefinition</code>.
+     */
+    private void finish(DefinitionEvent event) {
+        event.finish(tokenizer.tokenOffset(), position());
     }
 
     /**
      * Returns the most recent Token to the tokenizer.
      */
-    @SuppressWarnings("static-access")
-	void pushBack() {
-        tokenizer.pushBack();  
-        if (tokenizer.ttype == tokenizer.TT_EOL) lineNumber--;
+    void pushBack() {
+        tokenizer.pushBack();
+        if (tokenizer.ttype == Lexer.TT_EOL) lineNumber--;
+    }
+
+    /**
+     * Looks at the next token, without consuming it, to find the only
+     * production of &lt;command&gt; that could apply.
+     * @return The production, or <code>NO_COMMAND</code> if none applies.
+     */
+    private int nextCommand() {
+        return COMMANDS[lookahead()];
+    }
+
+    /**
+     * Tells whether the next token can begin a nonterminal.
+     * @param first The FIRST set of the nonterminal.
+     * @return <code>true</code> if the next token is in the set.
+     */
+    private boolean startsWith(long[] first) {
+        return FirstSets.contains(first, lookahead());
+    }
+
+    /**
+     * Returns the terminal code of the next token, without consuming it.
+     * The tokenizer is only asked for the token if it has not already
+     * been read and pushed back, which is usually the case.
+     * @return The terminal code.
+     * @see FirstSets
+     */
+    private int lookahead() {
+        if (!tokenizer.isPushedBack()) {
+            advance();
+            tokenizer.pushBack(); // Not pushBack(), which a listener would hear about
+            if (tokenizer.ttype == Lexer.TT_EOL) lineNumber--;
+        }
+        return tokenizer.terminal();
+    }
+
+    /**
+     * Tries to recognize one production of &lt;command&gt;.
+     * @param command The production, from <code>nextCommand()</code>.
+     * @return <code>true</code> if the production is recognized.
+     */
+    private boolean command(int command) {
+        switch (command) {
+            case MOVE_ACTION: return isMoveAction();
+            case MOVETO_ACTION: return isMoveToAction();
+            case TURN_ACTION: return isTurnAction();
+            case TURNTO_ACTION: return isTurnToAction();
+            case LINE_ACTION: return isLineAction();
+            case ASSIGNMENT_STATEMENT: return isAssignmentStatement();
+            case LOOP_STATEMENT: return isLoopStatement();
+            case EXIT_IF_STATEMENT: return isExitIfStatement();
+            case SWITCH_STATEMENT: return isSwitchStatement();
+            case RETURN_STATEMENT: return isReturnStatement();
+            case DO_STATEMENT: return isDoStatement();
+            case COLOR_STATEMENT: return isColorStatement();
+            default: return false;
+        }
+    }
+
+    /**
+     * Returns a position in the token stream to which <code>reset</code>
+     * can later return. Only a Recognizer constructed by
+     * <code>pretokenized</code> supports this.
+     * @return The position of the next token.
+     */
+    int mark() {
+        return tokenizer.mark();
+    }
+
+    /**
+     * Returns to a position obtained from <code>mark()</code>, so that
+     * recognition continues from the token that was next at that time.
+     * @param mark A value returned by <code>mark()</code>.
+     */
+    void reset(int mark) {
+        tokenizer.reset(mark);
+        lineNumber = ((TokenBuffer) tokenizer).lineAt(mark);
+    }
+
+    /**
+     * Closes the Reader, stream or file this Recognizer reads from, if any.
+     * @throws IOException If it cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        tokenizer.close();
+    }
+
+    /**
+     * Utility routine to stop recognition at a syntax error in the
+     * current token.
+     * @param error What is wrong.
+     * @return <code>false</code>, for the method that found the error
+     *         to return.
+     * @throws SyntaxException Unless errors are being recorded.
+     */
+    private boolean error(ErrorCode error) {
+        return fail(error, 0, tokenizer.tokenOffset());
+    }
+
+    /**
+     * Stops recognition at an error. Unless errors are being recorded,
+     * the exception for it is thrown. Otherwise the first error is kept,
+     * and the tokenizer is stopped, so that every method still open
+     * finds only the end of input and returns at once; what they return
+     * does not matter, since the error decides the outcome.
+     * @param error What is wrong.
+     * @param value The value of the limit passed, if <code>error</code> is a limit.
+     * @param offset The position in the source at which recognition stopped.
+     * @return <code>false</code>.
+     * @throws SyntaxException Unless errors are being recorded.
+     */
+    private boolean fail(ErrorCode error, long value, long offset) {
+        if (!recording) {
+            throw SyntaxErrorEvent.thrown(error.toException(lineNumber, value, offset));
+        }
+        if (failure == null) {
+            failure = error;
+            failureLine = lineNumber;
+            failureValue = value;
+            failureOffset = offset;
+            SyntaxErrorEvent.found(lineNumber, error, value, offset);
+            tokens = position(); // A token pushed back is dropped, not read again
+            tokenizer.stop();
+        }
+        return false;
+    }
+
+    /**
+     * Tells whether an error has been recorded in the program being
+     * recognized, so that the methods still open are returning because
+     * of it.
+     * @return <code>true</code> if an error has been recorded.
+     */
+    boolean failed() {
+        return recording && failure != null;
+    }
+
+    /**
+     * Tries to recognize a &lt;program&gt;, returning the outcome rather
+     * than throwing a SyntaxException. Unless errors are being recovered
+     * from, nothing is thrown or even made for an error: its code and
+     * position are kept, and the message is only put together if the
+     * result is asked for it.
+     * @return Whether a program was found and, if not, where and why not.
+     * @see #isProgram()
+     */
+    public RecognitionResult recognizeProgram() {
+        try {
+            if (recognize()) return RecognitionResult.accepted();
+        } catch (SyntaxException e) { // Only thrown while recovering from errors
+            return RecognitionResult.rejected(e);
+        }
+        if (failure == null) return RecognitionResult.rejected(lineNumber, tokenizer.tokenOffset());
+        return RecognitionResult.rejected(failureLine, failure, failureValue, failureOffset);
+    }
+
+    /**
+     * Turns on recovery from syntax errors. When a statement, variable
+     * declaration, function definition or top level definition contains
+     * an error, the error is recorded, the rest of it is skipped, and
+     * recognition continues after it. Once <code>maxErrors</code> errors
+     * have been recorded, the next one is thrown as usual.
+     * @param maxErrors The most errors to record.
+     */
+    public void recoverFromErrors(int maxErrors) {
+        this.maxErrors = maxErrors;
+        errors = new ArrayList<SyntaxException>();
+    }
+
+    /**
+     * Starts this Recognizer again on new text, as if it had just been
+     * constructed for it: the line number, the limits, the errors
+     * recorded and any cancellation are all cleared, and the metrics go
+     * back to the default ones. The buffers of
+     * the tokenizer are reused, so a Recognizer can be kept and reset
+     * for each of many small pieces of text without allocating. A
+     * Recognizer made by <code>pretokenized</code> stays one: it
+     * tokenizes all of the new text at once.
+     * @param text The text to be recognized.
+     * @return This Recognizer.
+     */
+    public Recognizer reset(CharSequence text) {
+        lineNumber = 1;
+        errors = null;
+        maxErrors = 0;
+        depth = 0;
+        maxDepth = DEFAULT_MAX_DEPTH;
+        tokens = 0;
+        nextCheck = 0;
+        maxTokens = Long.MAX_VALUE;
+        hasDeadline = false;
+        cancelled = false;
+        metrics = RecognitionMetrics.getDefault();
+        failure = null;
+        tokenizer.reset(text);
+        return this;
+    }
+
+    /**
+     * Tells whether this Recognizer is worth keeping to be reset for
+     * another text: its buffers have not grown to hold a long text or a
+     * deeply nested expression.
+     * @return <code>true</code> if it may be kept.
+     * @see RecognizerPool
+     */
+    boolean isReusable() {
+        return tokenizer.buf.length <= MAX_REUSED_LENGTH && groups.length <= MAX_REUSED_GROUPS;
+    }
+
+    /**
+     * Sets the most blocks and switch statements that may be open at once.
+     * Each one that is open takes a few frames of the thread's stack, so a
+     * program nested more deeply than this is rejected with a
+     * <code>LimitExceededException</code> rather than a <code>StackOverflowError</code>.
+     * @param maxDepth The most that may be open, at least 1.
+     */
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("Maximum depth must be at least 1: " + maxDepth);
+        }
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Sets the most characters the program may have. A longer program is
+     * rejected with a <code>LimitExceededException</code>, after reading
+     * little more than the allowed number of characters.
+     * @param maxLength The most characters, at least 0.
+     */
+    public void setMaxLength(long maxLength) {
+        if (maxLength < 0) {
+            throw new IllegalArgumentException("Maximum length must be at least 0: " + maxLength);
+        }
+        tokenizer.setMaxLength(maxLength);
+    }
+
+    /**
+     * Sets the most tokens that may be read. Reading more is rejected with
+     * a <code>LimitExceededException</code>. A token that is pushed back
+     * and read again only counts once.
+     * @param maxTokens The most tokens, at least 1.
+     */
+    public void setMaxTokens(long maxTokens) {
+        if (maxTokens < 1) {
+            throw new IllegalArgumentException("Maximum tokens must be at least 1: " + maxTokens);
+        }
+        this.maxTokens = maxTokens;
+        nextCheck = tokens;
+    }
+
+    /**
+     * Sets how long, from now, recognition may take. Once the time is up
+     * recognition is stopped with a <code>LimitExceededException</code>.
+     * The time is checked every few tokens, and every few thousand
+     * characters within a token or comment, so it is overrun by no more
+     * than the time taken to read that much.
+     * @param timeout How long recognition may take.
+     * @param unit The unit of <code>timeout</code>.
+     */
+    public void setTimeLimit(long timeout, TimeUnit unit) {
+        deadline = System.nanoTime() + unit.toNanos(timeout);
+        hasDeadline = true;
+        nextCheck = tokens;
+    }
+
+    /**
+     * Stops recognition, which may be going on in another thread, with a
+     * <code>LimitExceededException</code>. Like the time limit, this is
+     * noticed within a few tokens or a few thousand characters.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Sets where <code>isProgram</code> and <code>recognizeProgram</code>
+     * record how long recognizing the program took and how it ended. A
+     * new Recognizer records in <code>RecognitionMetrics.getDefault()</code>.
+     * An exception other than a SyntaxException is not recorded.
+     * @param metrics Where to record, or <code>null</code> not to.
+     */
+    public void setMetrics(RecognitionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the FlightRecorder this Recognizer records its events in.
+     * @return The recorder, or <code>null</code> since an ordinary
+     *         Recognizer records nothing.
+     */
+    FlightRecorder getRecorder() {
+        return null;
     }
 
     /**
-     * Utility routine to throw a <code>SyntaxException</code> with the
-     * given message.
-     * @param message The text to put in the <code>SyntaxException</code>.
+     * Returns the errors recorded since recovery was turned on.
+     * @return The errors, in the order found.
+     * @see #recoverFromErrors(int)
      */
-    private void error(String message) {
-        throw new SyntaxException("Line " + lineNumber + ": " + message);
+    public List<SyntaxException> getErrors() {
+        if (errors == null) return Collections.emptyList();
+        return Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * Recognizes a &lt;program&gt;, recovering from errors rather than
+     * stopping at the first one.
+     * @param maxErrors The most errors to report, at least 1.
+     * @return The errors found, in order; none if the program is correct.
+     * @throws LimitExceededException If recognition goes past a limit,
+     *         which says nothing about whether the program is correct.
+     */
+    public List<SyntaxException> findProgramErrors(int maxErrors) {
+        if (maxErrors < 1) {
+            throw new IllegalArgumentException("Maximum errors must be at least 1: " + maxErrors);
+        }
+        recoverFromErrors(maxErrors);
+        try {
+            if (!isProgram()) error(ErrorCode.MISSING_BUG_DEFINITION);
+        } catch (LimitExceededException e) {
+            throw e;
+        } catch (SyntaxException e) {
+            if (errors.size() < maxErrors) errors.add(e);
+        }
+        return getErrors();
+    }
+
+    /**
+     * Records an error in a statement and skips the rest of the statement,
+     * up to and including the end of line, or up to a closing brace.
+     * @param e The error.
+     * @throws SyntaxException If errors are not being recovered from, or
+     *         enough have been recorded already.
+     */
+    private void recover(SyntaxException e) {
+        record(e);
+        while (true) {
+            int type = advance();
+            if (type == Lexer.TT_EOL) {
+                isEol();
+                return;
+            }
+            if (type == '}' || type == Lexer.TT_EOF) {
+                pushBack();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Records an error in a top level definition and skips to the next
+     * <code>Bug</code> definition.
+     * @param e The error.
+     * @throws SyntaxException If errors are not being recovered from, or
+     *         enough have been recorded already.
+     */
+    private void recoverDefinition(SyntaxException e) {
+        record(e);
+        while (true) {
+            int type = advance();
+            if (tokenizer.keywordId() == Token.BUG || type == Lexer.TT_EOF) {
+                pushBack();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Records an error, if errors are being recovered from.
+     * @param e The error.
+     * @throws SyntaxException If errors are not being recovered from, or
+     *         enough have been recorded already, or the error is a
+     *         <code>LimitExceededException</code>.
+     */
+    private void record(SyntaxException e) {
+        if (errors == null || errors.size() >= maxErrors) throw e;
+        if (e instanceof LimitExceededException) throw e;
+        errors.add(e);
     }
     
 //--- continuation of boolean methods
@@ -334,22 +1124,8 @@ public class Recognizer {
      * 
      */
     public boolean isAction(){
-    	if(isMoveAction()){
-    		return true;
-    	}
-    	if(isMoveToAction()){
-    		return true;
-    	}
-    	if(isTurnAction()){
-    		return true;
-    	}
-    	if(isTurnToAction()){
-    		return true;
-    	}
-    	if(isLineAction()){
-    		return true;
-    	}
-    	return false;
+    	int command = nextCommand();
+    	return command <= LINE_ACTION && command(command);
     }
     
     /**
@@ -359,25 +1135,38 @@ public class Recognizer {
      * @return <code>true</code> if an allbugs code is found.
      */
     public boolean isAllbugsCode(){
-    	if(keyword("Allbugs")){
-    		if(!symbol("{")){
-    			error("Missing '{'!");
-    		}
-    		if(!isEol()){
-    			error("Missing Eol!");
-    		}
-    		while(isVarDeclaration()){
-    			;
-    		}
-    		while(isFunctionDefinition()){
-    			;
-    		}
-    		if(!symbol("}")){
-    			error("Missing '}'!");
+    	if(!startsWith(FIRST_ALLBUGS_CODE)){
+    		return false;
+    	}
+    	if(keyword(Token.ALLBUGS)){
+    		DefinitionEvent event = startDefinition("Allbugs");
+    		try {
+    			if(!symbol("{")){
+    				return error(ErrorCode.MISSING_OPEN_BRACE);
+    			}
+    			if(!isEol()){
+    				return error(ErrorCode.MISSING_EOL);
+    			}
+    			while(isVarDeclaration()){
+    				;
+    			}
+    			if(failed()){
+    				return false;
+    			}
+    			while(isFunctionDefinition()){
+    				;
+    			}
+    			if(!symbol("}")){
+    				return error(ErrorCode.MISSING_CLOSE_BRACE);
+    			}
+    			if(!isEol()){
+    				return error(ErrorCode.MISSING_EOL);
+        		}
+    		} catch (SyntaxException e) {
+    			recoverDefinition(e);
+    		} finally {
+    			finish(event);
     		}
-    		if(!isEol()){
-    			error("Missing Eol!");
-        	}
     		return true;
     	}
     	return false;
@@ -389,15 +1178,18 @@ public class Recognizer {
      * @return <code>true</code> if an Assignment Statement is found.
      */
     public boolean isAssignmentStatement(){
+    	if(!startsWith(FIRST_ASSIGNMENT_STATEMENT)){
+    		return false;
+    	}
     	if(isVariable()){
     		if(!symbol("=")){
-    			error("Incorrect = sign!");
+    			return error(ErrorCode.NO_EQUALS_SIGN);
     		}
     		if(!isExpression()){
-    			error("No expression after equal sign!");
+    			return error(ErrorCode.NO_EXPRESSION_AFTER_EQUALS);
     		}
     		if(!isEol()){
-    			error("No EOL!");
+    			return error(ErrorCode.ASSIGNMENT_MISSING_EOL);
     		}
     		return true;
     	}
@@ -411,18 +1203,28 @@ public class Recognizer {
      */
     public boolean isBlock(){
     	//<block> ::= "{" <eol> { <command> }  "}" <eol>
+    	if(!startsWith(FIRST_BLOCK)){
+    		return false;
+    	}
     	if(symbol("{")){
-    		if(!isEol()){
-    			error("Error after '{'");
-    		}
-    		while(isCommand()){
-    			;
-    		}
-    		if(!symbol("}")){
-    			error("Missing '}'!");
-    		}
-    		if(!isEol()){
-    			error("MIssing EOL!");
+    		try {
+    			if(!nest()){
+    				return false;
+    			}
+    			if(!isEol()){
+    				return error(ErrorCode.NO_EOL_AFTER_OPEN_BRACE);
+    			}
+    			while(isCommand()){
+    				;
+    			}
+    			if(!symbol("}")){
+    				return error(ErrorCode.MISSING_CLOSE_BRACE);
+    			}
+    			if(!isEol()){
+    				return error(ErrorCode.BLOCK_MISSING_EOL);
+    			}
+    		} finally {
+    			depth--;
     		}
     		return true;
     	}
@@ -437,36 +1239,58 @@ public class Recognizer {
      * @return<code>true</code> if a bug definition is found.
      */
     public boolean isBugDefinition(){
-    	if(keyword("Bug")){
-    		if(!name()){
-    			error("Error after 'Bug'!");
-    		}
-    		if(!symbol("{")){
-    			error("Missing '{'!");
-    		}
-    		if(!isEol()){
-    			error("Missing Eol!");
-    		}
-    		while(isVarDeclaration()){
-    			;
-    		}
-    		if(isInitializationBlock()){
-    			;
-    		}
-    		if(!isCommand()){
-    			error("Missing command!");
-    		}
-    		while(isCommand()){
-    			;
-    		}
-    		while(isFunctionDefinition()){
-    			;
-    		}
-    		if(!symbol("}")){
-    			error("Missing '}'!");
-    		}
-    		if(!isEol()){
-    			error("Missing Eol!");
+    	if(!startsWith(FIRST_BUG_DEFINITION)){
+    		return false;
+    	}
+    	if(keyword(Token.BUG)){
+    		DefinitionEvent event = startDefinition("Bug");
+    		try {
+    			if(!name()){
+    				return error(ErrorCode.NO_NAME_AFTER_BUG);
+    			}
+    			if(event.isEnabled()){
+    				event.name = tokenizer.text();
+    			}
+    			if(!symbol("{")){
+    				return error(ErrorCode.MISSING_OPEN_BRACE);
+    			}
+    			if(!isEol()){
+    				return error(ErrorCode.MISSING_EOL);
+    			}
+    			while(isVarDeclaration()){
+    				;
+    			}
+    			if(failed()){
+    				return false;
+    			}
+    			if(isInitializationBlock()){
+    				;
+    			}
+    			if(failed()){
+    				return false;
+    			}
+    			if(!isCommand()){
+    				return error(ErrorCode.MISSING_COMMAND);
+    			}
+    			while(isCommand()){
+    				;
+    			}
+    			if(failed()){
+    				return false;
+    			}
+    			while(isFunctionDefinition()){
+    				;
+    			}
+    			if(!symbol("}")){
+    				return error(ErrorCode.MISSING_CLOSE_BRACE);
+    			}
+    			if(!isEol()){
+    				return error(ErrorCode.MISSING_EOL);
+    			}
+    		} catch (SyntaxException e) {
+    			recoverDefinition(e);
+    		} finally {
+    			finish(event);
     		}
     		return true;
     	}
@@ -479,12 +1303,15 @@ public class Recognizer {
      * @return<code>true</code> if a color statement is found.
      */
     public boolean isColorStatement(){
-    	if(keyword("color")){
+    	if(!startsWith(FIRST_COLOR_STATEMENT)){
+    		return false;
+    	}
+    	if(keyword(Token.COLOR)){
     		if(!nextTokenMatches(Token.Type.KEYWORD)){
-    			error("Error after 'color'!");
+    			return error(ErrorCode.NO_KEYWORD_AFTER_COLOR);
     		}
     		if(!isEol()){
-    			error("Error after 'color' and keyword!");
+    			return error(ErrorCode.COLOR_MISSING_EOL);
     		}
     		return true;
     	}
@@ -498,7 +1325,12 @@ public class Recognizer {
      * @return<code>true</code> if a commmand is found.
      */
     public boolean isCommand(){
-    	return isAction() || isStatement();
+    	try {
+    		return command(nextCommand());
+    	} catch (SyntaxException e) {
+    		recover(e);
+    		return true;
+    	}
     }
 
     /**
@@ -507,6 +1339,9 @@ public class Recognizer {
      * @return<code>true</code> if a comparator is found.
      */
     public boolean isComparator(){
+    	if(!startsWith(FIRST_COMPARATOR)){
+    		return false;
+    	}
     	if(symbol("<")){
     		if(symbol("=")){
     			return true;
@@ -537,15 +1372,18 @@ public class Recognizer {
      * @return<code>true</code> if a do statement is found.
      */
     public boolean isDoStatement(){
-    	if(keyword("do")){
+    	if(!startsWith(FIRST_DO_STATEMENT)){
+    		return false;
+    	}
+    	if(keyword(Token.DO)){
     		if(!isVariable()){
-    			error("Error after 'do'!");
+    			return error(ErrorCode.NO_VARIABLE_AFTER_DO);
     		}
-    		if(!isParameterList()){
-    			;
+    		if(!isParameterList() && failed()){
+    			return false;
     		}
     		if(!isEol()){
-    			error("Missing EOL!");
+    			return error(ErrorCode.DO_MISSING_EOL);
     		}
     		return true;
     	}
@@ -558,10 +1396,13 @@ public class Recognizer {
      * @return<code>true</code> if a Eol is found.
      */
     public boolean isEol(){
+    	if(!startsWith(FIRST_EOL)){
+    		return false;
+    	}
     	if(!nextTokenMatches(Token.Type.EOL)){
     		return false;
     	}
-    	while(isEol()){
+    	while(nextTokenMatches(Token.Type.EOL)){
     		;
     	}
     	return true;
@@ -573,15 +1414,18 @@ public class Recognizer {
      * @return<code>true</code> if an exit if statement is found.
      */
     public boolean isExitIfStatement(){
-    	if(keyword("exit")){
-    		if(!keyword("if")){
-    			error("Error after 'exit'!");
+    	if(!startsWith(FIRST_EXIT_IF_STATEMENT)){
+    		return false;
+    	}
+    	if(keyword(Token.EXIT)){
+    		if(!keyword(Token.IF)){
+    			return error(ErrorCode.NO_IF_AFTER_EXIT);
     		}
     		if(!isExpression()){
-    			error("Error after 'exit if'!");
+    			return error(ErrorCode.NO_EXPRESSION_AFTER_EXIT_IF);
     		}
     		if(!isEol()){
-    			error("Error after 'exit if' and expression!");
+    			return error(ErrorCode.EXIT_IF_MISSING_EOL);
     		}
     		return true;
     	}
@@ -595,11 +1439,14 @@ public class Recognizer {
      */
     public boolean isFunctionCall(){
     	//<function call> ::= <NAME> <parameter list>
+    	if(!startsWith(FIRST_FUNCTION_CALL)){
+    		return false;
+    	}
     	if (isVariable()){
     		if(isParameterList()){
     			return true;
     		}
-    		error("No parameter list after name!");
+    		return error(ErrorCode.NO_PARAMETER_LIST);
     	}
     	return false;
     }
@@ -611,22 +1458,35 @@ public class Recognizer {
      * @return<code>true</code> if a function definition is found.
      */
     public boolean isFunctionDefinition(){
-    	if(keyword("define")){
-    		if(!name()){
-    			error("Error after 'define'!");
-    		}
-    		if(keyword("using")){
-    			if(!isVariable()){
-    				error("Error after 'using'!");
+    	if(!startsWith(FIRST_FUNCTION_DEFINITION)){
+    		return false;
+    	}
+    	if(keyword(Token.DEFINE)){
+    		DefinitionEvent event = startDefinition("define");
+    		try {
+    			if(!name()){
+    				return error(ErrorCode.NO_NAME_AFTER_DEFINE);
+    			}
+    			if(event.isEnabled()){
+    				event.name = tokenizer.text();
     			}
-    			while(symbol(",")){
+    			if(keyword(Token.USING)){
     				if(!isVariable()){
-        				error("Error after ','!");
-        			}	
+    					return error(ErrorCode.NO_VARIABLE_AFTER_USING);
+    				}
+    				while(symbol(",")){
+    					if(!isVariable()){
+        					return error(ErrorCode.NO_VARIABLE_AFTER_COMMA);
+        				}	
+    				}
     			}
-    		}
-    		if(!isBlock()){
-    			error("Error with block!");
+    			if(!isBlock()){
+    				return error(ErrorCode.MISSING_FUNCTION_BLOCK);
+    			}
+    		} catch (SyntaxException e) {
+    			recover(e);
+    		} finally {
+    			finish(event);
     		}
     		return true;
     	}
@@ -639,7 +1499,10 @@ public class Recognizer {
      * @return<code>true</code> when an initialization block is found.
      */
     public boolean isInitializationBlock(){
-    	if(keyword("initially")){
+    	if(!startsWith(FIRST_INITIALIZATION_BLOCK)){
+    		return false;
+    	}
+    	if(keyword(Token.INITIALLY)){
     		return isBlock();
     	}
     	return false;
@@ -652,20 +1515,23 @@ public class Recognizer {
      * @return<code>true</code> when a line action is found
      */
     public boolean isLineAction(){
-    	if(keyword("line")){
+    	if(!startsWith(FIRST_LINE_ACTION)){
+    		return false;
+    	}
+    	if(keyword(Token.LINE)){
     		if(!isExpression()){
-    			error("Error after 'line'!");
+    			return error(ErrorCode.NO_EXPRESSION_AFTER_LINE);
     		}
     		for(int i= 0; i < 3; i++){
     			if(!symbol(",")){
-    				error("Error after 'line' and expression!");
+    				return error(ErrorCode.NO_COMMA_AFTER_LINE);
     			}
     			if(!isExpression()){
-    				error("Error after 'line' and expresion and ','");
+    				return error(ErrorCode.NO_EXPRESSION_AFTER_LINE_COMMA);
     			}
     		}
     		if(!isEol()){
-    			error("Error with eol!");
+    			return error(ErrorCode.ACTION_MISSING_EOL);
     		}
     		return true;
     	}
@@ -678,9 +1544,12 @@ public class Recognizer {
      * @return<code>true</code> if a loop statement is found.
      */
     public boolean isLoopStatement(){
-    	if(keyword("loop")){
+    	if(!startsWith(FIRST_LOOP_STATEMENT)){
+    		return false;
+    	}
+    	if(keyword(Token.LOOP)){
     		if(!isBlock()){
-    			error("Error after loop!");
+    			return error(ErrorCode.NO_BLOCK_AFTER_LOOP);
     		}
     		return true;
     	}
@@ -694,12 +1563,15 @@ public class Recognizer {
      */
     public boolean isMoveAction(){
     	//<move action> ::= "move" <expression> <eol>
-    	if(keyword("move")){
+    	if(!startsWith(FIRST_MOVE_ACTION)){
+    		return false;
+    	}
+    	if(keyword(Token.MOVE)){
     		if(!isExpression()){
-    			error("Error after 'move'!");
+    			return error(ErrorCode.NO_EXPRESSION_AFTER_MOVE);
     		}
     		if(!isEol()){
-    			error("Error after 'move' and expression!");
+    			return error(ErrorCode.MOVE_MISSING_EOL);
     		}
     		return true;
     	}
@@ -712,18 +1584,21 @@ public class Recognizer {
      * @return<code>true</code>if a moveto action is found.
      */
     public boolean isMoveToAction(){
-    	if(keyword("moveto")){
+    	if(!startsWith(FIRST_MOVE_TO_ACTION)){
+    		return false;
+    	}
+    	if(keyword(Token.MOVETO)){
     		if(!isExpression()){
-    			error("Error after 'moveto'!");
+    			return error(ErrorCode.NO_EXPRESSION_AFTER_MOVETO);
     		}
     		if(!symbol(",")){
-    			error("Error after 'moveto' and expression!");
+    			return error(ErrorCode.NO_COMMA_AFTER_MOVETO);
     		}
     		if(!isExpression()){
-    			error("Error after 'moveto' and expresion and ','");
+    			return error(ErrorCode.NO_EXPRESSION_AFTER_MOVETO_COMMA);
     		}
     		if(!isEol()){
-    			error("Error with eol!");
+    			return error(ErrorCode.ACTION_MISSING_EOL);
     		}
     		return true;
     	}
@@ -736,9 +1611,65 @@ public class Recognizer {
      * @return<code>true</code>if a program is found.
      */
     public boolean isProgram(){
+    	if(recognize()){
+    		return true;
+    	}
+    	if(failure != null){
+    		throw failure.toException(failureLine, failureValue, failureOffset);
+    	}
+    	return false;
+    }
+
+    /**
+     * Recognizes a &lt;program&gt; for <code>isProgram</code> and
+     * <code>recognizeProgram</code>, recording it for Flight Recorder and
+     * in the metrics. Unless errors are being recovered from, an error is
+     * recorded in <code>failure</code> rather than thrown.
+     * @return<code>true</code>if a program is found without an error.
+     */
+    private boolean recognize(){
+    	ProgramEvent event = ProgramEvent.start(tokenizer.tokenOffset(), position());
+    	long start = metrics != null ? System.nanoTime() : 0;
+    	RecognitionMetrics.Outcome outcome = null;
+    	boolean recognized = false;
+    	recording = errors == null;
+    	failure = null;
+    	try {
+    		recognized = program() && failure == null;
+    		if(failure != null){
+    			outcome = RecognitionMetrics.outcome(failure);
+    		} else {
+    			outcome = recognized ? RecognitionMetrics.Outcome.ACCEPTED
+    			                     : RecognitionMetrics.Outcome.SYNTAX_ERROR;
+    		}
+    		return recognized;
+    	} catch (SyntaxException e) {
+    		outcome = RecognitionMetrics.outcome(e);
+    		throw e;
+    	} finally {
+    		recording = false;
+    		event.finish(recognized, tokenizer.tokenOffset(), position());
+    		if (metrics != null && outcome != null) {
+    			metrics.record(tokenizer.length(), outcome, System.nanoTime() - start);
+    		}
+    	}
+    }
+
+    /**
+     * Recognizes a &lt;program&gt; for <code>recognize</code>. A
+     * ListeningRecognizer overrides this to report it.
+     * @return<code>true</code>if a program is found.
+     */
+    boolean program(){
+    	if(!startsWith(FIRST_PROGRAM)){
+    		return false;
+    	}
     	if(isAllbugsCode()){
     		;
     	}
+    	if(failed()){
+    		return false;
+    	}
     	if(isBugDefinition()){
     		while(isBugDefinition()){
     			;
@@ -754,12 +1685,15 @@ public class Recognizer {
      * @return<code>true</code>if a return statement is found.
      */
     public boolean isReturnStatement(){
-    	if(keyword("return")){
+    	if(!startsWith(FIRST_RETURN_STATEMENT)){
+    		return false;
+    	}
+    	if(keyword(Token.RETURN)){
     		if(!isExpression()){
-    			error("Error after 'return'!");
+    			return error(ErrorCode.NO_EXPRESSION_AFTER_RETURN);
     		}
     		if(!isEol()){
-    			error("Error after 'return' and expression!");
+    			return error(ErrorCode.RETURN_MISSING_EOL);
     		}
     		return true;
     	}
@@ -773,28 +1707,8 @@ public class Recognizer {
      * @return<code>true</code>if a statement is found.
      */
     public boolean isStatement(){
-    	if(isAssignmentStatement()){
-    		return true;
-    	}
-    	if(isLoopStatement()){
-    		return true;
-    	}
-    	if(isExitIfStatement()){
-    		return true;
-    	}
-    	if(isSwitchStatement()){
-    		return true;
-    	}
-    	if(isReturnStatement()){
-    		return true;
-    	}
-    	if(isDoStatement()){
-    		return true;
-    	}
-    	if(isColorStatement()){
-    		return true;
-    	}
-    	return false;	
+    	int command = nextCommand();
+    	return command >= ASSIGNMENT_STATEMENT && command(command);
     }
 
     /**
@@ -804,29 +1718,39 @@ public class Recognizer {
      * @return<code>true</code>if a switch statement is found.
      */
     public boolean isSwitchStatement(){
-    	if(keyword("switch")){
-    		if(!symbol("{")){
-    			error("Missing '{'");
-    		}
-    		if(!isEol()){
-    			error("Missing Eol!");    			
-    		}
-    		while(keyword("case")){
-    			if(!isExpression()){
-    				error("Error after 'case'!");
+    	if(!startsWith(FIRST_SWITCH_STATEMENT)){
+    		return false;
+    	}
+    	if(keyword(Token.SWITCH)){
+    		try {
+    			if(!nest()){
+    				return false;
+    			}
+    			if(!symbol("{")){
+    				return error(ErrorCode.SWITCH_MISSING_OPEN_BRACE);
     			}
     			if(!isEol()){
-    				error("Missing Eol after 'case' and expression!");
+    				return error(ErrorCode.MISSING_EOL);    			
     			}
-    			while(isCommand()){
-    				;
+    			while(keyword(Token.CASE)){
+    				if(!isExpression()){
+    					return error(ErrorCode.NO_EXPRESSION_AFTER_CASE);
+    				}
+    				if(!isEol()){
+    					return error(ErrorCode.CASE_MISSING_EOL);
+    				}
+    				while(isCommand()){
+    					;
+    				}
     			}
-    		}
-    		if(!symbol("}")){
-    			error("Missing '}'");
-    		}
-    		if(!isEol()){
-    			error("Missing Eol!");
+    			if(!symbol("}")){
+    				return error(ErrorCode.SWITCH_MISSING_CLOSE_BRACE);
+    			}
+    			if(!isEol()){
+    				return error(ErrorCode.MISSING_EOL);
+    			}
+    		} finally {
+    			depth--;
     		}
     		return true;
     	}
@@ -838,12 +1762,15 @@ public class Recognizer {
      * @return<code>true</code>if a turn action is found.
      */
     public boolean isTurnAction(){
-    	if(keyword("turn")){
+    	if(!startsWith(FIRST_TURN_ACTION)){
+    		return false;
+    	}
+    	if(keyword(Token.TURN)){
     		if(!isExpression()){
-    			error("Error after 'turn'!");
+    			return error(ErrorCode.NO_EXPRESSION_AFTER_TURN);
     		}
     		if(!isEol()){
-    			error("Error after 'turn' and expression!");
+    			return error(ErrorCode.TURN_MISSING_EOL);
     		}
     		return true;
     	}
@@ -856,12 +1783,15 @@ public class Recognizer {
      * @return<code>true</code>if a turnto action is found.
      */
     public boolean isTurnToAction(){
-    	if(keyword("turnto")){
+    	if(!startsWith(FIRST_TURN_TO_ACTION)){
+    		return false;
+    	}
+    	if(keyword(Token.TURNTO)){
     		if(!isExpression()){
-    			error("Error after 'turnto'!");
+    			return error(ErrorCode.NO_EXPRESSION_AFTER_TURNTO);
     		}
     		if(!isEol()){
-    			error("Error after 'turnto' and expression!");
+    			return error(ErrorCode.TURNTO_MISSING_EOL);
     		}
     		return true;
     	}
@@ -874,15 +1804,22 @@ public class Recognizer {
      * @return<code>true</code>if a var declaration is found.
      */
     public boolean isVarDeclaration(){
-    	if(keyword("var")){
-    		if(!name()){
-    			error("Error after 'var'!");
-    		}
-    		while (symbol(",")) {
-                if (!name()) error("No name after ','");
-            }
-    		if(!isEol()){
-    			error("Error with EOL");
+    	if(!startsWith(FIRST_VAR_DECLARATION)){
+    		return false;
+    	}
+    	if(keyword(Token.VAR)){
+    		try {
+    			if(!name()){
+    				return error(ErrorCode.NO_NAME_AFTER_VAR);
+    			}
+    			while (symbol(",")) {
+                	if (!name()) return error(ErrorCode.NO_NAME_AFTER_COMMA);
+            	}
+    			if(!isEol()){
+    				return error(ErrorCode.VAR_DECLARATION_MISSING_EOL);
+    			}
+    		} catch (SyntaxException e) {
+    			recover(e);
     		}
     		return true;
     	}
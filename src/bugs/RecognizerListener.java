@@ -0,0 +1,78 @@
+package bugs;
+
+/**
+ * Is told about each nonterminal a Recognizer tries to recognize. A
+ * listener is attached with <code>Grammar.withListener</code>; a
+ * Recognizer without one is not instrumented at all, so listening costs
+ * nothing unless it is asked for.
+ * <p>Each nonterminal is identified by an ID, from 0 up to but not
+ * including <code>nonterminals()</code>, in the order of the grammar
+ * in <code>FirstSets</code>; <code>name</code> gives the name of the
+ * <code>isX</code> method without the <code>is</code>. The methods are
+ * called on the thread doing the recognizing, so a listener that is
+ * shared by several Recognizers must be thread safe.
+ *
+ * @author James Park
+ */
+public interface RecognizerListener {
+    /** The outcome of a method that returned <code>true</code>. */
+    int RECOGNIZED = 0;
+    /** The outcome of a method that returned <code>false</code>. */
+    int NOT_RECOGNIZED = 1;
+    /**
+     * The outcome of a method that threw an exception, or that stopped
+     * at a syntax error which <code>recognizeProgram</code> returns
+     * rather than throws.
+     */
+    int THREW = 2;
+
+    /**
+     * Called when an <code>isX</code> method is entered.
+     * @param nonterminal The ID of the nonterminal.
+     * @param offset The position in the source of the current token.
+     */
+    void enter(int nonterminal, long offset);
+
+    /**
+     * Called when an <code>isX</code> method returns or throws.
+     * @param nonterminal The ID of the nonterminal.
+     * @param outcome <code>RECOGNIZED</code>, <code>NOT_RECOGNIZED</code>
+     *        or <code>THREW</code>.
+     * @param tokens The number of tokens the method consumed.
+     * @param nanos The time the method took, including the methods it
+     *        called, or 0 if this listener is not timed.
+     */
+    void exit(int nonterminal, int outcome, long tokens, long nanos);
+
+    /**
+     * Tells whether this listener wants to know how long each nonterminal
+     * took. The clock is only read for a listener that does.
+     * @return <code>true</code> if <code>exit</code> should be given times.
+     */
+    default boolean isTimed() {
+        return false;
+    }
+
+    /**
+     * Called when a token is pushed back, to be read again.
+     * @param offset The position in the source of the token.
+     */
+    default void pushBack(long offset) {}
+
+    /**
+     * Returns the number of nonterminals.
+     * @return One more than the largest ID.
+     */
+    static int nonterminals() {
+        return FirstSets.count();
+    }
+
+    /**
+     * Returns the name of a nonterminal.
+     * @param nonterminal The ID of the nonterminal.
+     * @return The name, such as <code>moveAction</code>.
+     */
+    static String name(int nonterminal) {
+        return FirstSets.name(nonterminal);
+    }
+}
@@ -0,0 +1,68 @@
+package bugs;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A small, bounded set of idle Recognizers, so that their buffers can be
+ * reused from one text to the next without each thread keeping its own.
+ * A Recognizer is borrowed for one recognition and given back when it is
+ * over. While it is borrowed it is not in the pool, so a recognition
+ * started from within another one, even on the same thread, is given a
+ * different Recognizer rather than having the outer one reset under it.
+ * <p>The pool holds no more Recognizers than it has slots, and a
+ * Recognizer whose buffers have grown for a long text is dropped rather
+ * than kept, so the pool never holds on to much memory however many
+ * threads use it. Borrowing and giving back never block.
+ *
+ * @author James Park
+ */
+final class RecognizerPool {
+    /** The idle Recognizers; an empty slot is <code>null</code>. */
+    private final AtomicReferenceArray<Recognizer> idle;
+
+    /**
+     * Constructs a RecognizerPool with a slot for each processor.
+     */
+    RecognizerPool() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a RecognizerPool.
+     * @param slots The most Recognizers to keep, at least 1.
+     */
+    RecognizerPool(int slots) {
+        if (slots < 1) {
+            throw new IllegalArgumentException("A pool needs at least 1 slot: " + slots);
+        }
+        idle = new AtomicReferenceArray<Recognizer>(slots);
+    }
+
+    /**
+     * Takes an idle Recognizer out of the pool. It belongs to the caller
+     * until it is given back, and must be reset before it is used.
+     * @return The Recognizer, or <code>null</code> if none is idle.
+     */
+    Recognizer borrow() {
+        for (int i = 0; i < idle.length(); i++) {
+            if (idle.get(i) != null) {
+                Recognizer recognizer = idle.getAndSet(i, null);
+                if (recognizer != null) return recognizer;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Puts a Recognizer whose recognition is over into the pool, unless
+     * the pool is full or the Recognizer has grown too big to keep. The
+     * caller must not use it again.
+     * @param recognizer The Recognizer, borrowed or newly made.
+     */
+    void giveBack(Recognizer recognizer) {
+        if (!recognizer.isReusable()) return;
+        for (int i = 0; i < idle.length(); i++) {
+            if (idle.get(i) == null && idle.compareAndSet(i, null, recognizer)) return;
+        }
+    }
+}
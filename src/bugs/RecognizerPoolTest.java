@@ -0,0 +1,41 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Test class for RecognizerPool.
+ *
+ * @author James Park
+ */
+public class RecognizerPoolTest {
+
+    @Test
+    public final void testBorrow() {
+        RecognizerPool pool = new RecognizerPool(2);
+        assertNull(pool.borrow());
+        Recognizer first = new Recognizer("move 1\n");
+        Recognizer second = new Recognizer("turn 1\n");
+        pool.giveBack(first);
+        pool.giveBack(second);
+        pool.giveBack(new Recognizer("move 2\n")); // No slot left
+        Recognizer borrowed = pool.borrow();
+        assertNotNull(borrowed);
+        Recognizer nested = pool.borrow(); // As for a recognition within another
+        assertNotNull(nested);
+        assertNotSame(borrowed, nested);
+        assertNull(pool.borrow());
+        pool.giveBack(nested);
+        assertSame(nested, pool.borrow());
+
+        StringBuilder big = new StringBuilder();
+        while (big.length() <= Recognizer.MAX_REUSED_LENGTH) {
+            big.append("move 1\n");
+        }
+        pool.giveBack(new Recognizer(big.toString()));
+        assertNull(pool.borrow());
+        pool.giveBack(borrowed.reset(big));
+        assertNull(pool.borrow());
+    }
+}
@@ -0,0 +1,230 @@
+package bugs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A RecognizerListener that counts, for each nonterminal, how often it
+ * was tried, how often it was recognized, not recognized or threw, how
+ * many tokens it consumed and how long it took. Times include the time
+ * of the nonterminals called, so the time of &lt;program&gt; is the
+ * time of the whole recognition.
+ * <p>One profile can be shared by any number of Recognizers on any
+ * number of threads. The counts are kept in several stripes, and each
+ * thread adds to the stripe chosen by its ID, so threads seldom touch
+ * the same memory; the stripes are only added together when a
+ * <code>snapshot</code> is taken. A profile takes a fixed amount of
+ * memory however many threads use it.
+ *
+ * @author James Park
+ */
+public final class RecognizerProfile implements RecognizerListener {
+    /** The counts kept for each nonterminal; the outcomes come first. */
+    private static final int TOKENS = 3, NANOS = 4, FIELDS = 5;
+    /** Unused counts after each stripe, so that stripes do not share cache lines. */
+    private static final int PADDING = 16;
+
+    /** The counts, in stripes. */
+    private final AtomicLongArray[] stripes;
+    /** One less than the number of stripes, which is a power of two. */
+    private final int mask;
+
+    /**
+     * Constructs an empty profile, with about two stripes per processor.
+     */
+    public RecognizerProfile() {
+        int n = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) * 2;
+        stripes = new AtomicLongArray[n];
+        for (int i = 0; i < n; i++) {
+            stripes[i] = new AtomicLongArray(RecognizerListener.nonterminals() * FIELDS + PADDING);
+        }
+        mask = n - 1;
+    }
+
+    /**
+     * Does nothing; everything is counted on exit.
+     * @see bugs.RecognizerListener#enter(int, long)
+     */
+    @Override
+    public void enter(int nonterminal, long offset) {
+    }
+
+    /**
+     * Returns <code>true</code>, since a profile counts the time taken.
+     * @see bugs.RecognizerListener#isTimed()
+     */
+    @Override
+    public boolean isTimed() {
+        return true;
+    }
+
+    /**
+     * @see bugs.RecognizerListener#exit(int, int, long, long)
+     */
+    @Override
+    public void exit(int nonterminal, int outcome, long tokens, long nanos) {
+        AtomicLongArray stripe = stripes[(int) Thread.currentThread().getId() & mask];
+        int base = nonterminal * FIELDS;
+        stripe.getAndIncrement(base + outcome);
+        stripe.getAndAdd(base + TOKENS, tokens);
+        stripe.getAndAdd(base + NANOS, nanos);
+    }
+
+    /**
+     * Adds up the counts of all the stripes. Recognition going on at the
+     * same time may be partly counted.
+     * @return The counts of each nonterminal, in the order of the grammar.
+     */
+    public List<Entry> snapshot() {
+        long[] sums = new long[RecognizerListener.nonterminals() * FIELDS];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < sums.length; i++) {
+                sums[i] += stripe.get(i);
+            }
+        }
+        List<Entry> entries = new ArrayList<Entry>(RecognizerListener.nonterminals());
+        for (int id = 0; id < RecognizerListener.nonterminals(); id++) {
+            entries.add(new Entry(id, sums, id * FIELDS));
+        }
+        return entries;
+    }
+
+    /**
+     * Sets all the counts back to zero. Recognition going on at the
+     * same time may be partly counted.
+     */
+    public void reset() {
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < stripe.length(); i++) {
+                stripe.set(i, 0);
+            }
+        }
+    }
+
+    /**
+     * Returns a table of the nonterminals that have been tried, the
+     * slowest first.
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        List<Entry> entries = snapshot();
+        Collections.sort(entries, new Comparator<Entry>() {
+            public int compare(Entry a, Entry b) {
+                return Long.compare(b.getNanos(), a.getNanos());
+            }
+        });
+        StringBuilder table = new StringBuilder(String.format("%-22s %10s %10s %10s %8s %12s %12s%n",
+            "nonterminal", "calls", "recognized", "failed", "threw", "tokens", "ms"));
+        for (Entry entry : entries) {
+            if (entry.getCalls() == 0) continue;
+            table.append(String.format("%-22s %10d %10d %10d %8d %12d %12.3f%n",
+                entry.getNonterminal(), entry.getCalls(), entry.getRecognized(),
+                entry.getNotRecognized(), entry.getThrew(), entry.getTokens(),
+                entry.getNanos() / 1e6));
+        }
+        return table.toString();
+    }
+
+    /**
+     * The counts of one nonterminal at the time of a snapshot.
+     */
+    public static final class Entry {
+        /** The ID of the nonterminal. */
+        private final int id;
+        /** The number of times it was recognized. */
+        private final long recognized;
+        /** The number of times it was not recognized. */
+        private final long notRecognized;
+        /** The number of times trying it threw an exception. */
+        private final long threw;
+        /** The tokens consumed trying it. */
+        private final long tokens;
+        /** The nanoseconds spent trying it. */
+        private final long nanos;
+
+        /**
+         * Constructor for Entries.
+         * @param id The ID of the nonterminal.
+         * @param sums The counts of all the nonterminals.
+         * @param base The index in <code>sums</code> of the counts of this one.
+         */
+        private Entry(int id, long[] sums, int base) {
+            this.id = id;
+            recognized = sums[base + RECOGNIZED];
+            notRecognized = sums[base + NOT_RECOGNIZED];
+            threw = sums[base + THREW];
+            tokens = sums[base + TOKENS];
+            nanos = sums[base + NANOS];
+        }
+
+        /**
+         * Returns the name of the nonterminal.
+         * @return The name, such as <code>moveAction</code>.
+         */
+        public String getNonterminal() {
+            return RecognizerListener.name(id);
+        }
+
+        /**
+         * Returns the number of times the nonterminal was tried.
+         * @return The number of calls of its <code>isX</code> method.
+         */
+        public long getCalls() {
+            return recognized + notRecognized + threw;
+        }
+
+        /**
+         * Returns the number of times the nonterminal was recognized.
+         * @return The number of calls that returned <code>true</code>.
+         */
+        public long getRecognized() {
+            return recognized;
+        }
+
+        /**
+         * Returns the number of failed attempts at the nonterminal.
+         * @return The number of calls that returned <code>false</code>.
+         */
+        public long getNotRecognized() {
+            return notRecognized;
+        }
+
+        /**
+         * Returns the number of times trying the nonterminal threw.
+         * @return The number of calls that threw an exception.
+         */
+        public long getThrew() {
+            return threw;
+        }
+
+        /**
+         * Returns the number of tokens consumed trying the nonterminal.
+         * @return The number of tokens, counting those of nested nonterminals.
+         */
+        public long getTokens() {
+            return tokens;
+        }
+
+        /**
+         * Returns the time spent trying the nonterminal.
+         * @return The time in nanoseconds, including nested nonterminals.
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return getNonterminal() + "[calls=" + getCalls() + ", recognized=" + recognized
+                + ", failed=" + notRecognized + ", threw=" + threw + ", tokens=" + tokens
+                + ", nanos=" + nanos + "]";
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package bugs;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Test class for RecognizerProfile.
+ *
+ * @author James Park
+ */
+public class RecognizerProfileTest {
+
+    private static final String GOOD = "Bug b {\n loop {\n  move 1\n  turn 2 + 3\n }\n}\n";
+    private static final String BAD = "Bug b {\n move 1\n turn (\n}\n";
+
+    @Test
+    public final void testCounts() {
+        RecognizerProfile profile = new RecognizerProfile();
+        Grammar grammar = Grammar.DEFAULT.withListener(profile);
+        assertTrue(grammar.isProgram(GOOD));
+
+        RecognizerProfile.Entry program = entry(profile, "program");
+        assertEquals(1, program.getCalls());
+        assertEquals(1, program.getRecognized());
+        assertTrue(program.getNanos() > 0);
+        assertEquals(1, entry(profile, "moveAction").getRecognized());
+        assertEquals(3, entry(profile, "moveAction").getTokens());
+        assertEquals(1, entry(profile, "turnAction").getRecognized());
+        assertEquals(1, entry(profile, "loopStatement").getRecognized());
+        assertTrue(entry(profile, "loopStatement").getTokens() < program.getTokens());
+        assertTrue(entry(profile, "addOperator").getNotRecognized() > 0);
+        assertEquals(0, entry(profile, "functionDefinition").getRecognized());
+        assertTrue(profile.toString().contains("moveAction"));
+        assertFalse(profile.toString().contains("functionCall "));
+
+        assertEquals(RecognitionResult.of(BAD).toString(), grammar.recognize(BAD).toString());
+        program = entry(profile, "program");
+        assertEquals(2, program.getCalls());
+        assertEquals(1, program.getThrew());
+        assertEquals(1, entry(profile, "turnAction").getThrew());
+
+        profile.reset();
+        assertEquals(0, entry(profile, "program").getCalls());
+        assertEquals(RecognizerListener.nonterminals(), profile.snapshot().size());
+    }
+
+    @Test
+    public final void testExpressionRules() {
+        RecognizerProfile profile = new RecognizerProfile();
+        Nesting nesting = new Nesting(profile);
+        Recognizer recognizer = new ListeningRecognizer(new Lexer("(1 + f(2, 3)) * 4 > x"), nesting, null);
+        assertTrue(recognizer.isExpression());
+        assertEquals(0, nesting.open);
+        assertEquals(4, entry(profile, "expression").getRecognized());
+        assertEquals(5, entry(profile, "arithmeticExpression").getRecognized());
+        assertEquals(6, entry(profile, "term").getRecognized());
+        assertEquals(7, entry(profile, "factor").getRecognized());
+        assertEquals(7, entry(profile, "unsignedFactor").getRecognized());
+        assertEquals(1, entry(profile, "functionCall").getRecognized());
+        assertEquals(1, entry(profile, "parameterList").getRecognized());
+        assertEquals(4, entry(profile, "parameterList").getTokens());
+
+        profile.reset();
+        assertTrue(new ListeningRecognizer(new Lexer("g()"), nesting, null).isExpression());
+        assertEquals(0, nesting.open);
+        assertEquals(1, entry(profile, "expression").getNotRecognized());
+        assertEquals(1, entry(profile, "parameterList").getRecognized());
+        assertFalse(new ListeningRecognizer(new Lexer(")"), nesting, null).isExpression());
+        assertEquals(0, nesting.open);
+
+        profile.reset();
+        try {
+            new ListeningRecognizer(new Lexer("(1 + f(2, * 3"), nesting, null).isExpression();
+            fail();
+        } catch (SyntaxException e) {
+            assertEquals(0, nesting.open);
+        }
+        assertEquals(1, entry(profile, "functionCall").getThrew());
+        assertEquals(3, entry(profile, "expression").getThrew());
+        assertEquals(1, entry(profile, "expression").getRecognized());
+    }
+
+    @Test
+    public final void testNestingLimitUnchanged() throws Exception {
+        final Grammar grammar = Grammar.DEFAULT.withListener(new RecognizerProfile());
+        final Object[] outcome = new Object[2];
+        Thread thread = new Thread(() -> { // A new thread, so its stack is the default size
+            try {
+                outcome[0] = grammar.isProgram(nestedLoops(Recognizer.DEFAULT_MAX_DEPTH));
+                outcome[1] = grammar.recognize(nestedLoops(Recognizer.DEFAULT_MAX_DEPTH + 1)).getLimit();
+            } catch (Throwable t) {
+                outcome[0] = t;
+            }
+        });
+        thread.start();
+        thread.join();
+        assertEquals(Boolean.TRUE, outcome[0]);
+        assertEquals(LimitExceededException.Limit.DEPTH, outcome[1]);
+    }
+
+    @Test
+    public final void testUntimed() {
+        final long[] calls = new long[2];
+        RecognizerListener listener = new RecognizerListener() {
+            @Override
+            public void enter(int nonterminal, long offset) {
+            }
+
+            @Override
+            public void exit(int nonterminal, int outcome, long tokens, long nanos) {
+                calls[0]++;
+                calls[1] += nanos;
+            }
+        };
+        assertTrue(Grammar.DEFAULT.withListener(listener).isProgram(GOOD));
+        assertTrue(calls[0] > 0);
+        assertEquals(0, calls[1]);
+    }
+
+    @Test
+    public final void testSharedBetweenThreads() throws Exception {
+        final RecognizerProfile profile = new RecognizerProfile();
+        final Grammar grammar = Grammar.DEFAULT.withListener(profile);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 32; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 100; j++) {
+                        if (!grammar.isProgram(GOOD)) return false;
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(3200, entry(profile, "program").getRecognized());
+        assertEquals(3200, entry(profile, "moveAction").getRecognized());
+        assertEquals(3200 * 3, entry(profile, "moveAction").getTokens());
+    }
+
+    /**
+     * Makes a Bug whose block holds loops nested inside each other, with
+     * an expression in the innermost.
+     * @param depth The number of loops.
+     * @return The program.
+     */
+    private static String nestedLoops(int depth) {
+        StringBuilder text = new StringBuilder("Bug b {\n");
+        for (int i = 0; i < depth; i++) {
+            text.append("loop {\n");
+        }
+        text.append("move (1 + f(2, 3)) * 4\n");
+        for (int i = 0; i < depth; i++) {
+            text.append("}\n");
+        }
+        return text.append("}\n").toString();
+    }
+
+    /**
+     * A listener that checks that every nonterminal entered is left, and
+     * passes the events on to another.
+     */
+    private static final class Nesting implements RecognizerListener {
+        private final RecognizerListener next;
+        private final int[] stack = new int[64];
+        int open;
+
+        Nesting(RecognizerListener next) {
+            this.next = next;
+        }
+
+        @Override
+        public boolean isTimed() {
+            return next.isTimed();
+        }
+
+        @Override
+        public void enter(int nonterminal, long offset) {
+            stack[open++] = nonterminal;
+            next.enter(nonterminal, offset);
+        }
+
+        @Override
+        public void exit(int nonterminal, int outcome, long tokens, long nanos) {
+            assertEquals(RecognizerListener.name(stack[open - 1]), RecognizerListener.name(nonterminal));
+            open--;
+            next.exit(nonterminal, outcome, tokens, nanos);
+        }
+    }
+
+    /**
+     * Finds the counts of a nonterminal in a snapshot of a profile.
+     */
+    private RecognizerProfile.Entry entry(RecognizerProfile profile, String nonterminal) {
+        for (RecognizerProfile.Entry entry : profile.snapshot()) {
+            if (entry.getNonterminal().equals(nonterminal)) return entry;
+        }
+        throw new AssertionError(nonterminal);
+    }
+}
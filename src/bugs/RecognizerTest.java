@@ -2,9 +2,16 @@ package bugs;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.Reader;
 import java.io.StreamTokenizer;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -229,8 +236,356 @@ public class RecognizerTest {
 		assertEquals(new Token(Token.Type.NUMBER, "25.0"), r.nextToken());
 	}
 
+	@Test
+	public void testSharedTokens() {
+		Recognizer r = new Recognizer("{ move foo {\n move\n");
+		Token brace = r.nextToken();
+		Token move = r.nextToken();
+		Token foo = r.nextToken();
+		r.pushBack();
+		assertSame(foo, r.nextToken());
+		assertSame(brace, r.nextToken());
+		assertSame(Token.EOL, r.nextToken());
+		assertSame(move, r.nextToken());
+		assertSame(Token.EOL, r.nextToken());
+		assertSame(Token.EOF, r.nextToken());
+		assertEquals(3, r.lineNumber);
+	}
+
+	@Test
+	public void testPretokenized() {
+		Recognizer r = Recognizer.pretokenized("foo = 3\n bar(\n");
+		int mark = r.mark();
+		assertTrue(r.isAssignmentStatement());
+		assertEquals(2, r.lineNumber);
+		r.reset(mark);
+		assertEquals(1, r.lineNumber);
+		assertTrue(r.isStatement());
+		try {
+			r.isStatement();
+			fail();
+		} catch (SyntaxException e) {
+			assertTrue(e.getMessage().startsWith("Line 2:"));
+		}
+		r = Recognizer.pretokenized("Bug b {\n move 1\n }\n");
+		assertTrue(r.isProgram());
+		try {
+			new Recognizer("move 1").mark();
+			fail();
+		} catch (UnsupportedOperationException e) {
+		}
+	}
+
+	@Test
+	public void testStreamingConstructors() throws IOException {
+		StringBuilder program = new StringBuilder("Bug b {\n");
+		for (int i = 0; i < 2000; i++) {
+			program.append("  move 5 + 1 = 6 // line ").append(i + 2).append("\r\n");
+		}
+		program.append("  move (\n}\n");
+		String text = program.toString();
+		assertTrue(text.length() > 4 * Lexer.WINDOW_SIZE);
+
+		Recognizer r = new Recognizer(new StringReader(text));
+		try {
+			r.isProgram();
+			fail();
+		} catch (SyntaxException e) {
+			assertEquals("Line 2002: Error in parenthesized expression", e.getMessage());
+		}
+
+		byte[] bytes = text.replace("(", "1").getBytes(StandardCharsets.UTF_8);
+		r = new Recognizer(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8);
+		assertTrue(r.isProgram());
+		assertEquals(2004, r.lineNumber);
+
+		Path file = Files.createTempFile("bugs", ".bug");
+		try {
+			Files.write(file, bytes);
+			try (Recognizer fromFile = new Recognizer(file)) {
+				assertTrue(fromFile.isProgram());
+				assertTrue(fromFile.nextTokenMatches(Token.Type.EOF));
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testMapped() throws IOException {
+		String program = "Allbugs {\n var caf\u00e9, na\u00efve // \ud83d\udc1b\n}\n"
+				+ "Bug b {\n move 1\n}\n";
+		Path file = Files.createTempFile("bugs", ".bug");
+		try {
+			Files.write(file, program.getBytes(StandardCharsets.UTF_8));
+			try (Recognizer r = Recognizer.mapped(file)) {
+				assertTrue(r.isAllbugsCode());
+				assertEquals(4, r.lineNumber);
+				assertTrue(r.isBugDefinition());
+				assertEquals(Token.EOF, r.nextToken());
+			}
+			try (Reader reader = new MappedReader(file)) {
+				char[] chars = new char[program.length()];
+				int n = 0;
+				int count;
+				while ((count = reader.read(chars, n, Math.min(1, chars.length - n))) > 0) {
+					n += count;
+				}
+				assertEquals(program, new String(chars, 0, n));
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testFindProgramErrors() {
+		String program = "Allbugs {\n var a,\n var b\n}\n"
+				+ "Bug one {\n move 1\n turn\n loop {\n moveto 1\n }\n line 1, 2\n move 3\n}\n"
+				+ "Bug two {\n move 1 +\n}\n"
+				+ "Bug three move 1\n}\n"
+				+ "Bug four {\n move 1\n}\n";
+		List<SyntaxException> errors = new Recognizer(program).findProgramErrors(100);
+		String[] expected = {
+				"Line 2: No name after ','", "Line 7: Error after 'turn'!",
+				"Line 9: Error after 'moveto' and expression!",
+				"Line 11: Error after 'line' and expression!",
+				"Line 15: Error in arithmetic expression after '+' or '-'",
+				"Line 17: Missing '{'!" };
+		assertEquals(expected.length, errors.size());
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], errors.get(i).getMessage());
+		}
+		assertEquals(2, new Recognizer(program).findProgramErrors(2).size());
+		assertEquals("Line 1: Missing Bug definition!",
+				new Recognizer("").findProgramErrors(10).get(0).getMessage());
+		assertTrue(new Recognizer("Bug b {\n move 1\n}\n").findProgramErrors(10).isEmpty());
+		assertEquals("Line 2: Error in parenthesized expression",
+				new Recognizer("Bug b {\n move (\n}\n").findProgramErrors(1).get(0).getMessage());
+		try {
+			new Recognizer(program).findProgramErrors(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+		Recognizer limited = new Recognizer(program);
+		limited.setMaxTokens(20);
+		try {
+			limited.findProgramErrors(100);
+			fail();
+		} catch (LimitExceededException e) {
+			assertEquals(LimitExceededException.Limit.TOKENS, e.getLimit());
+		}
+		try {
+			new Recognizer(program).isProgram();
+			fail();
+		}
+		catch (SyntaxException e) {
+			assertEquals(expected[0], e.getMessage());
+		}
+	}
+
+	@Test
+	public void testRecognizeProgram() {
+		String program = "Bug b {\n move 1\n turn 5 +\n}\n";
+		RecognitionResult result = new Recognizer(program).recognizeProgram();
+		assertFalse(result.isAccepted());
+		assertEquals(3, result.getLine());
+		assertEquals(program.indexOf("+\n") + 1, result.getOffset());
+		assertEquals(ErrorCode.NO_TERM_AFTER_ADD_OPERATOR, result.getError());
+		assertEquals("Error in arithmetic expression after '+' or '-'", result.getDetail());
+		assertEquals("Line 3: " + result.getDetail(), result.getMessage());
+
+		SyntaxException e = result.toException();
+		assertEquals(result.getMessage(), e.getMessage());
+		assertEquals(0, e.getStackTrace().length);
+		try {
+			new Recognizer(program).isProgram();
+			fail();
+		}
+		catch (SyntaxException thrown) {
+			assertEquals(result.getMessage(), thrown.getMessage());
+			assertEquals(result.getOffset(), thrown.getOffset());
+			assertEquals(result.getError(), thrown.getError());
+		}
+
+		result = new Recognizer("move 1\n").recognizeProgram();
+		assertFalse(result.isAccepted());
+		assertNull(result.getError());
+		assertNull(result.getDetail());
+		assertNull(result.toException());
+		assertTrue(new Recognizer("Bug b {\n move 1\n}\n").recognizeProgram().isAccepted());
+	}
+
+	@Test
+	public void testLimits() {
+		String program = "Bug b {\n move 1\n move 2\n}\n"; // 13 tokens with EOF
+		Recognizer r = new Recognizer(program);
+		r.setMaxTokens(13);
+		assertTrue(r.isProgram());
+		r = new Recognizer(program);
+		r.setMaxTokens(12);
+		assertLimit(r, LimitExceededException.Limit.TOKENS, "Line 5: More than 12 tokens");
+
+		r = new Recognizer(program);
+		r.setMaxLength(program.length());
+		assertTrue(r.isProgram());
+		r = new Recognizer(program);
+		r.setMaxLength(program.length() - 1);
+		assertLimit(r, LimitExceededException.Limit.LENGTH,
+				"Line 1: Input longer than " + (program.length() - 1) + " characters");
+		StringBuilder big = new StringBuilder(program);
+		for (int i = 0; i < 100000; i++) {
+			big.append("// padding\n");
+		}
+		r = new Recognizer(new StringReader(big.toString()));
+		r.setMaxLength(1000);
+		assertLimit(r, LimitExceededException.Limit.LENGTH, null);
+
+		r = new Recognizer(program);
+		r.setTimeLimit(0, TimeUnit.NANOSECONDS);
+		assertLimit(r, LimitExceededException.Limit.DEADLINE, "Line 1: Time limit exceeded");
+		r = new Recognizer(program);
+		r.cancel();
+		r.recoverFromErrors(10);
+		assertLimit(r, LimitExceededException.Limit.CANCELLED, "Line 1: Recognition cancelled");
+
+		r = new Recognizer(program);
+		r.setMaxTokens(5);
+		RecognitionResult result = r.recognizeProgram();
+		assertEquals(LimitExceededException.Limit.TOKENS, result.getLimit());
+		assertEquals(ErrorCode.TOO_MANY_TOKENS, result.getError());
+		assertEquals("Line 2: More than 5 tokens", result.getMessage());
+		assertTrue(result.toException() instanceof LimitExceededException);
+		assertNull(RecognitionResult.of("Bug b {\n move 1 +\n}\n").getLimit());
+	}
+
+	@Test
+	public void testResultsMatchExceptions() {
+		for (long seed = 0; seed < 100; seed++) {
+			String program = new ProgramGenerator(seed).setBugs(2).setErrorRate(0.05).generate();
+			RecognitionResult result = new Recognizer(program).recognizeProgram();
+			try {
+				assertEquals(program, result.isAccepted(), new Recognizer(program).isProgram());
+			} catch (SyntaxException e) {
+				assertEquals(program, e.getMessage(), result.getMessage());
+				assertEquals(program, e.getOffset(), result.getOffset());
+				assertSame(program, e.getError(), result.getError());
+			}
+		}
+		String nested = "Bug b {\n loop {\n  loop {\n   move 1\n  }\n }\n}\n";
+		Recognizer r = new Recognizer(nested);
+		r.setMaxDepth(1);
+		RecognitionResult result = r.recognizeProgram();
+		assertEquals(ErrorCode.NESTED_TOO_DEEP, result.getError());
+		assertEquals("Line 3: Nested more than 1 deep", result.getMessage());
+		assertEquals(nested.indexOf("{\n   move"), result.getOffset());
+	}
+
+	@Test
+	public void testLimitsInsideLongTokens() {
+		StringBuilder comment = new StringBuilder("/*");
+		for (int i = 0; i < 4000000; i++) {
+			comment.append('x');
+		}
+		String text = comment.append("*/").toString();
+		Recognizer r = new Recognizer(text);
+		r.setTimeLimit(1, TimeUnit.MILLISECONDS);
+		try {
+			r.isProgram();
+			fail();
+		} catch (LimitExceededException e) {
+			assertEquals(LimitExceededException.Limit.DEADLINE, e.getLimit());
+			assertTrue(e.getOffset() < text.length());
+		}
+
+		final Recognizer[] reading = new Recognizer[1];
+		reading[0] = new Recognizer(new Reader() {
+			private long delivered = 0;
+
+			@Override
+			public int read(char[] cbuf, int off, int len) {
+				if (delivered > 100000) reading[0].cancel();
+				for (int i = 0; i < len; i++) {
+					cbuf[off + i] = delivered < 2 ? "/*".charAt((int) delivered) : 'x';
+					delivered++;
+				}
+				return len;
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+		assertLimit(reading[0], LimitExceededException.Limit.CANCELLED, null);
+
+		r = new Recognizer(text);
+		r.setTimeLimit(1, TimeUnit.MILLISECONDS);
+		RecognitionResult result = r.recognizeProgram();
+		assertEquals(ErrorCode.TIME_LIMIT_EXCEEDED, result.getError());
+		assertTrue(result.getOffset() < text.length());
+	}
+
+	@Test
+	public void testReset() {
+		Recognizer r = new Recognizer("Bug b {\n move 1 +\n}\n");
+		r.recoverFromErrors(5);
+		r.setMaxTokens(3);
+		r.cancel();
+		try {
+			r.isProgram();
+			fail();
+		} catch (LimitExceededException e) {
+		}
+		String program = "\n\nBug b {\n turn 2 *\n}\n";
+		assertSame(r, r.reset(program));
+		assertEquals(new Recognizer(program).recognizeProgram().toString(),
+				r.recognizeProgram().toString());
+		assertTrue(r.reset("Bug b {\n move 1\n}\n").isProgram());
+		Recognizer pretokenized = Recognizer.pretokenized("x");
+		assertTrue(pretokenized.reset("1 + 2").isExpression());
+		assertTrue(pretokenized.tokenizer instanceof TokenBuffer);
+		int mark = pretokenized.reset("move 1\n").mark();
+		assertTrue(pretokenized.isMoveAction());
+		pretokenized.reset(mark);
+		assertTrue(pretokenized.isCommand());
+	}
+
 	// ----- "Helper" methods
 
+	/**
+	 * Checks that recognizing a program is stopped by a limit.
+	 * @param recognizer The Recognizer for the program.
+	 * @param limit The limit expected to stop it.
+	 * @param message The expected message, or <code>null</code> not to check it.
+	 */
+	private void assertLimit(Recognizer recognizer, LimitExceededException.Limit limit,
+			String message) {
+		try {
+			recognizer.isProgram();
+			fail();
+		} catch (LimitExceededException e) {
+			assertEquals(limit, e.getLimit());
+			if (message != null) assertEquals(message, e.getMessage());
+		}
+	}
+
+	/**
+	 * Makes a Recognizer for loops nested inside each other.
+	 * @param depth The number of loops.
+	 * @return The Recognizer.
+	 */
+	private Recognizer nestedLoops(int depth) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < depth; i++) {
+			text.append("loop {\n");
+		}
+		text.append("move 1\n");
+		for (int i = 0; i < depth; i++) {
+			text.append("}\n");
+		}
+		return new Recognizer(text.toString());
+	}
+
 	/**
 	 * This method is given a String containing some or all of the tokens that
 	 * should yet be returned by the Tokenizer, and tests whether the Tokenizer
@@ -247,7 +602,7 @@ public class RecognizerTest {
 	private void followedBy(Recognizer recognizer, String expectedTokens) {
 		int expectedType;
 		int actualType;
-		StreamTokenizer actual = recognizer.tokenizer;
+		Lexer actual = recognizer.tokenizer;
 
 		Reader reader = new StringReader(expectedTokens);
 		StreamTokenizer expected = new StreamTokenizer(reader);
@@ -452,6 +807,31 @@ public class RecognizerTest {
 		testIsStatement();
 	}
 
+	@Test
+	public void testCommandChosenByNextToken() {
+		String[] actions = { "move 1\n", "moveto 1, 2\n", "turn 3\n", "turnto 4\n",
+				"line 1, 2, 3, 4\n" };
+		String[] statements = { "x = 1\n", "loop {\n move 1\n}\n", "exit if x\n",
+				"switch {\n}\n", "return 5\n", "do f\n", "color red\n" };
+		for (String action : actions) {
+			Recognizer r = new Recognizer(action + "$");
+			assertFalse(r.isStatement());
+			assertTrue(r.isAction());
+			assertFalse(r.isCommand());
+			assertEquals(new Token(Token.Type.SYMBOL, "$"), r.nextToken());
+		}
+		for (String statement : statements) {
+			Recognizer r = new Recognizer(statement + "$");
+			assertFalse(r.isAction());
+			assertTrue(r.isStatement());
+			assertFalse(r.isCommand());
+			assertEquals(new Token(Token.Type.SYMBOL, "$"), r.nextToken());
+		}
+		Recognizer r = new Recognizer("Bug\n");
+		assertFalse(r.isCommand());
+		assertEquals(new Token(Token.Type.KEYWORD, "Bug"), r.nextToken());
+	}
+
 	@Test
 	public void testIsComparator() {
 		// <comparator> ::= "<" | "<=" | "=" | "!=" | ">=" | ">"
@@ -510,6 +890,17 @@ public class RecognizerTest {
 		assertFalse(r3.isEol());
 	}
 
+	@Test
+	public void testIsEolLongRun() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			text.append(i % 2 == 0 ? "\n" : "// comment\n");
+		}
+		Recognizer r = new Recognizer(text + "move 1\n");
+		assertTrue(r.isEol());
+		followedBy(r, "move 1\n");
+	}
+
 	@Test
 	public void testIsExitIfStatement() {
 		Recognizer r1 = new Recognizer("exit if (5 + 1 = 6) \n");
@@ -524,6 +915,29 @@ public class RecognizerTest {
 		}
 	}
 
+	@Test
+	public void testIsExpressionDeeplyNested() {
+		int depth = 100000;
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < depth; i++) {
+			text.append(i % 2 == 0 ? "-(" : "f(1, ");
+		}
+		text.append("x.y");
+		for (int i = 0; i < depth; i++) {
+			text.append(") * 2");
+		}
+		Recognizer r = new Recognizer(text + " < 3 )");
+		assertTrue(r.isExpression());
+		followedBy(r, ")");
+
+		try {
+			new Recognizer(text.substring(0, text.length() - 5)).isExpression();
+			fail();
+		} catch (SyntaxException e) {
+			assertEquals("Line 1: Unclosed parenthetical expression", e.getMessage());
+		}
+	}
+
 	@Test
 	public void testIsExpression() {
 		// <expression> ::= <arithmetic expression> { <comparator> <arithmetic
@@ -618,6 +1032,33 @@ public class RecognizerTest {
 		assertTrue(r2.isLoopStatement());
 	}
 
+	@Test
+	public void testNestingLimit() {
+		assertTrue(nestedLoops(Recognizer.DEFAULT_MAX_DEPTH).isLoopStatement());
+		Recognizer r = nestedLoops(5);
+		r.setMaxDepth(5);
+		assertTrue(r.isLoopStatement());
+
+		r = nestedLoops(6);
+		r.setMaxDepth(5);
+		try {
+			r.isLoopStatement();
+			fail();
+		} catch (SyntaxException e) {
+			assertEquals("Line 6: Nested more than 5 deep", e.getMessage());
+			assertEquals(LimitExceededException.Limit.DEPTH,
+					((LimitExceededException) e).getLimit());
+		}
+		r = new Recognizer("switch {\ncase 1\nswitch {\n}\n}\n");
+		r.setMaxDepth(1);
+		try {
+			r.isSwitchStatement();
+			fail();
+		} catch (SyntaxException e) {
+			assertEquals("Line 3: Nested more than 1 deep", e.getMessage());
+		}
+	}
+
 	@Test
 	public void testIsMoveAction() {
 		Recognizer r1 = new Recognizer("move 5 + 1 = 6 \n");
@@ -0,0 +1,64 @@
+package bugs;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for each syntax error found during recognition,
+ * whether it is thrown as a SyntaxException or returned in a
+ * RecognitionResult, including those recovered from and those for a limit.
+ *
+ * @author James Park
+ */
+@Name("bugs.SyntaxError")
+@Label("Syntax Error")
+@Category("Bugs")
+@Description("A syntax error, or a limit on recognition reached")
+@StackTrace(false)
+final class SyntaxErrorEvent extends jdk.jfr.Event {
+    @Label("Line")
+    int line;
+
+    @Label("Offset")
+    @Description("The position in the source of the token in error")
+    long offset;
+
+    @Label("Detail")
+    String detail;
+
+    @Label("Limit")
+    @Description("The limit reached, if any")
+    String limit;
+
+    /**
+     * Records that a SyntaxException is about to be thrown.
+     * @param e The exception.
+     * @return <code>e</code>, to be thrown.
+     */
+    static <E extends SyntaxException> E thrown(E e) {
+        found(e.getLine(), e.getError(), e.getValue(), e.getOffset());
+        return e;
+    }
+
+    /**
+     * Records that a syntax error has been found. The detail is only put
+     * together if the event is enabled.
+     * @param line The line on which the error was found.
+     * @param error What is wrong.
+     * @param value The value of the limit passed, if <code>error</code> is a limit.
+     * @param offset The position in the source of the token in error.
+     */
+    static void found(int line, ErrorCode error, long value, long offset) {
+        SyntaxErrorEvent event = new SyntaxErrorEvent();
+        if (event.shouldCommit()) {
+            event.line = line;
+            event.offset = offset;
+            event.detail = error.getDetail(value);
+            if (error.getLimit() != null) event.limit = error.getLimit().name();
+            event.commit();
+        }
+    }
+}
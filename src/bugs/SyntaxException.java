@@ -14,11 +14,20 @@ public class SyntaxException extends RuntimeException {
 	 */
 	private static final long serialVersionUID = 1689584568388825897L;
 
+	/** The line on which the error was found, or 0 if not known. */
+	private final int line;
+	/** What is wrong, or <code>null</code> if not thrown by the Recognizer. */
+	private final ErrorCode error;
+	/** The value of the limit passed, if <code>error</code> is a limit. */
+	private final long value;
+	/** The position in the source of the token in error, or -1 if not known. */
+	private final long offset;
+
 	/**
      * Constructor for SyntaxException.
      */
     public SyntaxException() {
-
+        this((String) null);
     }
 
     /**
@@ -27,6 +36,10 @@ public class SyntaxException extends RuntimeException {
      */
     public SyntaxException(String message) {
         super(message);
+        line = 0;
+        error = null;
+        value = 0;
+        offset = -1;
     }
 
     /**
@@ -35,6 +48,10 @@ public class SyntaxException extends RuntimeException {
      */
     public SyntaxException(Throwable cause) {
         super(cause);
+        line = 0;
+        error = null;
+        value = 0;
+        offset = -1;
     }
 
     /**
@@ -44,6 +61,84 @@ public class SyntaxException extends RuntimeException {
      */
     public SyntaxException(String message, Throwable cause) {
         super(message, cause);
+        line = 0;
+        error = null;
+        value = 0;
+        offset = -1;
+    }
+
+    /**
+     * Constructor for the SyntaxExceptions thrown by the Recognizer. These
+     * have no stack trace, since they are thrown often and only the place
+     * in the source matters, and their message is only put together when
+     * it is asked for.
+     * @param line The line on which the error was found.
+     * @param error What is wrong.
+     * @param value The value of the limit passed, if <code>error</code> is a limit.
+     * @param offset The position in the source of the token in error.
+     * @see ErrorCode#toException(int, long, long)
+     */
+    SyntaxException(int line, ErrorCode error, long value, long offset) {
+        super(null, null, false, false);
+        this.line = line;
+        this.error = error;
+        this.value = value;
+        this.offset = offset;
+    }
+
+    /**
+     * Returns the message, which for an error found by the Recognizer
+     * is the line number followed by what is wrong.
+     * @see java.lang.Throwable#getMessage()
+     */
+    @Override
+    public String getMessage() {
+        if (error == null) return super.getMessage();
+        return "Line " + line + ": " + getDetail();
+    }
+
+    /**
+     * Returns the line on which the error was found.
+     * @return The line number, or 0 if not known.
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Returns what is wrong, without the line number.
+     * @return The description of the error, or <code>null</code> if
+     *         this exception was not thrown by the Recognizer.
+     */
+    public String getDetail() {
+        if (error == null) return null;
+        return error.getDetail(value);
+    }
+
+    /**
+     * Returns the code for what is wrong.
+     * @return The code, or <code>null</code> if this exception was not
+     *         thrown by the Recognizer.
+     */
+    public ErrorCode getError() {
+        return error;
+    }
+
+    /**
+     * Returns the value of the limit passed, for an exception thrown
+     * because of a limit.
+     * @return The value, or 0 if it is not known.
+     */
+    long getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the position in the source of the token in error.
+     * @return The number of characters before the token, or -1 if not known.
+     */
+    public long getOffset() {
+        return offset;
     }
 
 }
\ No newline at end of file
@@ -1,9 +1,11 @@
 package bugs;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.regex.Pattern;
 
 /**
  * Tokens specific to the Bugs language.
@@ -12,9 +14,44 @@ import java.util.regex.Pattern;
  */
 public class Token {
     static enum Type { KEYWORD, NAME, NUMBER, SYMBOL, ERROR, EOL, EOF }
-    private static final Pattern NAME_REGEX = Pattern.compile("[a-zA-Z_]\\w*");
-    private static final Pattern NUMBER_REGEX = Pattern.compile("(\\d+\\.\\d*)|(\\.?\\d+)");
-    private static final Pattern SYMBOL_REGEX = Pattern.compile("[^\\w]+");
+
+    // States of the automaton used by typeOf. It accepts the same
+    // strings as the regular expressions [^\w]+ (symbols),
+    // (\d+\.\d*)|(\.?\d+) (numbers) and [a-zA-Z_]\w* (names).
+    private static final int START = 0;
+    private static final int IN_NAME = 1;
+    private static final int IN_INTEGER = 2;
+    private static final int IN_FRACTION = 3;
+    private static final int LEADING_DOT = 4;
+    private static final int AFTER_LEADING_DOT = 5;
+    private static final int IN_SYMBOL = 6;
+    private static final int DEAD = 7;
+
+    // Character classes of the automaton.
+    private static final int LETTER = 0; // [a-zA-Z_]
+    private static final int DIGIT = 1;  // [0-9]
+    private static final int DOT = 2;    // .
+    private static final int OTHER = 3;  // anything else
+    private static final int CLASSES = 4;
+
+    /** Next state, indexed by <code>state * CLASSES + class</code>. */
+    private static final byte[] TRANSITIONS = {
+        //  LETTER     DIGIT              DOT          OTHER
+        IN_NAME,  IN_INTEGER,        LEADING_DOT, IN_SYMBOL, // START
+        IN_NAME,  IN_NAME,           DEAD,        DEAD,      // IN_NAME
+        DEAD,     IN_INTEGER,        IN_FRACTION, DEAD,      // IN_INTEGER
+        DEAD,     IN_FRACTION,       DEAD,        DEAD,      // IN_FRACTION
+        DEAD,     AFTER_LEADING_DOT, IN_SYMBOL,   IN_SYMBOL, // LEADING_DOT
+        DEAD,     AFTER_LEADING_DOT, DEAD,        DEAD,      // AFTER_LEADING_DOT
+        DEAD,     DEAD,              IN_SYMBOL,   IN_SYMBOL, // IN_SYMBOL
+        DEAD,     DEAD,              DEAD,        DEAD,      // DEAD
+    };
+
+    /** The token type for each final state of the automaton. */
+    private static final Type[] ACCEPTS = {
+        Type.ERROR, Type.NAME, Type.NUMBER, Type.NUMBER,
+        Type.SYMBOL, Type.NUMBER, Type.SYMBOL, Type.ERROR
+    };
 
     private static final String[] KEYWORD_LIST = new String[] {
         "Allbugs", "Bug", "move", "moveto", "turn", "turnto", "line",
@@ -45,10 +82,146 @@ public class Token {
     public static final Set<String> COLORS =
         new HashSet<>(Arrays.asList(COLOR_LIST));
 
+    // Minimal perfect hash of the keywords, pseudo keywords and colors.
+    // It is built with the "hash, displace" method when the class is
+    // loaded: every word is put in a bucket by its hash, and each bucket
+    // gets a displacement that sends all of its words to distinct free
+    // slots, so the lookup of any identifier needs a single hash of its
+    // characters and a single probe of WORDS. The slot number of a word
+    // is its keyword ID.
+
+    /** The value of <code>id</code> for tokens that are not keywords. */
+    static final int NOT_A_KEYWORD = -1;
+
+    // Bits in FLAGS.
+    private static final byte IS_KEYWORD = 1;
+    private static final byte IS_PSEUDO_KEYWORD = 2;
+    private static final byte IS_COLOR = 4;
+
+    /** The words in the perfect hash, indexed by keyword ID. */
+    private static final String[] WORDS;
+    /** The kind of each word (keyword, pseudo keyword, color), by keyword ID. */
+    private static final byte[] FLAGS;
+    /**
+     * Displacement for each bucket. Zero or more selects the hash function
+     * for the bucket; a negative value <code>-k - 1</code> means the bucket
+     * holds one word, in slot <code>k</code>.
+     */
+    private static final int[] DISPLACEMENTS;
+
+    static {
+        Set<String> all = new LinkedHashSet<>(Arrays.asList(KEYWORD_LIST));
+        all.addAll(Arrays.asList(PSEUDO_KEYWORD_LIST));
+        String[] words = all.toArray(new String[0]);
+        int n = words.length;
+        int[] hashes = new int[n];
+        List<List<Integer>> buckets = new ArrayList<>();
+        for (int b = 0; b < n; b++) buckets.add(new ArrayList<Integer>());
+        for (int i = 0; i < n; i++) {
+            hashes[i] = hash(words[i], 0, words[i].length());
+            buckets.get(slot(hashes[i], 0, n)).add(i);
+        }
+        Integer[] order = new Integer[n];
+        for (int b = 0; b < n; b++) order[b] = b;
+        Arrays.sort(order, (x, y) -> buckets.get(y).size() - buckets.get(x).size());
+
+        WORDS = new String[n];
+        DISPLACEMENTS = new int[n];
+        int[] used = new int[n];
+        int free = 0;
+        for (int b : order) {
+            List<Integer> bucket = buckets.get(b);
+            if (bucket.size() > 1) {
+                // Try displacements until the words all land in free slots
+                for (int d = 1; ; d++) {
+                    int placed = 0;
+                    for (int i : bucket) {
+                        int k = slot(hashes[i], d, n);
+                        if (WORDS[k] != null || used[k] == d) break;
+                        used[k] = d;
+                        placed++;
+                    }
+                    if (placed == bucket.size()) {
+                        for (int i : bucket) WORDS[slot(hashes[i], d, n)] = words[i];
+                        DISPLACEMENTS[b] = d;
+                        break;
+                    }
+                }
+            } else if (bucket.size() == 1) {
+                while (WORDS[free] != null) free++;
+                WORDS[free] = words[bucket.get(0)];
+                DISPLACEMENTS[b] = -free - 1;
+            }
+        }
+        FLAGS = new byte[n];
+        for (int k = 0; k < n; k++) {
+            if (KEYWORDS.contains(WORDS[k])) FLAGS[k] |= IS_KEYWORD;
+            if (PSEUDO_KEYWORDS.contains(WORDS[k])) FLAGS[k] |= IS_PSEUDO_KEYWORD;
+            if (COLORS.contains(WORDS[k])) FLAGS[k] |= IS_COLOR;
+        }
+    }
+
+    /** The number of keyword IDs; every keyword ID is less than this. */
+    static final int KEYWORD_COUNT = WORDS.length;
+
+    // Keyword IDs of the keywords used by the Recognizer.
+    static final int ALLBUGS = keywordId("Allbugs");
+    static final int BUG = keywordId("Bug");
+    static final int MOVE = keywordId("move");
+    static final int MOVETO = keywordId("moveto");
+    static final int TURN = keywordId("turn");
+    static final int TURNTO = keywordId("turnto");
+    static final int LINE = keywordId("line");
+    static final int LOOP = keywordId("loop");
+    static final int EXIT = keywordId("exit");
+    static final int IF = keywordId("if");
+    static final int SWITCH = keywordId("switch");
+    static final int CASE = keywordId("case");
+    static final int RETURN = keywordId("return");
+    static final int DO = keywordId("do");
+    static final int COLOR = keywordId("color");
+    static final int DEFINE = keywordId("define");
+    static final int USING = keywordId("using");
+    static final int VAR = keywordId("var");
+    static final int INITIALLY = keywordId("initially");
+
+    /** The shared token for an end of line. */
+    static final Token EOL = new Token(Type.EOL, "\n");
+
+    /** The shared token for the end of input. */
+    static final Token EOF = new Token(Type.EOF, "EOF");
+
+    /** Shared tokens for the ASCII symbols, indexed by character. */
+    private static final Token[] SYMBOL_TOKENS = new Token[128];
+
+    /**
+     * Shared tokens for the keywords, indexed by keyword ID. Pseudo
+     * keywords are not keywords to the Recognizer, so they have no entry.
+     */
+    private static final Token[] KEYWORD_TOKENS = new Token[WORDS.length];
+
+    static {
+        for (char c = '!'; c < SYMBOL_TOKENS.length; c++) {
+            if (!Character.isLetterOrDigit(c)) {
+                SYMBOL_TOKENS[c] = new Token(Type.SYMBOL, String.valueOf(c).intern());
+            }
+        }
+        for (int k = 0; k < WORDS.length; k++) {
+            if ((FLAGS[k] & IS_KEYWORD) != 0) {
+                KEYWORD_TOKENS[k] = new Token(Type.KEYWORD, WORDS[k]);
+            }
+        }
+    }
+
     /** The type of this token (name, number, etc.). */
     final Type type;
     /** The characters that make up this token. */
     final String value;
+    /**
+     * The keyword ID of a KEYWORD token, or <code>NOT_A_KEYWORD</code>
+     * for any other token.
+     */
+    final int id;
 
     /**
      * Constructor for Tokens.
@@ -59,6 +232,7 @@ public class Token {
     public Token(Type type, String value) {
         this.type = type;
         this.value = value;
+        this.id = type == Type.KEYWORD ? keywordId(value) : NOT_A_KEYWORD;
     }
 
     /**
@@ -70,6 +244,119 @@ public class Token {
     public Token(String value) {
         this.type = typeOf(value);
         this.value = value;
+        this.id = type == Type.KEYWORD ? keywordId(value) : NOT_A_KEYWORD;
+    }
+
+    /**
+     * Returns the shared token for a single-character symbol. Only
+     * symbols outside the ASCII range need a new Token.
+     * @param c The symbol character.
+     * @return A SYMBOL token whose value is the given character.
+     */
+    static Token symbol(int c) {
+        if (c < SYMBOL_TOKENS.length && SYMBOL_TOKENS[c] != null) {
+            return SYMBOL_TOKENS[c];
+        }
+        return new Token(Type.SYMBOL, String.valueOf((char) c));
+    }
+
+    /**
+     * Returns the shared token for the keyword spelled by the given
+     * characters, without creating a String.
+     * @param chars The array holding the characters.
+     * @param start The index of the first character.
+     * @param length The number of characters.
+     * @return The KEYWORD token, or <code>null</code> if the characters
+     *         do not spell a keyword.
+     */
+    static Token keyword(char[] chars, int start, int length) {
+        int n = WORDS.length;
+        int h = 0x811C9DC5;
+        for (int i = start; i < start + length; i++) {
+            h = (h ^ chars[i]) * 0x01000193;
+        }
+        int d = DISPLACEMENTS[slot(h, 0, n)];
+        int k = d < 0 ? -d - 1 : slot(h, d, n);
+        Token keyword = KEYWORD_TOKENS[k];
+        if (keyword == null) return null;
+        String word = keyword.value;
+        if (word.length() != length) return null;
+        for (int i = 0; i < length; i++) {
+            if (word.charAt(i) != chars[start + i]) return null;
+        }
+        return keyword;
+    }
+
+    /**
+     * Returns the shared token for a keyword.
+     * @param id The keyword ID of the keyword.
+     * @return The KEYWORD token, or <code>null</code> if the ID belongs
+     *         to a pseudo keyword.
+     */
+    static Token keyword(int id) {
+        return KEYWORD_TOKENS[id];
+    }
+
+    /**
+     * Returns the keyword ID of a word.
+     * @param word The possible keyword, pseudo keyword or color.
+     * @return The keyword ID, or <code>NOT_A_KEYWORD</code>.
+     */
+    static int keywordId(String word) {
+        return word == null ? NOT_A_KEYWORD : keywordId(word, 0, word.length());
+    }
+
+    /**
+     * Returns the keyword ID of the word spelled by part of a character
+     * sequence, without creating a String.
+     * @param s The characters of the possible keyword.
+     * @param start The index of the first character.
+     * @param end One past the index of the last character.
+     * @return The keyword ID, or <code>NOT_A_KEYWORD</code>.
+     */
+    static int keywordId(CharSequence s, int start, int end) {
+        int n = WORDS.length;
+        int h = hash(s, start, end);
+        int d = DISPLACEMENTS[slot(h, 0, n)];
+        int k = d < 0 ? -d - 1 : slot(h, d, n);
+        String word = WORDS[k];
+        int length = end - start;
+        if (word.length() != length) return NOT_A_KEYWORD;
+        for (int i = 0; i < length; i++) {
+            if (word.charAt(i) != s.charAt(start + i)) return NOT_A_KEYWORD;
+        }
+        return k;
+    }
+
+    /**
+     * Returns the FNV-1a hash of part of a character sequence.
+     * @param s The characters to hash.
+     * @param start The index of the first character.
+     * @param end One past the index of the last character.
+     * @return The hash.
+     */
+    private static int hash(CharSequence s, int start, int end) {
+        int h = 0x811C9DC5;
+        for (int i = start; i < end; i++) {
+            h = (h ^ s.charAt(i)) * 0x01000193;
+        }
+        return h;
+    }
+
+    /**
+     * Maps a hash to a slot of the perfect hash table. Each displacement
+     * mixes the hash differently, so that words that share a bucket under
+     * one displacement can be separated by another.
+     * @param h The hash of a word.
+     * @param d The displacement; zero selects the bucket.
+     * @param n The size of the table.
+     * @return A slot number from 0 to <code>n - 1</code>.
+     */
+    private static int slot(int h, int d, int n) {
+        int x = h ^ (d * 0x9E3779B9);
+        x *= 0x85EBCA6B;
+        x ^= x >>> 13;
+        return (x & 0x7FFFFFFF) % n;
     }
 
     /**
@@ -80,15 +367,42 @@ public class Token {
      */
     public static Token.Type typeOf(String s) {
         if (s == null) return Token.Type.EOF;
-        if (s.equals("\n")) return Token.Type.EOL;
-        if (SYMBOL_REGEX.matcher(s).matches()) return Token.Type.SYMBOL;
-        if (NUMBER_REGEX.matcher(s).matches()) return Token.Type.NUMBER;
-        if (NAME_REGEX.matcher(s).matches()) {
-            if (Token.KEYWORDS.contains(s)) return Token.Type.KEYWORD;
-            if (Token.PSEUDO_KEYWORDS.contains(s)) return Token.Type.KEYWORD;
+        return typeOf(s, 0, s.length());
+    }
+
+    /**
+     * Determine the token type of part of a character sequence, without
+     * creating a String for it. The characters are classified in a
+     * single pass by a small finite automaton.
+     * @param s The characters to classify.
+     * @param start The index of the first character to classify.
+     * @param end One past the index of the last character to classify.
+     * @return The type of the characters from <code>start</code> up to
+     *         (but not including) <code>end</code>.
+     */
+    public static Token.Type typeOf(CharSequence s, int start, int end) {
+        if (end - start == 1 && s.charAt(start) == '\n') return Token.Type.EOL;
+        int state = START;
+        for (int i = start; i < end && state != DEAD; i++) {
+            state = TRANSITIONS[state * CLASSES + classOf(s.charAt(i))];
+        }
+        if (state == IN_NAME) {
+            if (keywordId(s, start, end) != NOT_A_KEYWORD) return Token.Type.KEYWORD;
             return Token.Type.NAME;
         }
-        return Token.Type.ERROR;
+        return ACCEPTS[state];
+    }
+
+    /**
+     * Returns the class of a character for the automaton in typeOf.
+     * @param c The character.
+     * @return The character class.
+     */
+    private static int classOf(char c) {
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_') return LETTER;
+        if (c >= '0' && c <= '9') return DIGIT;
+        if (c == '.') return DOT;
+        return OTHER;
     }
 
     /**
@@ -126,7 +440,8 @@ public class Token {
      * @return <code>true</code> if the argument is a keyword.
      */
     public static boolean isKeyword(String s) {
-        return KEYWORDS.contains(s);
+        int k = keywordId(s);
+        return k != NOT_A_KEYWORD && (FLAGS[k] & IS_KEYWORD) != 0;
     }
 
     /**
@@ -136,6 +451,7 @@ public class Token {
      * @return <code>true</code> if the argument is a keyword.
      */
     public static boolean isColor(String s) {
-        return COLORS.contains(s);
+        int k = keywordId(s);
+        return k != NOT_A_KEYWORD && (FLAGS[k] & IS_COLOR) != 0;
     }
 }
\ No newline at end of file
@@ -0,0 +1,416 @@
+package bugs;
+
+import java.util.Arrays;
+
+/**
+ * A Lexer that tokenizes all of its input once, up front, and then
+ * serves the tokens from a set of parallel arrays: the kind of each
+ * token, the index of its first character, its length, and the line
+ * it is on. A cursor into the arrays marks the next token.
+ * <p>Because the tokens are kept, any number of tokens may be
+ * backed up over: <code>pushBack</code>, <code>mark</code>,
+ * <code>reset</code> and <code>peek</code> just move or read an
+ * index, and nothing is lexed twice. Token values are only turned
+ * into Strings when a token is actually returned.
+ *
+ * @author James Park
+ */
+class TokenBuffer extends Lexer {
+    /**
+     * The kind stored for a keyword is <code>KEYWORD - id</code>; all other
+     * kinds are the Lexer token types.
+     */
+    private static final int KEYWORD = -16;
+
+    /** The kind of each token. */
+    private int[] kinds;
+    /** The index in <code>buf</code> of the first character of each token. */
+    private int[] starts;
+    /** The number of characters in each token. */
+    private int[] lengths;
+    /**
+     * The line of each token, counted as the Recognizer counts them:
+     * one more than the number of end of line tokens before it.
+     */
+    private int[] lines;
+    /** The number of tokens, including the final end of input. */
+    private int count;
+    /** The index of the next token to be returned. */
+    private int cursor;
+    /** The index of the token most recently returned, or -1. */
+    private int current = -1;
+    /** The number of <code>{</code> tokens less the number of <code>}</code> tokens. */
+    private int depth;
+
+    /**
+     * Constructs a TokenBuffer holding all the tokens of the given text.
+     * @param text The characters to be tokenized.
+     */
+    TokenBuffer(CharSequence text) {
+        super(text);
+        int capacity = Math.max(16, buf.length / 4);
+        kinds = new int[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        lines = new int[capacity];
+        tokenize(0, 0, 1);
+    }
+
+    /**
+     * Constructs a TokenBuffer holding the tokens of a range of the
+     * characters in an array, which is shared rather than copied. The
+     * index of each character, and so the offset of each token, is its
+     * index in the array.
+     * @param chars The array holding the characters.
+     * @param from The index of the first character to be tokenized.
+     * @param to The index just past the last character to be tokenized.
+     * @param line The line of the first token.
+     */
+    TokenBuffer(char[] chars, int from, int to, int line) {
+        super(chars);
+        end = to;
+        int capacity = Math.max(16, (to - from) / 4);
+        kinds = new int[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        lines = new int[capacity];
+        tokenize(0, from, line);
+    }
+
+    /**
+     * Tokenizes the characters in <code>buf</code> from a position on,
+     * replacing the token at an index and the ones after it, growing the
+     * arrays as needed, and moves the cursor to the first token.
+     * @param from The index of the first token to be replaced; 0 to
+     *        replace all of them.
+     * @param position The index in <code>buf</code> to start at: the
+     *        start of that token, or of the text.
+     * @param line The line of that token.
+     */
+    private void tokenize(int from, int position, int line) {
+        LexingEvent event = new LexingEvent();
+        event.begin();
+        int n = from;
+        if (from == 0) {
+            depth = 0;
+        } else {
+            for (int i = from; i < count; i++) {
+                if (kinds[i] == '{') depth--;
+                else if (kinds[i] == '}') depth++;
+            }
+        }
+        pos = position;
+        int kind;
+        do {
+            kind = scan();
+            if (n == kinds.length) {
+                int capacity = n * 2;
+                kinds = Arrays.copyOf(kinds, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+                lines = Arrays.copyOf(lines, capacity);
+            }
+            if (kind == TT_WORD && token != null) kind = KEYWORD - token.id;
+            kinds[n] = kind;
+            starts[n] = tokenStart;
+            lengths[n] = pos - tokenStart;
+            lines[n] = line;
+            n++;
+            if (kind == TT_EOL) line++;
+            else if (kind == '{') depth++;
+            else if (kind == '}') depth--;
+        } while (kind != TT_EOF);
+        count = n;
+        cursor = 0;
+        current = -1;
+        token = null;
+        sval = null;
+        tokenStart = 0;
+        pos = 0;
+        event.end();
+        if (event.shouldCommit()) {
+            event.length = end - position;
+            event.tokens = count - from;
+            event.commit();
+        }
+    }
+
+    /**
+     * Adds characters to the end of the text and tokenizes them, giving
+     * the same tokens as tokenizing the whole text again would. Only the
+     * last token before the end of input is lexed again along with them,
+     * since it, or a comment after it, may go on into the new characters.
+     * The cursor is moved to the first token. The characters of a slice,
+     * or of a range of an array, are shared, so it must not be appended to.
+     * @param chars The array holding the characters.
+     * @param offset The index of the first of them.
+     * @param length The number of characters.
+     */
+    void append(char[] chars, int offset, int length) {
+        if (end + length > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, end + length));
+        }
+        System.arraycopy(chars, offset, buf, end, length);
+        end += length;
+        if (count < 2) {
+            tokenize(0, 0, 1);
+        } else {
+            tokenize(count - 2, starts[count - 2], lines[count - 2]);
+        }
+    }
+
+    /**
+     * Starts this TokenBuffer again on new text, tokenizing all of it at
+     * once as the constructor does. The character and token arrays are
+     * reused, and only grown if the new text needs more room.
+     * @see bugs.Lexer#reset(CharSequence)
+     */
+    @Override
+    void reset(CharSequence text) {
+        super.reset(text);
+        tokenize(0, 0, 1);
+    }
+
+    /**
+     * Constructs a TokenBuffer holding a range of the tokens of another,
+     * followed by an end of input on the line of the first token after
+     * the range. The characters are shared with the other TokenBuffer.
+     * @param whole The TokenBuffer holding the tokens.
+     * @param from The index of the first token in the range.
+     * @param to The index just past the last token in the range.
+     */
+    private TokenBuffer(TokenBuffer whole, int from, int to) {
+        super(whole.buf);
+        end = whole.end;
+        kinds = Arrays.copyOfRange(whole.kinds, from, to + 1);
+        starts = Arrays.copyOfRange(whole.starts, from, to + 1);
+        lengths = Arrays.copyOfRange(whole.lengths, from, to + 1);
+        lines = Arrays.copyOfRange(whole.lines, from, to + 1);
+        count = to - from + 1;
+        kinds[count - 1] = TT_EOF;
+        lengths[count - 1] = 0;
+        for (int i = 0; i < count; i++) {
+            if (kinds[i] == '{') depth++;
+            else if (kinds[i] == '}') depth--;
+        }
+    }
+
+    /**
+     * Returns a TokenBuffer holding a range of the tokens of this one,
+     * followed by an end of input. The line of each token is unchanged.
+     * @param from The index of the first token in the range.
+     * @param to The index just past the last token in the range.
+     * @return The new TokenBuffer.
+     */
+    TokenBuffer slice(int from, int to) {
+        if (from < 0 || from > to || to >= count) {
+            throw new IllegalArgumentException("Not a range of tokens: " + from + ".." + to);
+        }
+        return new TokenBuffer(this, from, to);
+    }
+
+    /**
+     * Finds the <code>Allbugs</code> and <code>Bug</code> keywords that
+     * are not inside braces, which is where top level definitions start
+     * in a well-formed program. Only the kinds of the tokens are looked at.
+     * @return The indices of those keywords, in order.
+     */
+    int[] definitionStarts() {
+        int[] result = new int[16];
+        int n = 0;
+        int depth = 0;
+        for (int i = 0; i < count; i++) {
+            int kind = kinds[i];
+            if (kind == '{') {
+                depth++;
+            } else if (kind == '}') {
+                depth--;
+            } else if (depth == 0 && (kind == KEYWORD - Token.BUG
+                                      || kind == KEYWORD - Token.ALLBUGS)) {
+                if (n == result.length) result = Arrays.copyOf(result, n * 2);
+                result[n++] = i;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Tells whether the text ends just after an end of line that is not
+     * inside braces. Tokenizing more text appended to this text would
+     * then give the same tokens as tokenizing the two separately.
+     * @return <code>true</code> if the text ends between definitions.
+     */
+    boolean endsBetweenDefinitions() {
+        return count >= 2 && kinds[count - 2] == TT_EOL
+            && starts[count - 2] + lengths[count - 2] == end && depth == 0;
+    }
+
+    /**
+     * Tells whether the first token is an <code>Allbugs</code> or
+     * <code>Bug</code> keyword, so that the text starts a definition.
+     * @return <code>true</code> if it is.
+     */
+    boolean startsDefinition() {
+        return kinds[0] == KEYWORD - Token.BUG || kinds[0] == KEYWORD - Token.ALLBUGS;
+    }
+
+    /**
+     * Returns the index of the first character of the token at an index.
+     * @param i The index of the token.
+     * @return The index in <code>buf</code> of its first character.
+     */
+    int startAt(int i) {
+        return starts[i];
+    }
+
+    /**
+     * Tells whether the token at an index is a particular keyword.
+     * @param i The index of the token.
+     * @param id The ID of the keyword.
+     * @return <code>true</code> if the token is that keyword.
+     */
+    boolean isKeywordAt(int i, int id) {
+        return kinds[i] == KEYWORD - id;
+    }
+
+    /**
+     * Moves to the next token in the buffer. Once the end of input has
+     * been reached, every further call returns <code>TT_EOF</code>.
+     * @see bugs.Lexer#next()
+     */
+    @Override
+    int next() {
+        int i = cursor < count ? cursor++ : count - 1;
+        if (i == current) return ttype; // Pushed back; keep its value
+        current = i;
+        int kind = kinds[i];
+        sval = null;
+        token = null;
+        tokenStart = starts[i];
+        pos = tokenStart + lengths[i];
+        if (kind <= KEYWORD) {
+            token = Token.keyword(KEYWORD - kind);
+            kind = TT_WORD;
+        } else if (kind == TT_NUMBER) {
+            nval = numberValue(buf, tokenStart, pos);
+        }
+        return ttype = kind;
+    }
+
+    /**
+     * Causes the next call of <code>nextToken()</code> to return the
+     * current token again.
+     */
+    @Override
+    void pushBack() {
+        if (current >= 0) cursor = current;
+    }
+
+    /**
+     * @see bugs.Lexer#isPushedBack()
+     */
+    @Override
+    boolean isPushedBack() {
+        return current >= 0 && cursor == current;
+    }
+
+    /**
+     * Moves the cursor to the end of input, so that every further token
+     * is the end of input.
+     * @see bugs.Lexer#stop()
+     */
+    @Override
+    void stop() {
+        cursor = count - 1;
+        current = -1;
+    }
+
+    /**
+     * Returns a token that has not been read yet, without consuming it.
+     * @param ahead How many tokens to look past; zero gives the token
+     *        that <code>nextToken()</code> would return.
+     * @return The token, or the end of input token if there are not
+     *         that many tokens left.
+     */
+    Token peek(int ahead) {
+        return tokenAt(Math.min(cursor + ahead, count - 1));
+    }
+
+    /**
+     * @see bugs.Lexer#mark()
+     */
+    @Override
+    int mark() {
+        return cursor;
+    }
+
+    /**
+     * Returns to a position obtained from <code>mark</code>. Until the
+     * next call of <code>nextToken()</code> there is no current token,
+     * so <code>pushBack</code> has no effect.
+     * @see bugs.Lexer#reset(int)
+     */
+    @Override
+    void reset(int mark) {
+        if (mark < 0 || mark > count) {
+            throw new IllegalArgumentException("Not a mark: " + mark);
+        }
+        cursor = mark;
+        current = -1;
+        ttype = TT_NOTHING;
+        sval = null;
+        token = null;
+    }
+
+    /**
+     * Returns the line of the token at a position, counted as the
+     * Recognizer counts lines.
+     * @param mark A value returned by <code>mark()</code>.
+     * @return The line number.
+     */
+    int lineAt(int mark) {
+        return lines[Math.min(mark, count - 1)];
+    }
+
+    /**
+     * Returns the number of tokens in the buffer.
+     * @return The number of tokens, including the end of input.
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Returns the line of the current token; an end of line counts as
+     * being on the following line, as in <code>StreamTokenizer</code>.
+     * @see bugs.Lexer#lineno()
+     */
+    @Override
+    int lineno() {
+        if (current < 0) return cursor < count ? lines[cursor] : lines[count - 1];
+        return kinds[current] == TT_EOL ? lines[current] + 1 : lines[current];
+    }
+
+    /**
+     * Creates the Token for the token at an index.
+     * @param i The index of the token.
+     * @return The Token.
+     */
+    private Token tokenAt(int i) {
+        int kind = kinds[i];
+        if (kind <= KEYWORD) return Token.keyword(KEYWORD - kind);
+        switch (kind) {
+            case TT_WORD:
+                return new Token(Token.Type.NAME, new String(buf, starts[i], lengths[i]));
+            case TT_NUMBER:
+                return new Token(Token.Type.NUMBER,
+                    numberValue(buf, starts[i], starts[i] + lengths[i]) + "");
+            case TT_EOL:
+                return Token.EOL;
+            case TT_EOF:
+                return Token.EOF;
+            default:
+                return Token.symbol(kind);
+        }
+    }
+}
@@ -2,6 +2,9 @@ package bugs;
 
 import static org.junit.Assert.*;
 
+import java.util.Random;
+import java.util.regex.Pattern;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -79,6 +82,58 @@ public class TokenTest {
         assertEquals(Token.Type.ERROR, Token.typeOf("=7"));
     }
 
+    /**
+     * Test method for {@link bugs.Token#typeOf(java.lang.CharSequence, int, int)}.
+     */
+    @Test
+    public final void testTypeOfRegion() {
+        String s = "x = 12. + .5 * foo_1 moveto .. <= 1.2.3 \n";
+        assertEquals(Token.Type.NAME, Token.typeOf(s, 0, 1));
+        assertEquals(Token.Type.SYMBOL, Token.typeOf(s, 2, 3));
+        assertEquals(Token.Type.NUMBER, Token.typeOf(s, 4, 7));
+        assertEquals(Token.Type.SYMBOL, Token.typeOf(s, 6, 9));
+        assertEquals(Token.Type.NUMBER, Token.typeOf(s, 10, 12));
+        assertEquals(Token.Type.NAME, Token.typeOf(s, 15, 20));
+        assertEquals(Token.Type.KEYWORD, Token.typeOf(s, 21, 27));
+        assertEquals(Token.Type.KEYWORD, Token.typeOf(s, 21, 25));
+        assertEquals(Token.Type.SYMBOL, Token.typeOf(s, 28, 30));
+        assertEquals(Token.Type.SYMBOL, Token.typeOf(s, 31, 33));
+        assertEquals(Token.Type.ERROR, Token.typeOf(s, 34, 39));
+        assertEquals(Token.Type.EOL, Token.typeOf(s, 40, 41));
+        assertEquals(Token.Type.ERROR, Token.typeOf(s, 3, 3));
+    }
+
+    /**
+     * Test that {@link bugs.Token#typeOf(java.lang.String)} classifies
+     * strings the same way as the regular expressions that define tokens.
+     */
+    @Test
+    public final void testTypeOfAgreesWithRegularExpressions() {
+        Pattern name = Pattern.compile("[a-zA-Z_]\\w*");
+        Pattern number = Pattern.compile("(\\d+\\.\\d*)|(\\.?\\d+)");
+        Pattern symbol = Pattern.compile("[^\\w]+");
+        String alphabet = "aZ_09..+=<\n \u00e9";
+        Random random = new Random(594);
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(6);
+            for (int j = 0; j < length; j++) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String s = sb.toString();
+            Token.Type expected;
+            if (s.equals("\n")) expected = Token.Type.EOL;
+            else if (symbol.matcher(s).matches()) expected = Token.Type.SYMBOL;
+            else if (number.matcher(s).matches()) expected = Token.Type.NUMBER;
+            else if (name.matcher(s).matches()) expected = Token.Type.NAME;
+            else expected = Token.Type.ERROR;
+            assertEquals(s, expected, Token.typeOf(s));
+        }
+        assertEquals(Token.Type.KEYWORD, Token.typeOf("darkGray"));
+        assertEquals(Token.Type.KEYWORD, Token.typeOf("function"));
+        assertEquals(Token.Type.NAME, Token.typeOf("Move"));
+    }
+
     /**
      * Test method for {@link bugs.Token#equals(java.lang.Object)}.
      */
@@ -111,6 +166,37 @@ public class TokenTest {
         assertFalse(Token.isKeyword("algebra"));
     }
 
+    /**
+     * Test method for {@link bugs.Token#keywordId(java.lang.String)}.
+     */
+    @Test
+    public final void testKeywordId() {
+        int words = Token.KEYWORDS.size() + Token.PSEUDO_KEYWORDS.size();
+        boolean[] seen = new boolean[words];
+        for (String word : Token.KEYWORDS) {
+            int id = Token.keywordId(word);
+            assertTrue(word, id >= 0 && id < words && !seen[id]);
+            seen[id] = true;
+            assertEquals(id, new Token(word).id);
+            assertTrue(Token.isKeyword(word));
+            assertEquals(Token.COLORS.contains(word), Token.isColor(word));
+        }
+        for (String word : Token.PSEUDO_KEYWORDS) {
+            int id = Token.keywordId(word);
+            assertTrue(word, id >= 0 && id < words && !seen[id]);
+            seen[id] = true;
+            assertFalse(Token.isKeyword(word));
+        }
+        assertEquals(Token.MOVE, new Token(Token.Type.KEYWORD, "move").id);
+        assertEquals(Token.NOT_A_KEYWORD, new Token(Token.Type.NAME, "move").id);
+        assertEquals(Token.NOT_A_KEYWORD, Token.keywordId("mov"));
+        assertEquals(Token.NOT_A_KEYWORD, Token.keywordId("moves"));
+        assertEquals(Token.NOT_A_KEYWORD, Token.keywordId(""));
+        assertEquals(Token.NOT_A_KEYWORD, Token.keywordId(null));
+        assertFalse(Token.isColor("Red"));
+        assertFalse(Token.isKeyword(null));
+    }
+
     /**
      * Test method for {@link bugs.Token#isColor(java.lang.String)}.
      */